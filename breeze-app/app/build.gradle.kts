@@ -43,6 +43,11 @@ android {
         viewBinding = true
     }
 
+    testOptions {
+        // Utilities under test log through android.util.Log, which is a stub on the JVM
+        unitTests.isReturnDefaultValues = true
+    }
+
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_17
         targetCompatibility = JavaVersion.VERSION_17
@@ -99,6 +104,9 @@ object Versions {
 }
 
 dependencies {
+    // Android-free prompt, tokenizer and streaming code
+    implementation(project(":core"))
+
     // AndroidX Core
     implementation("androidx.core:core-ktx:${Versions.CORE_KTX}")
     implementation("androidx.appcompat:appcompat:${Versions.APPCOMPAT}")
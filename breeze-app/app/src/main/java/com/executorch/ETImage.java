@@ -11,25 +11,30 @@ package com.executorch;
 import android.content.ContentResolver;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Color;
 import android.net.Uri;
 
 import androidx.annotation.Nullable;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 
 public class ETImage {
+  /** Long side images are scaled to. */
+  public static final int RESIZED_IMAGE_WIDTH = 336;
+  // Pixel and tensor buffers; two images in flight need two of each
+  private static final IntArrayPool BUFFER_POOL = new IntArrayPool(4);
+
   private int width;
   private int height;
-  private final byte[] bytes;
+  private int[] ints;
   private final Uri uri;
   private final ContentResolver contentResolver;
 
   public ETImage(ContentResolver contentResolver, Uri uri) {
     this.contentResolver = contentResolver;
     this.uri = uri;
-    bytes = getBytesFromImageURI(uri);
+    ints = getIntsFromImageURI(uri);
   }
 
   public int getWidth() {
@@ -44,85 +49,111 @@ public class ETImage {
     return uri;
   }
 
-  public byte[] getBytes() {
-    return bytes;
+  /**
+   * Returns the image as planar RGB values, the layout the runner's prefillImages expects. The
+   * array is pooled and owned by this image until {@link #release()}; it is not copied.
+   */
+  public int[] getInts() {
+    return ints;
   }
 
-  public int[] getInts() {
-    // We need to convert the byte array to an int array because
-    // the runner expects an int array as input.
-    int[] intArray = new int[bytes.length];
-    for (int i = 0; i < bytes.length; i++) {
-      intArray[i] = (bytes[i++] & 0xFF);
-    }
-    return intArray;
+  /** Returns the image buffer to the pool once the runner has consumed it. */
+  public void release() {
+    BUFFER_POOL.release(ints);
+    ints = new int[0];
   }
 
-  private byte[] getBytesFromImageURI(Uri uri) {
+  private int[] getIntsFromImageURI(Uri uri) {
     try {
-      int RESIZED_IMAGE_WIDTH = 336;
       Bitmap bitmap = resizeImage(uri, RESIZED_IMAGE_WIDTH);
 
       if (bitmap == null) {
         ETLogging.getInstance().log("Unable to get bytes from Image URI. Bitmap is null");
-        return new byte[0];
+        return new int[0];
       }
 
       width = bitmap.getWidth();
       height = bitmap.getHeight();
 
-      byte[] rgbValues = new byte[width * height * 3];
-
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          // Get the color of the current pixel
-          int color = bitmap.getPixel(x, y);
-
-          // Extract the RGB values from the color
-          int red = Color.red(color);
-          int green = Color.green(color);
-          int blue = Color.blue(color);
-
-          // Store the RGB values in the byte array
-          rgbValues[y * width + x] = (byte) red;
-          rgbValues[(y * width + x) + height * width] = (byte) green;
-          rgbValues[(y * width + x) + 2 * height * width] = (byte) blue;
-        }
+      int planeSize = width * height;
+      int[] pixels = BUFFER_POOL.acquire(planeSize);
+      int[] planar = BUFFER_POOL.acquire(planeSize * 3);
+      try {
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        ImagePixels.toPlanarRgb(pixels, width, height, planar);
+      } finally {
+        BUFFER_POOL.release(pixels);
+        bitmap.recycle();
       }
-      return rgbValues;
+      return planar;
     } catch (FileNotFoundException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Decodes the image subsampled close to its final size, so the full resolution bitmap is never
+   * allocated, then scales it to exactly {@code maxLength} on the long side.
+   */
   @Nullable
   private Bitmap resizeImage(Uri uri, int maxLength) throws FileNotFoundException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    InputStream boundsStream = contentResolver.openInputStream(uri);
+    if (boundsStream == null) {
+      ETLogging.getInstance().log("Unable to resize image, input streams is null");
+      return null;
+    }
+    try {
+      BitmapFactory.decodeStream(boundsStream, null, options);
+    } finally {
+      closeQuietly(boundsStream);
+    }
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      ETLogging.getInstance().log("Unable to resize image, image bounds are unknown");
+      return null;
+    }
+
+    int[] size = ImagePixels.getScaledSize(options.outWidth, options.outHeight, maxLength);
+    int finalWidth = size[0];
+    int finalHeight = size[1];
+
+    options.inJustDecodeBounds = false;
+    options.inSampleSize =
+        ImagePixels.getSampleSize(options.outWidth, options.outHeight, finalWidth, finalHeight);
+    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
     InputStream inputStream = contentResolver.openInputStream(uri);
     if (inputStream == null) {
       ETLogging.getInstance().log("Unable to resize image, input streams is null");
       return null;
     }
-    Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+    Bitmap bitmap;
+    try {
+      bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+    } finally {
+      closeQuietly(inputStream);
+    }
     if (bitmap == null) {
       ETLogging.getInstance().log("Unable to resize image, bitmap during decode stream is null");
       return null;
     }
+    if (bitmap.getWidth() == finalWidth && bitmap.getHeight() == finalHeight) {
+      return bitmap;
+    }
 
-    float aspectRatio;
-    int finalWidth, finalHeight;
-
-    if (bitmap.getWidth() > bitmap.getHeight()) {
-      // width > height --> width = maxLength, height scale with aspect ratio
-      aspectRatio = bitmap.getWidth() / (float) bitmap.getHeight();
-      finalWidth = maxLength;
-      finalHeight = Math.round(maxLength / aspectRatio);
-    } else {
-      // height >= width --> height = maxLength, width scale with aspect ratio
-      aspectRatio = bitmap.getHeight() / (float) bitmap.getWidth();
-      finalHeight = maxLength;
-      finalWidth = Math.round(maxLength / aspectRatio);
+    // The subsampled bitmap is at most twice the final size, so filtering stays cheap
+    Bitmap scaled = Bitmap.createScaledBitmap(bitmap, finalWidth, finalHeight, true);
+    if (scaled != bitmap) {
+      bitmap.recycle();
     }
+    return scaled;
+  }
 
-    return Bitmap.createScaledBitmap(bitmap, finalWidth, finalHeight, false);
+  private static void closeQuietly(InputStream inputStream) {
+    try {
+      inputStream.close();
+    } catch (IOException e) {
+      ETLogging.getInstance().log("Unable to close image input stream: " + e.getMessage());
+    }
   }
 }
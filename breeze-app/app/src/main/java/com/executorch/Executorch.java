@@ -5,6 +5,7 @@ import android.net.Uri;
 import android.util.Log;
 import org.pytorch.executorch.LlamaModule;
 import org.pytorch.executorch.LlamaCallback;
+import com.mtkresearch.breeze_app.utils.LLMTokenizer;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -146,8 +147,9 @@ public class Executorch implements ModelRunnerCallback {
                         }
                     });
                 } else if (settings.getModelType() == ModelType.LLAMA_GUARD_3) {
-                    // For LlamaGuard, use length + fixed token count
-                    int maxTokens = finalPrompt.length() + 64;
+                    // For LlamaGuard, use prompt token count + fixed token count
+                    int promptTokens = countPromptTokens(finalPrompt);
+                    int maxTokens = (promptTokens >= 0 ? promptTokens : finalPrompt.length()) + 64;
                     mModule.generate(finalPrompt, maxTokens, new LlamaCallback() {
                         @Override
                         public void onResult(String token) {
@@ -160,8 +162,11 @@ public class Executorch implements ModelRunnerCallback {
                         }
                     });
                 } else {
-                    // For text models, use proportional length + fixed token count
-                    int maxTokens = (int)(finalPrompt.length() * 0.75) + 64;
+                    // For text models, use prompt token count + fixed token count
+                    int promptTokens = countPromptTokens(finalPrompt);
+                    int maxTokens = promptTokens >= 0
+                        ? promptTokens + 64
+                        : (int)(finalPrompt.length() * 0.75) + 64;
                     mModule.generate(finalPrompt, maxTokens, new LlamaCallback() {
                         @Override
                         public void onResult(String token) {
@@ -183,6 +188,14 @@ public class Executorch implements ModelRunnerCallback {
         });
     }
 
+    /**
+     * Counts prompt tokens with the model's tokenizer, or returns -1 if it cannot be read.
+     */
+    private int countPromptTokens(String prompt) {
+        LLMTokenizer tokenizer = LLMTokenizer.getInstance(settings.getTokenizerFilePath());
+        return tokenizer != null ? tokenizer.countTokens(prompt) : -1;
+    }
+
     public void processImage(Uri imageUri) {
         if (settings.getModelType() != ModelType.LLAVA_1_5) {
             callback.onError("Current model does not support image processing");
@@ -192,13 +205,17 @@ public class Executorch implements ModelRunnerCallback {
         executor.execute(() -> {
             try {
                 ETImage image = new ETImage(context.getContentResolver(), imageUri);
-                startPos = mModule.prefillImages(
-                        image.getInts(),
-                        image.getWidth(),
-                        image.getHeight(),
-                        ModelUtils.VISION_MODEL_IMAGE_CHANNELS,
-                        startPos
-                );
+                try {
+                    startPos = mModule.prefillImages(
+                            image.getInts(),
+                            image.getWidth(),
+                            image.getHeight(),
+                            ModelUtils.VISION_MODEL_IMAGE_CHANNELS,
+                            startPos
+                    );
+                } finally {
+                    image.release();
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error processing image", e);
                 callback.onError("Error processing image: " + e.getMessage());
@@ -231,14 +248,8 @@ public class Executorch implements ModelRunnerCallback {
     }
 
     @Override
-    public void onStats(String stats) {
-        // Parse tokens per second from stats string
-        try {
-            float tps = Float.parseFloat(stats.split(":")[1].trim());
-            callback.onMetrics(tps, System.currentTimeMillis());
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing stats", e);
-        }
+    public void onStats(float tokensPerSecond) {
+        callback.onMetrics(tokensPerSecond, System.currentTimeMillis());
     }
 
     @Override
@@ -70,7 +70,7 @@ public class ModelRunner implements LlamaCallback {
 
   @Override
   public void onStats(float tps) {
-    mCallback.onStats("tokens/second: " + tps);
+    mCallback.onStats(tps);
   }
 }
 
@@ -0,0 +1,131 @@
+package com.mtkresearch.breeze_app;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.util.Log;
+
+import com.mtkresearch.breeze_app.service.BatchGeneration;
+import com.mtkresearch.breeze_app.service.LLMEngineService;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.ModelUtils;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point for {@link LLMEngineService#runBatch}. Runs inside the app process,
+ * no test APK needed. The component is the application ID, which carries the flavor suffix, and
+ * the full class name:
+ * <pre>
+ * adb shell am instrument -w -e input prompts.jsonl [-e output results.jsonl] \
+ *     com.mtkresearch.breeze_app.breeze/com.mtkresearch.breeze_app.BatchGenerationInstrumentation
+ * </pre>
+ * Relative paths resolve against the app's external files directory. The output defaults to
+ * the input name with a ".results.jsonl" suffix; running the same command again resumes an
+ * interrupted batch. Progress is streamed to the am output.
+ */
+public class BatchGenerationInstrumentation extends Instrumentation {
+    private static final String TAG = "BatchGenerationInstr";
+    private static final long BIND_TIMEOUT_MS = 10000;
+
+    private Bundle arguments;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        this.arguments = arguments;
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        Bundle results = new Bundle();
+        int resultCode = Activity.RESULT_CANCELED;
+        try {
+            BatchGeneration.Summary summary = runBatch();
+            results.putInt("total", summary.getTotal());
+            results.putInt("skipped", summary.getSkipped());
+            results.putInt("succeeded", summary.getSucceeded());
+            results.putInt("failed", summary.getFailed());
+            results.putLong("elapsed_ms", summary.getElapsedMs());
+            results.putString(REPORT_KEY_STREAMRESULT, "Batch finished: " + summary + "\n");
+            resultCode = Activity.RESULT_OK;
+        } catch (Exception e) {
+            Log.e(TAG, "Batch generation failed", e);
+            results.putString(REPORT_KEY_STREAMRESULT, "Batch failed: " + e + "\n");
+        }
+        finish(resultCode, results);
+    }
+
+    private BatchGeneration.Summary runBatch() throws Exception {
+        Context context = getTargetContext();
+        String inputArg = arguments != null ? arguments.getString("input") : null;
+        if (inputArg == null) {
+            throw new IllegalArgumentException("Missing -e input <prompts.jsonl>");
+        }
+        File input = resolve(context, inputArg);
+        String outputArg = arguments.getString("output");
+        File output = outputArg != null ? resolve(context, outputArg)
+            : new File(input.getParentFile(), input.getName().replaceFirst("\\.jsonl$", "") + ".results.jsonl");
+
+        // Started as well as bound, like ChatActivity does, so the service receives the model path
+        Intent intent = new Intent(context, LLMEngineService.class);
+        intent.putExtra("model_path", AppConstants.getModelPath(context));
+        intent.putExtra("preferred_backend", ModelUtils.getPreferredBackend(context));
+        context.startService(intent);
+
+        LLMEngineService[] service = new LLMEngineService[1];
+        CountDownLatch bound = new CountDownLatch(1);
+        ServiceConnection connection = new ServiceConnection() {
+            @Override
+            public void onServiceConnected(ComponentName name, IBinder binder) {
+                service[0] = ((LLMEngineService.LocalBinder) binder).getService();
+                bound.countDown();
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                service[0] = null;
+            }
+        };
+        if (!context.bindService(intent, connection, Context.BIND_AUTO_CREATE)
+                || !bound.await(BIND_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Could not bind LLMEngineService");
+        }
+
+        try {
+            LLMEngineService llm = service[0];
+            if (!llm.isReady()) {
+                sendProgress("Loading model...");
+                if (!llm.initialize().get(AppConstants.LLM_INIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException("LLM engine failed to initialize");
+                }
+            }
+            sendProgress("Running " + input + " into " + output + " on " + llm.getCurrentBackend());
+            return llm.runBatch(input, output, (item, succeeded, finished, total) ->
+                sendProgress(String.format("[%d/%d] %s %s", finished, total, item.getId(),
+                    succeeded ? "ok" : "failed"))).get();
+        } finally {
+            context.unbindService(connection);
+        }
+    }
+
+    private void sendProgress(String message) {
+        Bundle status = new Bundle();
+        status.putString(REPORT_KEY_STREAMRESULT, message + "\n");
+        sendStatus(0, status);
+    }
+
+    private static File resolve(Context context, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(context.getExternalFilesDir(null), path);
+    }
+}
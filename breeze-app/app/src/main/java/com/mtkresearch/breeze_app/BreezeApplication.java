@@ -0,0 +1,42 @@
+package com.mtkresearch.breeze_app;
+
+import android.app.ActivityManager;
+import android.app.Application;
+
+import com.mtkresearch.breeze_app.service.EngineResidencyManager;
+import com.mtkresearch.breeze_app.service.ModelWarmStarter;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+
+/**
+ * Process entry point. Starts loading the LLM as early as possible so it is ready, or nearly
+ * ready, by the time {@link ChatActivity} binds the engine service, and forwards memory
+ * pressure to the {@link EngineResidencyManager}.
+ */
+public class BreezeApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            EngineResidencyManager.getInstance().setBudgetBytes(
+                (long) (memoryInfo.totalMem * AppConstants.ENGINE_MEMORY_BUDGET_FRACTION));
+        }
+        if (AppConstants.LLM_ENABLED) {
+            ModelWarmStarter.start(this);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        EngineResidencyManager.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        EngineResidencyManager.getInstance().onLowMemory();
+    }
+}
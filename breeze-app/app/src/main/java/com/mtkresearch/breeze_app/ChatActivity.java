@@ -28,10 +28,14 @@ import com.mtkresearch.breeze_app.utils.ChatMediaHandler;
 import com.mtkresearch.breeze_app.utils.ChatMessageAdapter;
 import com.mtkresearch.breeze_app.databinding.ActivityChatBinding;
 import com.mtkresearch.breeze_app.utils.ChatMessage;
+import com.mtkresearch.breeze_app.utils.LLMTokenizer;
+import com.mtkresearch.breeze_app.utils.StreamingTextRenderer;
 
 import java.io.File;
 
 import com.mtkresearch.breeze_app.service.ASREngineService;
+import com.mtkresearch.breeze_app.service.BaseEngineService;
+import com.mtkresearch.breeze_app.service.EngineState;
 import com.mtkresearch.breeze_app.service.LLMEngineService;
 import com.mtkresearch.breeze_app.service.TTSEngineService;
 import com.mtkresearch.breeze_app.service.VLMEngineService;
@@ -57,6 +61,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.Set;
+import java.util.UUID;
 import android.graphics.Color;
 
 import com.executorch.ModelType;
@@ -74,7 +79,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.mtkresearch.breeze_app.utils.InitOrchestrator;
 import com.mtkresearch.breeze_app.utils.ModelUtils;
+import com.mtkresearch.breeze_app.utils.ModelManifest;
 
 public class ChatActivity extends AppCompatActivity implements ChatMessageAdapter.OnSpeakerClickListener {
     private static final String TAG = AppConstants.CHAT_ACTIVITY_TAG;
@@ -127,6 +134,23 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     private boolean asrServiceReady = false;
     private boolean ttsServiceReady = false;
 
+    // Counted down once an engine starts loading, so startup proceeds on the event instead of a fixed delay
+    private volatile CountDownLatch llmStartedLatch = new CountDownLatch(1);
+    private volatile CountDownLatch ttsStartedLatch = new CountDownLatch(1);
+    private volatile CountDownLatch asrStartedLatch = new CountDownLatch(1);
+    private final BaseEngineService.StateListener engineStateListener = (service, from, to) -> {
+        if (to == EngineState.UNLOADED) {
+            return;
+        }
+        if (service instanceof LLMEngineService) {
+            llmStartedLatch.countDown();
+        } else if (service instanceof TTSEngineService) {
+            ttsStartedLatch.countDown();
+        } else if (service instanceof ASREngineService) {
+            asrStartedLatch.countDown();
+        }
+    };
+
     // Add a flag to track MTK support status
     private static boolean mtkBackendChecked = false;
     private static boolean mtkBackendSupported = true;
@@ -138,6 +162,9 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
 
     private boolean hasReceivedResponse = false;  // Add class field
 
+    // Identifies the current conversation for the LLM's incremental session
+    private String llmSessionId = UUID.randomUUID().toString();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -398,7 +425,6 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     }
 
     private void initializeServices() {
-        // Create a single background thread instead of thread pool to reduce memory usage
         Thread initThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
             
@@ -409,53 +435,52 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 Log.d(TAG, "LLM_ENABLED: " + AppConstants.LLM_ENABLED);
                 Log.d(TAG, "VLM_ENABLED: " + AppConstants.VLM_ENABLED);
                 
-                // Initialize LLM service if enabled
+                InitOrchestrator orchestrator = createInitOrchestrator();
+                
+                // LLM first for time-to-interactive; its native libraries must load before MTK init
                 if (AppConstants.LLM_ENABLED) {
-                    initializeLLMService();
+                    orchestrator.add("llm-native", 200, 0, LLMEngineService::preloadNative);
+                    // Weights are mapped from the file, so only the runtime's own buffers count
+                    long llmMemoryBytes = Math.min(new File(AppConstants.getModelPath(this)).length(),
+                        AppConstants.LLM_INIT_MEMORY_BYTES);
+                    orchestrator.add("llm", 100, llmMemoryBytes, () -> {
+                        initializeLLMService();
+                        awaitEngineLoaded(llmService, "LLM", AppConstants.LLM_INIT_TIMEOUT_MS);
+                    }, "llm-native");
                 }
                 
-                // Initialize VLM service if enabled
                 if (AppConstants.VLM_ENABLED) {
-                    initializeVLMService();
+                    orchestrator.add("vlm", 20, 0, this::initializeVLMService);
                 }
                 
-                // Initialize TTS service if enabled (moved before ASR check since it doesn't require permissions)
+                // TTS and ASR models do not depend on the LLM and load alongside it when memory allows
                 if (AppConstants.TTS_ENABLED) {
-                    Log.d(TAG, "Initializing TTS service...");
-                    try {
+                    orchestrator.add("tts", 50, AppConstants.TTS_INIT_MEMORY_BYTES, () -> {
                         initializeTTSService();
-                        Log.d(TAG, "TTS service initialization completed");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error initializing TTS service", e);
-                    }
+                        awaitEngineLoaded(ttsService, "TTS", AppConstants.ENGINE_LOAD_TIMEOUT_MS);
+                    });
                 }
                 
                 // Initialize ASR if enabled and audio permission is granted
                 if (checkSelfPermission(android.Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
                     if (AppConstants.ASR_ENABLED) {
-                        initializeASRService();
+                        orchestrator.add("asr", 40, AppConstants.ASR_INIT_MEMORY_BYTES, () -> {
+                            initializeASRService();
+                            awaitEngineLoaded(asrService, "ASR", AppConstants.ENGINE_LOAD_TIMEOUT_MS);
+                        });
                     }
                 } else {
                     Log.w(TAG, "Audio permission not granted, skipping ASR initialization");
                 }
                 
-                // Update UI on main thread
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    if (!isFinishing()) {
-                        // Mark initialization as complete
-                        synchronized (initLock) {
-                            isInitializing = false;
-                        }
-                        updateInteractionState();
-                        
-                        // Log final service states
-                        Log.d(TAG, "Service initialization complete. States:");
-                        Log.d(TAG, "LLM ready: " + llmServiceReady);
-                        Log.d(TAG, "VLM ready: " + vlmServiceReady);
-                        Log.d(TAG, "ASR ready: " + asrServiceReady);
-                        Log.d(TAG, "TTS ready: " + ttsServiceReady);
+                // The chat is usable as soon as the LLM is, while the other engines keep loading
+                orchestrator.setListener((name, status) -> {
+                    if (name.equals("llm")) {
+                        finishInitialization();
                     }
                 });
+                orchestrator.run();
+                finishInitialization();
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error during service initialization", e);
@@ -472,18 +497,76 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                     }
                 });
             }
-        });
+        }, "ServiceInit");
         initThread.start();
     }
 
+    /**
+     * Bounds parallel engine loads by a fixed cap and by the memory currently available,
+     * so a low-memory device loads one engine at a time.
+     */
+    private InitOrchestrator createInitOrchestrator() {
+        android.app.ActivityManager activityManager =
+            (android.app.ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        android.app.ActivityManager.MemoryInfo memoryInfo = new android.app.ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        
+        long budget = Math.max(0, memoryInfo.availMem - memoryInfo.threshold);
+        int concurrency = memoryInfo.lowMemory ? 1 : AppConstants.MAX_PARALLEL_ENGINE_INITS;
+        Log.d(TAG, "Engine init budget: " + (budget >> 20) + " MB, concurrency " + concurrency);
+        return new InitOrchestrator(concurrency, budget);
+    }
+
+    /**
+     * Blocks until a bound engine has finished loading.
+     * @throws Exception if it failed to load or did not finish within the timeout
+     */
+    private void awaitEngineLoaded(BaseEngineService service, String name, long timeoutMs) throws Exception {
+        if (service == null) {
+            throw new IllegalStateException(name + " service not connected");
+        }
+        if (!service.awaitState(timeoutMs, EngineState.READY, EngineState.DEGRADED, EngineState.UNLOADED)) {
+            throw new TimeoutException(name + " engine did not finish loading");
+        }
+        if (!service.isReady()) {
+            throw new IllegalStateException(name + " engine failed to load");
+        }
+    }
+
+    private void finishInitialization() {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            if (!isFinishing()) {
+                // Mark initialization as complete
+                synchronized (initLock) {
+                    if (!isInitializing) {
+                        return;
+                    }
+                    isInitializing = false;
+                }
+                updateInteractionState();
+                
+                // Log service states
+                Log.d(TAG, "Service initialization complete. States:");
+                Log.d(TAG, "LLM ready: " + llmServiceReady);
+                Log.d(TAG, "VLM ready: " + vlmServiceReady);
+                Log.d(TAG, "ASR ready: " + asrServiceReady);
+                Log.d(TAG, "TTS ready: " + ttsServiceReady);
+            }
+        });
+    }
+
     private void initializeLLMService() throws Exception {
         CountDownLatch latch = new CountDownLatch(1);
         AtomicBoolean success = new AtomicBoolean(false);
         
+        llmStartedLatch = new CountDownLatch(1);
+
         // Prepare LLM intent
         Intent llmIntent = new Intent(this, LLMEngineService.class);
         llmIntent.putExtra("model_path", AppConstants.getModelPath(this));
-        String preferredBackend = ModelUtils.getPreferredBackend();
+        // Runs on the init thread; the preferred backend may be recorded in the manifest
+        ModelManifest.load(this);
+        String preferredBackend = ModelUtils.getPreferredBackend(this);
         llmIntent.putExtra("preferred_backend", preferredBackend);
         
         // Show status on main thread
@@ -518,8 +601,10 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             throw new Exception("LLM service binding failed");
         }
         
-        // Add delay to allow service to start
-        Thread.sleep(1000);
+        // Wait for the engine to start loading
+        if (!llmStartedLatch.await(AppConstants.ENGINE_START_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            Log.w(TAG, "LLM engine did not start loading within " + AppConstants.ENGINE_START_TIMEOUT_MS + " ms");
+        }
     }
 
     private void initializeVLMService() throws Exception {
@@ -540,6 +625,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     private void initializeASRService() throws Exception {
         CountDownLatch latch = new CountDownLatch(1);
         Log.d(TAG, "Starting ASR service initialization...");
+        asrStartedLatch = new CountDownLatch(1);
         
         new Handler(Looper.getMainLooper()).post(() -> {
             try {
@@ -562,6 +648,11 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             asrServiceReady = false;
             throw new TimeoutException("ASR service initialization timed out");
         }
+        
+        // Wait for the engine to start loading
+        if (!asrStartedLatch.await(AppConstants.ENGINE_START_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            Log.w(TAG, "ASR engine did not start loading within " + AppConstants.ENGINE_START_TIMEOUT_MS + " ms");
+        }
     }
 
     private void initializeTTSService() throws Exception {
@@ -570,6 +661,8 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         
         Log.d(TAG, "Starting TTS service initialization...");
         
+        ttsStartedLatch = new CountDownLatch(1);
+
         // Prepare TTS intent
         Intent ttsIntent = new Intent(this, TTSEngineService.class);
         
@@ -596,8 +689,10 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             throw new Exception("TTS service binding failed");
         }
         
-        // Add delay to allow service to start
-        Thread.sleep(500);
+        // Wait for the engine to start loading
+        if (!ttsStartedLatch.await(AppConstants.ENGINE_START_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            Log.w(TAG, "TTS engine did not start loading within " + AppConstants.ENGINE_START_TIMEOUT_MS + " ms");
+        }
     }
 
     private void handleSendAction() {
@@ -648,14 +743,25 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         
         // Generate AI response with formatted prompt
         if (llmService != null) {
-            String formattedPrompt = getFormattedPrompt(message);
-            
             // Set UI to generation state BEFORE starting generation
             setSendButtonsAsStop(true);
             
             hasReceivedResponse = false;  // Reset at start of generation
-            llmService.generateStreamingResponse(formattedPrompt, new LLMEngineService.StreamingResponseCallback() {
-                private final StringBuilder currentResponse = new StringBuilder();
+
+            // Tokens are buffered off the UI thread and rendered at most once per frame
+            StreamingTextRenderer renderer = new StreamingTextRenderer((delta, isFirst) -> {
+                int position = chatAdapter.getItemCount() - 1;
+                if (isFirst) {
+                    // Replaces the thinking placeholder, so the item needs a full bind
+                    aiMessage.updateText(delta);
+                    chatAdapter.notifyItemChanged(position);
+                } else {
+                    aiMessage.appendText(delta);
+                    chatAdapter.notifyTextAppended(position);
+                }
+                UiUtils.scrollToLatestMessage(binding.recyclerView, chatAdapter.getItemCount(), false);
+            });
+            LLMEngineService.StreamingResponseCallback streamingCallback = new LLMEngineService.StreamingResponseCallback() {
                 private boolean isGenerating = true;  // Track generation state
 
                 @Override
@@ -669,15 +775,21 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                         conversationManager.addMessage(aiMessage);
                     }
 
-                    runOnUiThread(() -> {
-                        currentResponse.append(token);
-                        aiMessage.updateText(currentResponse.toString());
-                        chatAdapter.notifyItemChanged(chatAdapter.getItemCount() - 1);
-                        UiUtils.scrollToLatestMessage(binding.recyclerView, chatAdapter.getItemCount(), false);
-                    });
+                    renderer.append(token);
                 }
-            }).thenAccept(finalResponse -> {
+            };
+
+            CompletableFuture<String> generation;
+            if (AppConstants.LLM_INCREMENTAL_SESSION_ENABLED && AppConstants.CONVERSATION_HISTORY_LOOKBACK > 1) {
+                // Only the new turn is prefilled; the service keeps earlier turns in its KV cache
+                generation = llmService.generateSessionResponse(llmSessionId, getHistoryMessages(), message, streamingCallback);
+            } else {
+                generation = llmService.generateStreamingResponse(getFormattedPrompt(message), message, streamingCallback);
+            }
+
+            generation.thenAccept(finalResponse -> {
                 runOnUiThread(() -> {
+                    renderer.finish();
                     if (finalResponse != null && !finalResponse.equals(AppConstants.LLM_DEFAULT_ERROR_RESPONSE)) {
                         String response = finalResponse.trim();
                         if (response.isEmpty()) {
@@ -709,6 +821,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             }).exceptionally(throwable -> {
                 Log.e(TAG, "Error generating response", throwable);
                 runOnUiThread(() -> {
+                    renderer.finish();
                     if (!aiMessage.hasContent()) {
                         aiMessage.updateText("Error: Unable to generate response. Please try again later.");
                     }
@@ -816,7 +929,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
 
     private void handleImageMessage(Uri imageUri, String message) {
         ChatMessage userMessage = new ChatMessage(message, true);
-        userMessage.setImageUri(imageUri);
+        userMessage.setImageUri(imageUri != null ? imageUri.toString() : null);
         conversationManager.addMessage(userMessage);
         chatAdapter.addMessage(userMessage);
         
@@ -1094,9 +1207,6 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 historyAdapter = null;
                 drawerLayout = null;
                 
-                // Force garbage collection
-                System.gc();
-                
             } catch (Exception e) {
                 Log.e(TAG, "Error during cleanup", e);
             }
@@ -1105,12 +1215,19 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
 
     private void unbindAllServices() {
         if (llmService != null) {
+            llmService.removeStateListener(engineStateListener);
             llmService.releaseResources();
             unbindService(llmConnection);
         }
         if (vlmService != null) unbindService(vlmConnection);
-        if (asrService != null) unbindService(asrConnection);
-        if (ttsService != null) unbindService(ttsConnection);
+        if (asrService != null) {
+            asrService.removeStateListener(engineStateListener);
+            unbindService(asrConnection);
+        }
+        if (ttsService != null) {
+            ttsService.removeStateListener(engineStateListener);
+            unbindService(ttsConnection);
+        }
     }
 
     private void releaseLLMResources() {
@@ -1137,6 +1254,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         public void onServiceConnected(ComponentName name, IBinder service) {
             llmService = ((LLMEngineService.LocalBinder) service).getService();
             if (llmService != null) {
+                llmService.addStateListener(engineStateListener);
                 Toast.makeText(ChatActivity.this, ChatActivity.this.getString(R.string.initializing_model) , Toast.LENGTH_SHORT).show();
                 
                 llmService.initialize().thenAccept(success -> {
@@ -1211,6 +1329,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             Log.d(TAG, "ASR service connected");
             asrService = ((ASREngineService.LocalBinder) service).getService();
             if (asrService != null) {
+                asrService.addStateListener(engineStateListener);
                 asrService.initialize().thenAccept(success -> {
                     asrServiceReady = success;
                     Log.d(TAG, "ASR initialization " + (success ? "successful" : "failed"));
@@ -1246,6 +1365,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             Log.d(TAG, "TTS service connected");
             ttsService = ((TTSEngineService.LocalBinder) service).getService();
             if (ttsService != null) {
+                ttsService.addStateListener(engineStateListener);
                 runOnUiThread(() -> Toast.makeText(ChatActivity.this,
                         ChatActivity.this.getString(R.string.initializing_text_to_speech), Toast.LENGTH_SHORT).show());
                 
@@ -1490,12 +1610,26 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     private void clearCurrentConversation() {
         // Clear the conversation manager
         conversationManager.clearMessages();
+        // Start a new LLM session so the next turn does not continue the old one
+        llmSessionId = UUID.randomUUID().toString();
+        if (llmService != null) {
+            llmService.resetSession();
+        }
         // Clear the chat adapter
         chatAdapter.clearMessages();
         // Update watermark visibility
         updateWatermarkVisibility();
     }
 
+    private List<ChatMessage> getHistoryMessages() {
+        // All messages except the last one, which is the current query
+        List<ChatMessage> allMessages = conversationManager.getMessages();
+        if (allMessages.isEmpty()) {
+            return allMessages;
+        }
+        return new ArrayList<>(allMessages.subList(0, allMessages.size() - 1));
+    }
+
     private String getFormattedPrompt(String userMessage) {
         // If history lookback is 1, only use system prompt + current message
         if (AppConstants.CONVERSATION_HISTORY_LOOKBACK == 1) {
@@ -1516,11 +1650,19 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             }
         }
         
+        // With the tokenizer loaded, keep the most recent turns that fit instead of all or nothing
+        LLMTokenizer tokenizer = llmService != null ? llmService.getTokenizer() : null;
+        if (tokenizer != null) {
+            return PromptManager.formatBudgetedPrompt(userMessage, historyMessages, ModelType.LLAMA_3_2, tokenizer,
+                AppConstants.getLLMMaxSeqLength(this), AppConstants.getLLMMinOutputLength(this));
+        }
+
         // Format with history
         String fullPrompt = PromptManager.formatCompletePrompt(userMessage, historyMessages, ModelType.LLAMA_3_2);
         
-        // Check if prompt might exceed max length (using conservative estimate)
-        if (fullPrompt.length() > AppConstants.getLLMMaxInputLength(this) * 3) { // Assuming average of 3 chars per token
+        // Check if prompt exceeds max length
+        boolean tooLong = fullPrompt.length() > AppConstants.getLLMMaxInputLength(this) * 3; // Assuming average of 3 chars per token
+        if (tooLong) {
             Log.w(TAG, "Prompt too long with history, removing history to fit token limit");
             // Format prompt with empty history list to get just system prompt + user message
             String reducedPrompt = PromptManager.formatCompletePrompt(userMessage, new ArrayList<>(), ModelType.LLAMA_3_2);
@@ -1575,7 +1717,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 case 2:
                     // Save image
                     if (message.hasImage()) {
-                        saveImage(message.getImageUri());
+                        saveImage(Uri.parse(message.getImageUri()));
                     }
                     return true;
             }
@@ -171,7 +171,8 @@ public class MainActivity extends AppCompatActivity {
             initializeStatusIndicators();
 
             settings = getSharedPreferences(AppConstants.PREFS_NAME, MODE_PRIVATE);
-            PromptManager.initialize(this);
+            Context appContext = getApplicationContext();
+            PromptManager.initialize(() -> getHistoryLookback(appContext));
             setupSettings();
             setupBackendSpinner();
         });
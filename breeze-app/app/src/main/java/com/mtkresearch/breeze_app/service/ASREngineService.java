@@ -15,6 +15,7 @@ import android.util.Log;
 import androidx.core.content.ContextCompat;
 
 import com.k2fsa.sherpa.onnx.SherpaASR;
+import com.mtkresearch.breeze_app.utils.AppConstants;
 
 import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
@@ -43,9 +44,15 @@ public class ASREngineService extends BaseEngineService {
 
     @Override
     public CompletableFuture<Boolean> initialize() {
+        setState(EngineState.LOADING);
         return initializeBackends()
             .thenApply(success -> {
-                isInitialized = success;
+                if (!success) {
+                    setState(EngineState.UNLOADED);
+                } else {
+                    // The system engine is only a fallback for the bundled model
+                    setState(backend.equals("default") ? EngineState.DEGRADED : EngineState.READY);
+                }
                 Log.d(TAG, String.format("ASR initialization %s using %s", 
                     success ? "SUCCESS ✅" : "FAILED ❌", backend));
                 return success;
@@ -67,6 +74,7 @@ public class ASREngineService extends BaseEngineService {
                 if (success) {
                     Log.d(TAG, "✅ " + backendName + " ASR initialized");
                     backend = backendName.toLowerCase();
+                    setState(EngineState.WARMING);
                     return testASREngine();
                 }
                 Log.d(TAG, "❌ " + backendName + " ASR failed");
@@ -173,6 +181,17 @@ public class ASREngineService extends BaseEngineService {
     }
 
     public void startListening(Consumer<String> callback) {
+        if (isEvicted()) {
+            // Reload off the main thread, then start listening once the model is back
+            CompletableFuture.supplyAsync(this::ensureResident).thenAccept(reloaded -> mainHandler.post(() -> {
+                if (reloaded) {
+                    startListening(callback);
+                } else {
+                    notifyError(callback, "Failed to reload ASR");
+                }
+            }));
+            return;
+        }
         if (!validateListeningPrerequisites(callback)) return;
         
         try {
@@ -267,10 +286,32 @@ public class ASREngineService extends BaseEngineService {
         }
     }
 
+    @Override
+    public long getResidentBytes() {
+        return backend.equals("local") && sherpaASR != null ? AppConstants.ASR_INIT_MEMORY_BYTES : 0;
+    }
+
+    @Override
+    protected boolean isBusy() {
+        return isListening;
+    }
+
+    @Override
+    protected void evictEngine() {
+        if (sherpaASR != null) {
+            sherpaASR.release();
+            sherpaASR = null;
+        }
+    }
+
     @Override
     public void onDestroy() {
+        if (getState() != EngineState.UNLOADED) {
+            setState(EngineState.RELEASING);
+        }
         if (sherpaASR != null) sherpaASR.release();
         if (speechRecognizer != null) speechRecognizer.destroy();
+        setState(EngineState.UNLOADED);
         super.onDestroy();
     }
 
@@ -307,7 +348,7 @@ public class ASREngineService extends BaseEngineService {
     }
 
     private boolean validateListeningPrerequisites(Consumer<String> callback) {
-        if (!isInitialized) {
+        if (!isReady()) {
             notifyError(callback, "ASR not initialized");
             return false;
         }
@@ -4,15 +4,42 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.content.Context;
+import android.util.Log;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public abstract class BaseEngineService extends Service {
+public abstract class BaseEngineService extends Service implements EngineResidencyManager.Resident {
     protected static final String TAG = "BaseEngineService";
     protected Context context;
     protected String backend = "mock"; // Default to mock backend
-    protected boolean isInitialized = false;
+
+    // Lifecycle state, guarded by stateLock
+    private final Object stateLock = new Object();
+    private EngineState state = EngineState.UNLOADED;
+    private final long[] stateEnteredAt = new long[EngineState.values().length];
+    private final long[] stateDurationMs = new long[EngineState.values().length];
+    private long loadStartedAt = 0;
+    private final List<StateListener> stateListeners = new CopyOnWriteArrayList<>();
+
+    // Eviction under memory pressure, see EngineResidencyManager
+    private final Object residencyLock = new Object();
+    private volatile boolean evicted = false;
+
+    {
+        stateEnteredAt[EngineState.UNLOADED.ordinal()] = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Notified on the thread that changed the state, after the change has been applied.
+     */
+    public interface StateListener {
+        void onStateChanged(BaseEngineService service, EngineState from, EngineState to);
+    }
 
     public class LocalBinder<T extends BaseEngineService> extends Binder {
         @SuppressWarnings("unchecked")
@@ -36,8 +63,209 @@ public abstract class BaseEngineService extends Service {
     }
 
     public abstract CompletableFuture<Boolean> initialize();
-    
+
+    /**
+     * Whether the engine can take requests. An evicted engine counts as ready since it reloads
+     * on its next use.
+     */
     public boolean isReady() {
-        return isInitialized;
+        return getState().isUsable() || evicted;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    @Override
+    public String getResidentName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public long getResidentBytes() {
+        return 0;
+    }
+
+    /**
+     * Whether the engine is serving a request and must not be evicted.
+     */
+    protected boolean isBusy() {
+        return false;
+    }
+
+    /**
+     * Frees the engine's native resources for an eviction. Called with the state RELEASING.
+     */
+    protected void evictEngine() {
+    }
+
+    /**
+     * Loads the engine again after an eviction, moving it through the usual states.
+     * @return true if the engine is usable again
+     */
+    protected boolean reloadEngine() throws Exception {
+        return initialize().get();
+    }
+
+    @Override
+    public final boolean evict() {
+        synchronized (residencyLock) {
+            if (!getState().isUsable() || isBusy()) {
+                return false;
+            }
+            evicted = true;
+            setState(EngineState.RELEASING);
+            try {
+                evictEngine();
+            } finally {
+                setState(EngineState.UNLOADED);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reloads the engine if it was evicted, otherwise marks it as recently used. Call it before
+     * serving each request. Blocks while reloading, so never call it on the main thread.
+     * @return false if the engine was evicted and could not be reloaded
+     */
+    protected boolean ensureResident() {
+        synchronized (residencyLock) {
+            if (!evicted) {
+                EngineResidencyManager.getInstance().touch(this);
+                return true;
+            }
+            Log.i(getClass().getSimpleName(), "Reloading evicted engine");
+            boolean reloaded = false;
+            try {
+                reloaded = reloadEngine();
+            } catch (Exception e) {
+                Log.e(getClass().getSimpleName(), "Error reloading evicted engine", e);
+            }
+            if (!reloaded) {
+                // Report the engine as not ready rather than retrying on every request
+                evicted = false;
+            }
+            return reloaded;
+        }
+    }
+
+    public EngineState getState() {
+        synchronized (stateLock) {
+            return state;
+        }
+    }
+
+    /**
+     * Returns the {@link SystemClock#elapsedRealtime()} at which the engine last entered the state,
+     * or 0 if it never has.
+     */
+    public long getStateEnteredAt(EngineState state) {
+        synchronized (stateLock) {
+            return stateEnteredAt[state.ordinal()];
+        }
+    }
+
+    /**
+     * Time spent in the state since the current load started, for a per-phase startup breakdown.
+     * Does not include time in the current state.
+     */
+    public long getStateDurationMs(EngineState state) {
+        synchronized (stateLock) {
+            return stateDurationMs[state.ordinal()];
+        }
+    }
+
+    public void addStateListener(StateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    public void removeStateListener(StateListener listener) {
+        stateListeners.remove(listener);
+    }
+
+    /**
+     * Blocks until the engine is in one of the given states.
+     * @return true if it reached one of them within the timeout
+     */
+    public boolean awaitState(long timeoutMs, EngineState... targets) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        synchronized (stateLock) {
+            while (!isOneOf(state, targets)) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                stateLock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Moves the engine to a new state and notifies listeners. Illegal transitions are logged
+     * and ignored.
+     * @return true if the state changed
+     */
+    protected boolean setState(EngineState next) {
+        EngineState previous;
+        String breakdown = null;
+        synchronized (stateLock) {
+            previous = state;
+            if (previous == next) {
+                return false;
+            }
+            if (!previous.canTransitionTo(next)) {
+                Log.w(getClass().getSimpleName(), "Ignoring illegal state transition " + previous + " -> " + next);
+                return false;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            long spent = now - stateEnteredAt[previous.ordinal()];
+            if (next == EngineState.LOADING && previous != EngineState.WARMING) {
+                // A new load starts a new breakdown
+                loadStartedAt = now;
+                Arrays.fill(stateDurationMs, 0);
+            } else {
+                stateDurationMs[previous.ordinal()] += spent;
+            }
+            state = next;
+            stateEnteredAt[next.ordinal()] = now;
+            if (next.isUsable() && !previous.isUsable()) {
+                breakdown = formatStartupBreakdown(now);
+                evicted = false;
+            }
+            Log.d(getClass().getSimpleName(), previous + " -> " + next + " after " + spent + " ms");
+            stateLock.notifyAll();
+        }
+
+        if (breakdown != null) {
+            Log.i(getClass().getSimpleName(), "Startup breakdown: " + breakdown);
+            EngineResidencyManager.getInstance().onLoaded(this);
+        } else if (next == EngineState.UNLOADED) {
+            EngineResidencyManager.getInstance().onUnloaded(this);
+        }
+        for (StateListener listener : stateListeners) {
+            try {
+                listener.onStateChanged(this, previous, next);
+            } catch (Exception e) {
+                Log.e(getClass().getSimpleName(), "Error in state listener", e);
+            }
+        }
+        return true;
+    }
+
+    private String formatStartupBreakdown(long now) {
+        return "loading " + stateDurationMs[EngineState.LOADING.ordinal()] + " ms, warming "
+            + stateDurationMs[EngineState.WARMING.ordinal()] + " ms, total " + (now - loadStartedAt) + " ms";
+    }
+
+    private static boolean isOneOf(EngineState state, EngineState[] targets) {
+        for (EngineState target : targets) {
+            if (state == target) {
+                return true;
+            }
+        }
+        return false;
     }
-} 
\ No newline at end of file
+}
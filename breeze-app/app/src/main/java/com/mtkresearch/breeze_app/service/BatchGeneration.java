@@ -0,0 +1,323 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a JSONL file of prompts back to back and appends one JSONL result per prompt, with its
+ * generation metrics. Each input line holds {@code {"id": "...", "prompt": "..."}} and optionally
+ * {@code "formatted": true} for a prompt that already carries the chat template and
+ * {@code "max_tokens"}. The output file doubles as the checkpoint: items with a successful result
+ * in it are skipped, so a batch killed with its process resumes where it stopped. Failed items run
+ * again on resume and get a second line; the last line for an id is the one that counts.
+ */
+public class BatchGeneration {
+    private static final String TAG = "BatchGeneration";
+    private static final String STATUS_OK = "ok";
+    private static final String STATUS_ERROR = "error";
+
+    public static final class Item {
+        final int index;
+        final String id;
+        final String prompt;
+        final boolean formatted;
+        final int maxTokens;
+
+        Item(int index, String id, String prompt, boolean formatted, int maxTokens) {
+            this.index = index;
+            this.id = id;
+            this.prompt = prompt;
+            this.formatted = formatted;
+            this.maxTokens = maxTokens;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Generates the response to one item.
+     */
+    interface Generator {
+        Result generate(Item item) throws Exception;
+    }
+
+    static final class Result {
+        final String response;
+        final GenerationMetrics metrics;
+
+        Result(String response, GenerationMetrics metrics) {
+            this.response = response;
+            this.metrics = metrics;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the batch thread after each item's result has been written.
+         */
+        void onItemFinished(Item item, boolean succeeded, int finished, int total);
+    }
+
+    public static final class Summary {
+        private final int total;
+        private final int skipped;
+        private final int succeeded;
+        private final int failed;
+        private final long generatedTokens;
+        private final long elapsedMs;
+
+        Summary(int total, int skipped, int succeeded, int failed, long generatedTokens, long elapsedMs) {
+            this.total = total;
+            this.skipped = skipped;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.generatedTokens = generatedTokens;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Items already in the output file when the run started.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Items neither written before nor during this run, e.g. because the run was cancelled.
+         */
+        public int getRemaining() {
+            return total - skipped - succeeded - failed;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        /**
+         * Generated tokens per second of wall time over this run, including prefill and gaps.
+         */
+        public double getTokensPerSecond() {
+            return elapsedMs > 0 ? generatedTokens * 1000.0 / elapsedMs : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d items: %d skipped, %d succeeded, %d failed, %d remaining in %d ms (%.2f tokens/s)",
+                total, skipped, succeeded, failed, getRemaining(), elapsedMs, getTokensPerSecond());
+        }
+    }
+
+    private BatchGeneration() {}
+
+    /**
+     * Runs every item of the input that is not in the output yet and appends its result.
+     * Each result line is synced to storage before the next item starts.
+     * @param cancelled Checked between items; the run stops early once it returns true
+     */
+    static Summary run(File input, File output, Generator generator, Listener listener,
+                       BooleanSupplier cancelled) throws IOException {
+        List<Item> items = readItems(input);
+        Set<String> done = readCheckpoint(output);
+        int skipped = 0;
+        for (Item item : items) {
+            if (done.contains(item.id)) {
+                skipped++;
+            }
+        }
+        Log.i(TAG, "Batch of " + items.size() + " items, " + skipped + " already done");
+
+        long startTime = System.currentTimeMillis();
+        int succeeded = 0;
+        int failed = 0;
+        long generatedTokens = 0;
+        try (FileOutputStream out = new FileOutputStream(output, true)) {
+            for (Item item : items) {
+                if (done.contains(item.id)) {
+                    continue;
+                }
+                if (cancelled.getAsBoolean()) {
+                    Log.i(TAG, "Batch cancelled before item " + item.id);
+                    break;
+                }
+
+                JsonObject line;
+                boolean itemSucceeded;
+                try {
+                    Result result = generator.generate(item);
+                    line = resultLine(item, result);
+                    generatedTokens += result.metrics != null ? result.metrics.getGeneratedTokens() : 0;
+                    itemSucceeded = true;
+                } catch (Exception e) {
+                    if (cancelled.getAsBoolean()) {
+                        // Interrupted by the cancellation, not a result; the item runs on resume
+                        Log.i(TAG, "Batch cancelled during item " + item.id);
+                        break;
+                    }
+                    Log.e(TAG, "Item " + item.id + " failed", e);
+                    line = errorLine(item, e);
+                    itemSucceeded = false;
+                }
+
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                out.getFD().sync();
+                if (itemSucceeded) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+                if (listener != null) {
+                    listener.onItemFinished(item, itemSucceeded, skipped + succeeded + failed, items.size());
+                }
+            }
+        }
+
+        Summary summary = new Summary(items.size(), skipped, succeeded, failed, generatedTokens,
+            System.currentTimeMillis() - startTime);
+        Log.i(TAG, "Batch finished: " + summary);
+        return summary;
+    }
+
+    /**
+     * Parses the input file. Blank lines are ignored; an item without an id gets its line number.
+     */
+    static List<Item> readItems(File input) throws IOException {
+        List<Item> items = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                    if (!json.has("prompt")) {
+                        throw new IOException("Line " + lineNumber + " has no prompt");
+                    }
+                    String id = json.has("id") ? json.get("id").getAsString() : String.valueOf(lineNumber);
+                    if (!ids.add(id)) {
+                        throw new IOException("Line " + lineNumber + " repeats id " + id);
+                    }
+                    items.add(new Item(items.size(), id, json.get("prompt").getAsString(),
+                        json.has("formatted") && json.get("formatted").getAsBoolean(),
+                        json.has("max_tokens") ? json.get("max_tokens").getAsInt() : 0));
+                } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+                    throw new IOException("Line " + lineNumber + " is not a valid item", e);
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Collects the ids that already have a successful result in the output. Unreadable lines are
+     * skipped, so one corrupt line does not lose the results after it. A last line cut off by
+     * process death is truncated away so that the item runs again.
+     */
+    static Set<String> readCheckpoint(File output) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!output.exists()) {
+            return done;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            int lineStart = 0;
+            int lineNumber = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+                lineNumber++;
+                try {
+                    JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                    String id = json.get("id").getAsString();
+                    if (STATUS_OK.equals(json.get("status").getAsString())) {
+                        done.add(id);
+                    } else {
+                        done.remove(id);
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Skipping unreadable checkpoint line " + lineNumber + ": " + line);
+                }
+            }
+            if (lineStart < data.length) {
+                Log.w(TAG, "Truncating partial last checkpoint line of " + (data.length - lineStart) + " bytes");
+                file.setLength(lineStart);
+            }
+        }
+        return done;
+    }
+
+    private static JsonObject resultLine(Item item, Result result) {
+        JsonObject line = new JsonObject();
+        line.addProperty("id", item.id);
+        line.addProperty("index", item.index);
+        line.addProperty("status", STATUS_OK);
+        line.addProperty("response", result.response);
+        GenerationMetrics metrics = result.metrics;
+        if (metrics != null) {
+            JsonObject json = new JsonObject();
+            json.addProperty("queue_wait_ms", metrics.getQueueWaitMs());
+            json.addProperty("time_to_first_token_ms", metrics.getTimeToFirstTokenMs());
+            json.addProperty("prompt_tokens", metrics.getPromptTokens());
+            json.addProperty("prefill_ms", metrics.getPrefillMs());
+            json.addProperty("prefill_tokens_per_second", metrics.getPrefillTokensPerSecond());
+            json.addProperty("generated_tokens", metrics.getGeneratedTokens());
+            json.addProperty("decode_ms", metrics.getDecodeMs());
+            json.addProperty("decode_tokens_per_second", metrics.getDecodeTokensPerSecond());
+            json.addProperty("inter_token_p50_ms", metrics.getInterTokenP50Ms());
+            json.addProperty("inter_token_p95_ms", metrics.getInterTokenP95Ms());
+            line.add("metrics", json);
+        }
+        return line;
+    }
+
+    private static JsonObject errorLine(Item item, Exception error) {
+        JsonObject line = new JsonObject();
+        line.addProperty("id", item.id);
+        line.addProperty("index", item.index);
+        line.addProperty("status", STATUS_ERROR);
+        line.addProperty("error", String.valueOf(error.getMessage()));
+        return line;
+    }
+}
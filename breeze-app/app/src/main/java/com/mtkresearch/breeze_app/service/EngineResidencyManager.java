@@ -0,0 +1,198 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the combined native footprint of the loaded engines within a memory budget. Engines are
+ * tracked in least-recently-used order; when a new engine loads past the budget, or the system
+ * reports memory pressure, idle engines are evicted oldest first. An evicted engine reloads the
+ * next time it is used. Evictions run on a dedicated thread since freeing a model can take a while.
+ */
+public class EngineResidencyManager {
+    private static final String TAG = "EngineResidencyManager";
+
+    /**
+     * An engine whose native resources can be freed and later reloaded.
+     */
+    public interface Resident {
+        String getResidentName();
+
+        /**
+         * Estimated native memory held while loaded, 0 if freeing it gains nothing.
+         */
+        long getResidentBytes();
+
+        /**
+         * Frees the engine's native resources unless it is in use.
+         * @return true if the engine was evicted
+         */
+        boolean evict();
+    }
+
+    private static volatile EngineResidencyManager instance;
+
+    // Access-ordered, so iteration starts at the least recently used engine
+    private final Map<Resident, Long> residents = new LinkedHashMap<>(8, 0.75f, true);
+    private final Executor executor;
+    private volatile long budgetBytes;
+    private int evictionCount = 0;
+
+    public static EngineResidencyManager getInstance() {
+        if (instance == null) {
+            synchronized (EngineResidencyManager.class) {
+                if (instance == null) {
+                    instance = new EngineResidencyManager(Long.MAX_VALUE,
+                        Executors.newSingleThreadExecutor(r -> new Thread(r, "EngineResidency")));
+                }
+            }
+        }
+        return instance;
+    }
+
+    EngineResidencyManager(long budgetBytes, Executor executor) {
+        this.budgetBytes = budgetBytes;
+        this.executor = executor;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Sets the combined footprint allowed for loaded engines and evicts engines above it.
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trimTo(budgetBytes, null);
+    }
+
+    /**
+     * Combined footprint of the loaded engines.
+     */
+    public synchronized long getResidentBytes() {
+        long total = 0;
+        for (long bytes : residents.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public synchronized boolean isResident(Resident resident) {
+        return residents.containsKey(resident);
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Records that an engine finished loading and evicts older engines if the budget is exceeded.
+     */
+    public void onLoaded(Resident resident) {
+        long bytes = Math.max(0, resident.getResidentBytes());
+        synchronized (this) {
+            residents.put(resident, bytes);
+        }
+        Log.d(TAG, resident.getResidentName() + " loaded, " + (bytes >> 20) + " MB");
+        trimTo(budgetBytes, resident);
+    }
+
+    /**
+     * Records that an engine released its resources, whether evicted or not.
+     */
+    public synchronized void onUnloaded(Resident resident) {
+        residents.remove(resident);
+    }
+
+    /**
+     * Marks an engine as the most recently used one.
+     */
+    public synchronized void touch(Resident resident) {
+        residents.get(resident);
+    }
+
+    /**
+     * Reacts to {@link ComponentCallbacks2#onTrimMemory(int)}. The harder the system is pressed,
+     * the less stays loaded; the most recently used engine survives everything short of a
+     * critical level.
+     */
+    public void onTrimMemory(int level) {
+        long target;
+        boolean keepRecent;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            target = 0;
+            keepRecent = false;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            target = 0;
+            keepRecent = true;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            target = budgetBytes / 2;
+            keepRecent = true;
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            target = 0;
+            keepRecent = false;
+        } else {
+            // RUNNING_MODERATE and UI_HIDDEN: the user may be back any moment, keep engines warm
+            return;
+        }
+        Log.i(TAG, "onTrimMemory(" + level + "), trimming to " + (target >> 20) + " MB");
+        trimTo(target, keepRecent ? mostRecent() : null);
+    }
+
+    public void onLowMemory() {
+        Log.i(TAG, "onLowMemory, evicting all idle engines");
+        trimTo(0, null);
+    }
+
+    private synchronized Resident mostRecent() {
+        Resident last = null;
+        for (Resident resident : residents.keySet()) {
+            last = resident;
+        }
+        return last;
+    }
+
+    /**
+     * Evicts idle engines, least recently used first, until the footprint fits the target.
+     * @param keep Engine that is never evicted, or null
+     */
+    private void trimTo(long targetBytes, Resident keep) {
+        executor.execute(() -> {
+            List<Resident> candidates;
+            synchronized (this) {
+                candidates = new ArrayList<>(residents.keySet());
+            }
+            for (Resident resident : candidates) {
+                if (getResidentBytes() <= targetBytes) {
+                    return;
+                }
+                if (resident == keep || !isResident(resident) || resident.getResidentBytes() <= 0) {
+                    continue;
+                }
+                try {
+                    if (resident.evict()) {
+                        synchronized (this) {
+                            residents.remove(resident);
+                            evictionCount++;
+                        }
+                        Log.i(TAG, "Evicted " + resident.getResidentName() + ", "
+                            + (getResidentBytes() >> 20) + " MB still loaded");
+                    } else {
+                        Log.d(TAG, resident.getResidentName() + " is busy, not evicting");
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error evicting " + resident.getResidentName(), e);
+                }
+            }
+        });
+    }
+}
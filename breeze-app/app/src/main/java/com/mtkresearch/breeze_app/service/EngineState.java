@@ -0,0 +1,39 @@
+package com.mtkresearch.breeze_app.service;
+
+/**
+ * Lifecycle of an engine service. Engines move UNLOADED -> LOADING -> (WARMING) -> READY and
+ * back through RELEASING; DEGRADED means usable, but not on the preferred backend or path.
+ */
+public enum EngineState {
+    UNLOADED,   // Nothing loaded
+    LOADING,    // Loading models or native backends
+    WARMING,    // Loaded, running warm-up work such as prefilling or calibration
+    READY,      // Serving requests on the preferred path
+    DEGRADED,   // Serving requests on a fallback path
+    RELEASING;  // Freeing resources
+
+    /**
+     * Whether the engine can serve requests in this state.
+     */
+    public boolean isUsable() {
+        return this == READY || this == DEGRADED;
+    }
+
+    boolean canTransitionTo(EngineState next) {
+        switch (this) {
+            case UNLOADED:
+                return next == LOADING;
+            case LOADING:
+            case WARMING:
+                // Calibration alternates between loading and warming; any outcome may follow
+                return true;
+            case READY:
+            case DEGRADED:
+                return next == READY || next == DEGRADED || next == LOADING || next == RELEASING;
+            case RELEASING:
+                return next == UNLOADED;
+            default:
+                return false;
+        }
+    }
+}
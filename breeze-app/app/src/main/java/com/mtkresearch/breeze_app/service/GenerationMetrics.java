@@ -0,0 +1,114 @@
+package com.mtkresearch.breeze_app.service;
+
+import androidx.annotation.NonNull;
+
+import com.mtkresearch.breeze_app.utils.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * Timing breakdown of one generation request. Prefill is measured from the start of the run to
+ * the first token, decode from the first to the last token. Token counts refer to the tokens the
+ * runtime emitted, including a final stop token.
+ */
+public class GenerationMetrics {
+    private final long queueWaitMs;
+    private final double timeToFirstTokenMs;
+    private final int promptTokens;
+    private final double prefillMs;
+    private final int generatedTokens;
+    private final double decodeMs;
+    private final float runtimeTokensPerSecond;
+    private final double interTokenP50Ms;
+    private final double interTokenP95Ms;
+    private final double interTokenP99Ms;
+    private final double interTokenMaxMs;
+
+    GenerationMetrics(long queueWaitMs, double timeToFirstTokenMs, int promptTokens, double prefillMs,
+                      int generatedTokens, double decodeMs, float runtimeTokensPerSecond,
+                      LatencyHistogram interTokenLatency) {
+        this.queueWaitMs = queueWaitMs;
+        this.timeToFirstTokenMs = timeToFirstTokenMs;
+        this.promptTokens = promptTokens;
+        this.prefillMs = prefillMs;
+        this.generatedTokens = generatedTokens;
+        this.decodeMs = decodeMs;
+        this.runtimeTokensPerSecond = runtimeTokensPerSecond;
+        this.interTokenP50Ms = interTokenLatency.getPercentileMs(50);
+        this.interTokenP95Ms = interTokenLatency.getPercentileMs(95);
+        this.interTokenP99Ms = interTokenLatency.getPercentileMs(99);
+        this.interTokenMaxMs = interTokenLatency.getMaxMs();
+    }
+
+    public long getQueueWaitMs() {
+        return queueWaitMs;
+    }
+
+    /**
+     * Time from submission to the first token, including queue wait. -1 if no token was produced.
+     */
+    public double getTimeToFirstTokenMs() {
+        return timeToFirstTokenMs;
+    }
+
+    /**
+     * Prompt tokens prefilled for this request, or -1 if the tokenizer was unavailable.
+     */
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    public double getPrefillMs() {
+        return prefillMs;
+    }
+
+    public double getPrefillTokensPerSecond() {
+        return promptTokens > 0 && prefillMs > 0 ? promptTokens * 1000.0 / prefillMs : 0;
+    }
+
+    public int getGeneratedTokens() {
+        return generatedTokens;
+    }
+
+    public double getDecodeMs() {
+        return decodeMs;
+    }
+
+    public double getDecodeTokensPerSecond() {
+        return generatedTokens > 1 && decodeMs > 0 ? (generatedTokens - 1) * 1000.0 / decodeMs : 0;
+    }
+
+    /**
+     * Tokens per second as reported by the runtime's stats callback, or 0 if not reported.
+     */
+    public float getRuntimeTokensPerSecond() {
+        return runtimeTokensPerSecond;
+    }
+
+    public double getInterTokenP50Ms() {
+        return interTokenP50Ms;
+    }
+
+    public double getInterTokenP95Ms() {
+        return interTokenP95Ms;
+    }
+
+    public double getInterTokenP99Ms() {
+        return interTokenP99Ms;
+    }
+
+    public double getInterTokenMaxMs() {
+        return interTokenMaxMs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "GenerationMetrics{queue=%dms, ttft=%.1fms, prefill=%d tok in %.1fms (%.1f tok/s), "
+                + "decode=%d tok in %.1fms (%.1f tok/s), itl p50/p95/p99/max=%.1f/%.1f/%.1f/%.1fms}",
+            queueWaitMs, timeToFirstTokenMs, promptTokens, prefillMs, getPrefillTokensPerSecond(),
+            generatedTokens, decodeMs, getDecodeTokensPerSecond(),
+            interTokenP50Ms, interTokenP95Ms, interTokenP99Ms, interTokenMaxMs);
+    }
+}
@@ -0,0 +1,401 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle for one LLM generation queued on {@link LLMEngineService}. Each request owns its
+ * response buffer and future, so concurrent callers never see each other's output.
+ */
+public class GenerationRequest {
+    public enum Priority {
+        INTERACTIVE,  // User-facing chat turns, served first and never preempted
+        BACKGROUND    // Titles and other deferred work, preempted by interactive requests
+    }
+
+    /**
+     * Work run on the generation thread. Tokens are reported through {@link #deliverToken(String)}.
+     */
+    interface Job {
+        void run(GenerationRequest request) throws Exception;
+    }
+
+    static final String STOPPED_RESPONSE = "[Generation stopped by user]";
+    private static final String TAG = "GenerationRequest";
+
+    private static final AtomicLong idGenerator = new AtomicLong();
+
+    private final long id = idGenerator.incrementAndGet();
+    private final Priority priority;
+    private final LLMEngineService.StreamingResponseCallback callback;
+    private final Job job;
+    private final GenerationScheduler scheduler;
+    private final CompletableFuture<String> future = new CompletableFuture<>();
+    private final StringBuilder response = new StringBuilder();
+
+    private final long enqueueTimeNanos = System.nanoTime();
+    private volatile long startTimeNanos = 0;
+    private volatile long endTimeNanos = 0;
+    private volatile boolean cancelled = false;
+    private volatile boolean preempted = false;
+    private volatile int preemptionCount = 0;
+    // Set by a job that returns before all of its output was delivered, see deferCompletion()
+    private volatile boolean deferred = false;
+
+    // Token timing, written on the generation thread only
+    private final LatencyHistogram interTokenLatency = new LatencyHistogram();
+    private volatile long runStartNanos = 0;
+    private volatile long firstTokenNanos = 0;
+    private volatile long lastTokenNanos = 0;
+    private volatile int generatedTokens = 0;
+    private volatile int promptTokens = -1;
+    private volatile float runtimeTokensPerSecond = 0;
+
+    // Safety gate: output is held back from the callback until the prompt's verdict is known
+    private CompletableFuture<SafetyGuard.Verdict> safetyGate = null;
+    private int forwardedLength = 0;
+    private boolean blocked = false;
+
+    // Delivered tokens, kept only when the response is going to be cached
+    private List<String> capturedTokens = null;
+
+    GenerationRequest(GenerationScheduler scheduler, Priority priority,
+                      LLMEngineService.StreamingResponseCallback callback, Job job) {
+        this.scheduler = scheduler;
+        this.priority = priority;
+        this.callback = callback;
+        this.job = job;
+        future.whenComplete((result, error) -> endTimeNanos = System.nanoTime());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Completes with the full response, with the partial response if cancelled,
+     * or exceptionally if generation failed.
+     */
+    public CompletableFuture<String> getFuture() {
+        return future;
+    }
+
+    /**
+     * Cancels the request. A queued request is dropped; a running one is stopped and its future
+     * completes immediately with the text generated so far.
+     * @return false if the request had already completed
+     */
+    public boolean cancel() {
+        return scheduler.cancel(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Time spent in the queue before the request first started running. For a request that
+     * has not started yet this is the time it has waited so far.
+     */
+    public long getQueueWaitMs() {
+        long start = startTimeNanos;
+        long end = start != 0 ? start : (endTimeNanos != 0 ? endTimeNanos : System.nanoTime());
+        return TimeUnit.NANOSECONDS.toMillis(end - enqueueTimeNanos);
+    }
+
+    /**
+     * Time from first start to completion, including any time spent preempted.
+     */
+    public long getServiceTimeMs() {
+        long start = startTimeNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endTimeNanos != 0 ? endTimeNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - start);
+    }
+
+    public int getPreemptionCount() {
+        return preemptionCount;
+    }
+
+    /**
+     * Returns the timing breakdown recorded so far. Complete once the future has completed.
+     */
+    public GenerationMetrics getMetrics() {
+        long first = firstTokenNanos;
+        long last = lastTokenNanos;
+        double timeToFirstTokenMs = first != 0 ? (first - enqueueTimeNanos) / 1e6 : -1;
+        double prefillMs = first != 0 ? (first - runStartNanos) / 1e6 : 0;
+        double decodeMs = first != 0 ? (last - first) / 1e6 : 0;
+        synchronized (interTokenLatency) {
+            return new GenerationMetrics(getQueueWaitMs(), timeToFirstTokenMs, promptTokens, prefillMs,
+                generatedTokens, decodeMs, runtimeTokensPerSecond, interTokenLatency);
+        }
+    }
+
+    /**
+     * Records that the runtime emitted a token. Called from the runtime callback for every token,
+     * including ones the stop matcher holds back.
+     */
+    void recordToken() {
+        long now = System.nanoTime();
+        if (firstTokenNanos == 0) {
+            firstTokenNanos = now;
+        } else {
+            synchronized (interTokenLatency) {
+                interTokenLatency.recordNanos(now - lastTokenNanos);
+            }
+        }
+        lastTokenNanos = now;
+        generatedTokens++;
+    }
+
+    void setPromptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    void setRuntimeTokensPerSecond(float tokensPerSecond) {
+        this.runtimeTokensPerSecond = tokensPerSecond;
+    }
+
+    LLMEngineService.StreamingResponseCallback getCallback() {
+        return callback;
+    }
+
+    /**
+     * Whether tokens for this request should still be produced.
+     */
+    boolean isActive() {
+        return !cancelled && !preempted && !future.isDone();
+    }
+
+    boolean isPreempted() {
+        return preempted;
+    }
+
+    /**
+     * Holds back output until the verdict completes. A safe verdict releases the held text, an
+     * unsafe one replaces the response with a refusal. A verdict that fails lets the output through.
+     */
+    void setSafetyGate(CompletableFuture<SafetyGuard.Verdict> verdict) {
+        synchronized (response) {
+            safetyGate = verdict;
+        }
+    }
+
+    /**
+     * Appends a generated token and forwards it to the caller's callback, unless a safety
+     * verdict is still pending.
+     */
+    void deliverToken(String token) {
+        String forward;
+        synchronized (response) {
+            if (!isActive()) {
+                return;
+            }
+            response.append(token);
+            if (capturedTokens != null) {
+                capturedTokens.add(token);
+            }
+            if (safetyGate != null && !safetyGate.isDone()) {
+                return;
+            }
+            forward = response.substring(forwardedLength);
+            forwardedLength = response.length();
+        }
+        if (!passSafetyGate(0)) {
+            return;
+        }
+        if (callback != null && !forward.isEmpty()) {
+            callback.onToken(forward);
+        }
+    }
+
+    /**
+     * Waits for a pending verdict and applies it.
+     * @return false if the prompt was found unsafe
+     */
+    private boolean passSafetyGate(long timeoutMs) {
+        CompletableFuture<SafetyGuard.Verdict> gate;
+        synchronized (response) {
+            if (blocked) {
+                return false;
+            }
+            gate = safetyGate;
+        }
+        if (gate == null) {
+            return true;
+        }
+
+        SafetyGuard.Verdict verdict = null;
+        try {
+            verdict = timeoutMs > 0 ? gate.get(timeoutMs, TimeUnit.MILLISECONDS) : gate.getNow(null);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Request " + id + ": no safety verdict after " + timeoutMs + " ms, releasing output");
+        } catch (Exception e) {
+            Log.w(TAG, "Request " + id + ": safety check failed, releasing output", e);
+        }
+
+        String held;
+        synchronized (response) {
+            safetyGate = null;
+            if (verdict != null && !verdict.isSafe()) {
+                Log.i(TAG, "Request " + id + " blocked by safety guard: " + verdict);
+                blocked = true;
+                response.setLength(0);
+                response.append(AppConstants.LLM_UNSAFE_PROMPT_RESPONSE);
+                held = null;
+            } else {
+                held = response.substring(forwardedLength);
+                forwardedLength = response.length();
+            }
+        }
+        if (callback != null) {
+            String text = held != null ? held : AppConstants.LLM_UNSAFE_PROMPT_RESPONSE;
+            if (!text.isEmpty()) {
+                callback.onToken(text);
+            }
+        }
+        if (held == null) {
+            future.complete(AppConstants.LLM_UNSAFE_PROMPT_RESPONSE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts keeping every delivered token, see {@link #getCapturedTokens()}.
+     */
+    void captureTokens() {
+        synchronized (response) {
+            capturedTokens = new ArrayList<>();
+        }
+    }
+
+    List<String> getCapturedTokens() {
+        synchronized (response) {
+            return capturedTokens != null ? new ArrayList<>(capturedTokens) : null;
+        }
+    }
+
+    /**
+     * Whether the safety guard replaced the response with a refusal.
+     */
+    boolean isBlocked() {
+        synchronized (response) {
+            return blocked;
+        }
+    }
+
+    String getResponse() {
+        synchronized (response) {
+            return response.toString();
+        }
+    }
+
+    void run() throws Exception {
+        job.run(this);
+    }
+
+    /**
+     * Lets the job return while its output is still being delivered from another thread, freeing
+     * the generation thread for the next request. The deliverer calls {@link #finishDeferred()}.
+     */
+    void deferCompletion() {
+        deferred = true;
+        scheduler.addDeferred(this);
+    }
+
+    boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Completes a deferred request once its last output was delivered.
+     */
+    void finishDeferred() {
+        if (isActive()) {
+            complete(getResponse());
+        }
+        scheduler.finishDeferred(this);
+    }
+
+    void markStarted() {
+        runStartNanos = System.nanoTime();
+        if (startTimeNanos == 0) {
+            startTimeNanos = runStartNanos;
+        }
+    }
+
+    void markPreempted() {
+        preempted = true;
+    }
+
+    void markCancelled() {
+        cancelled = true;
+    }
+
+    /**
+     * Drops the partial output of a preempted run so the request can start over.
+     */
+    void resetForRetry() {
+        synchronized (response) {
+            response.setLength(0);
+            forwardedLength = 0;
+            if (capturedTokens != null) {
+                capturedTokens.clear();
+            }
+            preempted = false;
+            preemptionCount++;
+        }
+        // Timing restarts with the next run
+        synchronized (interTokenLatency) {
+            interTokenLatency.reset();
+        }
+        firstTokenNanos = 0;
+        lastTokenNanos = 0;
+        generatedTokens = 0;
+        runtimeTokensPerSecond = 0;
+    }
+
+    /**
+     * Completes with the result once any pending safety verdict has been applied.
+     */
+    boolean complete(String result) {
+        if (!passSafetyGate(AppConstants.SAFETY_GUARD_TIMEOUT_MS)) {
+            return false;
+        }
+        return future.complete(result);
+    }
+
+    boolean completeExceptionally(Throwable error) {
+        return future.completeExceptionally(error);
+    }
+
+    void completeCancelled() {
+        String partial;
+        synchronized (response) {
+            // Text still held for a safety verdict is never shown
+            partial = response.substring(0, forwardedLength);
+        }
+        future.complete(partial.isEmpty() ? STOPPED_RESPONSE : partial);
+    }
+}
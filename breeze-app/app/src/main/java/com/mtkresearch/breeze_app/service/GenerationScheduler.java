@@ -0,0 +1,237 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Serializes generations on the single loaded model. Requests run one at a time on a dedicated
+ * thread, interactive before background and FIFO within a class. Submitting an interactive
+ * request stops a running background request, which is then re-queued and restarted.
+ */
+class GenerationScheduler {
+    private static final String TAG = "GenerationScheduler";
+
+    private static final Comparator<GenerationRequest> ORDER =
+        Comparator.<GenerationRequest>comparingInt(r -> r.getPriority().ordinal())
+            .thenComparingLong(GenerationRequest::getId);
+
+    private final PriorityBlockingQueue<GenerationRequest> queue = new PriorityBlockingQueue<>(11, ORDER);
+    private final Runnable interrupter;
+    private final Object lock = new Object();
+    private GenerationRequest running = null;
+    // Requests whose job returned while their output is still being delivered
+    private final List<GenerationRequest> deferred = new ArrayList<>();
+    private Thread worker = null;
+    private boolean shutdown = false;
+
+    /**
+     * @param interrupter Stops the backend's current generation; must return promptly
+     */
+    GenerationScheduler(Runnable interrupter) {
+        this.interrupter = interrupter;
+    }
+
+    GenerationRequest submit(GenerationRequest.Priority priority,
+                             LLMEngineService.StreamingResponseCallback callback,
+                             GenerationRequest.Job job) {
+        GenerationRequest request = new GenerationRequest(this, priority, callback, job);
+        synchronized (lock) {
+            if (shutdown) {
+                request.completeExceptionally(new IllegalStateException("Generation scheduler is shut down"));
+                return request;
+            }
+            queue.add(request);
+            if (worker == null) {
+                worker = new Thread(this::runLoop, "LLMGeneration");
+                worker.start();
+            }
+            if (priority == GenerationRequest.Priority.INTERACTIVE && running != null
+                    && running.getPriority() == GenerationRequest.Priority.BACKGROUND
+                    && !running.isPreempted() && !running.isDeferred()) {
+                Log.d(TAG, "Preempting background request " + running.getId() + " for request " + request.getId());
+                running.markPreempted();
+                interrupt();
+            }
+        }
+        return request;
+    }
+
+    boolean cancel(GenerationRequest request) {
+        synchronized (lock) {
+            if (request.isDone()) {
+                return false;
+            }
+            request.markCancelled();
+            queue.remove(request);
+            if (request == running) {
+                interrupt();
+            }
+        }
+        request.completeCancelled();
+        Log.d(TAG, "Cancelled request " + request.getId());
+        return true;
+    }
+
+    /**
+     * Cancels the running request and every queued request matching the priority,
+     * or all of them when priority is null.
+     */
+    void cancelAll(GenerationRequest.Priority priority) {
+        List<GenerationRequest> toCancel = new ArrayList<>();
+        synchronized (lock) {
+            if (running != null) {
+                toCancel.add(running);
+            }
+            for (GenerationRequest request : deferred) {
+                if (priority == null || request.getPriority() == priority) {
+                    toCancel.add(request);
+                }
+            }
+            for (GenerationRequest request : queue) {
+                if (priority == null || request.getPriority() == priority) {
+                    toCancel.add(request);
+                }
+            }
+        }
+        for (GenerationRequest request : toCancel) {
+            request.cancel();
+        }
+    }
+
+    void addDeferred(GenerationRequest request) {
+        synchronized (lock) {
+            deferred.add(request);
+        }
+    }
+
+    void finishDeferred(GenerationRequest request) {
+        synchronized (lock) {
+            deferred.remove(request);
+        }
+        reportFinished(request);
+    }
+
+    GenerationRequest getRunningRequest() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Waits until no request is running, so the model can be released safely.
+     * @return true if the scheduler went idle within the timeout
+     */
+    boolean awaitIdle(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            while (running != null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        cancelAll(null);
+        synchronized (lock) {
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+        }
+    }
+
+    private void interrupt() {
+        try {
+            interrupter.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Error interrupting generation", e);
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            GenerationRequest request;
+            try {
+                request = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            synchronized (lock) {
+                if (shutdown) {
+                    break;
+                }
+                if (request.isCancelled() || request.isDone()) {
+                    continue;
+                }
+                running = request;
+                request.markStarted();
+            }
+
+            try {
+                request.run();
+                if (!request.isCancelled() && !request.isPreempted() && !request.isDeferred()) {
+                    request.complete(request.getResponse());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error running request " + request.getId(), e);
+                if (!request.isCancelled() && !request.isPreempted()) {
+                    request.completeExceptionally(e);
+                }
+            } finally {
+                synchronized (lock) {
+                    running = null;
+                    if (request.isPreempted() && !request.isCancelled() && !request.isDone()) {
+                        request.resetForRetry();
+                        queue.add(request);
+                        Log.d(TAG, "Re-queued preempted request " + request.getId());
+                    }
+                    lock.notifyAll();
+                }
+            }
+
+            if (request.isDone() && !request.isDeferred()) {
+                reportFinished(request);
+            }
+        }
+    }
+
+    /**
+     * Logs a finished request and hands its metrics to the caller.
+     */
+    private void reportFinished(GenerationRequest request) {
+        GenerationMetrics metrics = request.getMetrics();
+        Log.d(TAG, String.format("Request %d (%s) finished: service %d ms, preempted %d times, %s",
+            request.getId(), request.getPriority(), request.getServiceTimeMs(),
+            request.getPreemptionCount(), metrics));
+        LLMEngineService.StreamingResponseCallback callback = request.getCallback();
+        if (callback != null) {
+            try {
+                callback.onMetrics(metrics);
+            } catch (Exception e) {
+                Log.e(TAG, "Error delivering metrics for request " + request.getId(), e);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.mtkresearch.breeze_app.service;
 
 import android.content.Intent;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.pytorch.executorch.LlamaModule;
@@ -9,16 +10,33 @@ import org.pytorch.executorch.LlamaCallback;
 import com.executorch.ModelUtils;
 import com.executorch.PromptFormat;
 import com.executorch.ModelType;
+import com.mtkresearch.breeze_app.utils.ChatMessage;
 import com.mtkresearch.breeze_app.utils.ConversationManager;
 import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.BackendCalibration;
+import com.mtkresearch.breeze_app.utils.LLMTokenizer;
+import com.mtkresearch.breeze_app.utils.ModelManifest;
+import com.mtkresearch.breeze_app.utils.MtkCircuitBreaker;
+import com.mtkresearch.breeze_app.utils.PromptManager;
+import com.mtkresearch.breeze_app.utils.ResponseCache;
+import com.mtkresearch.breeze_app.utils.StopSequenceMatcher;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 public class LLMEngineService extends BaseEngineService {
     private static final String TAG = "LLMEngineService";
@@ -26,25 +44,74 @@ public class LLMEngineService extends BaseEngineService {
     // Service state
     private String currentBackend = AppConstants.BACKEND_NONE;
     private String preferredBackend = AppConstants.BACKEND_DEFAULT;
-    private boolean hasSeenAssistantMarker = false;
+    private String evictedBackend = AppConstants.BACKEND_NONE;  // Backend to reload after an eviction
     private final ConversationManager conversationManager;
     
     // Generation state
-    private final AtomicBoolean isGenerating = new AtomicBoolean(false);
-    private CompletableFuture<String> currentResponse = new CompletableFuture<>();
-    private StreamingResponseCallback currentCallback = null;
-    private final StringBuilder currentStreamingResponse = new StringBuilder();
-    private ExecutorService executor;
+    private final GenerationScheduler scheduler = new GenerationScheduler(this::interruptGeneration);
     
+    // MTK backend variant and turn tracking, so swaps are paid only when a prompt needs them
+    private final MtkSession mtkSession = new MtkSession(new MtkSession.Runtime() {
+        @Override
+        public boolean reset() {
+            return callMtk("reset", LLMEngineService.this::nativeResetLlm);
+        }
+
+        @Override
+        public boolean swapModel(int tokenSize) {
+            return callMtk("swap", () -> nativeSwapModel(tokenSize));
+        }
+    }, AppConstants.MTK_PROMPT_TOKEN_SIZE, AppConstants.MTK_GENERATION_TOKEN_SIZE,
+        AppConstants.MTK_SWAP_MIN_PROMPT_TOKENS);
+
     // CPU backend (LlamaModule)
     private LlamaModule mModule = null;
+    private volatile LLMTokenizer tokenizer = null;  // Java-side copy of the model tokenizer for exact budgeting
     private String modelPath = null;  // Set from intent
     
+    // Prefix cache state (CPU backend)
+    private String cachedPrefix = null;
+    private long cachedPrefixPos = 0;
+    private boolean prefixCacheSupported = true;
+    
+    // Incremental session state (CPU backend)
+    private volatile String sessionId = null;
+    private volatile long sessionPos = 0;  // KV position after the last assistant reply
+    private long assistantHeaderTokens = -1;
+    
+    // Responses of temperature 0 generations, recreated when the model file changes
+    private ResponseCache responseCache = null;
+    
+    // Mock backend, set while it is the current backend
+    private volatile SyntheticBackend syntheticBackend = null;
+    private SyntheticBackend.Config syntheticConfig = new SyntheticBackend.Config(
+        AppConstants.LLM_SYNTHETIC_TOKENS_PER_SECOND, AppConstants.LLM_SYNTHETIC_JITTER,
+        AppConstants.LLM_SYNTHETIC_PREFILL_DELAY_MS, false, false, 0);
+    
+    // Llama Guard run alongside chat turns, null when not installed or disabled
+    private volatile SafetyGuard safetyGuard = null;
+    
+    // Delivers TokenStream tokens off the generation thread
+    private final ExecutorService tokenStreamExecutor =
+        Executors.newCachedThreadPool(r -> new Thread(r, "TokenStream"));
+    // Paces replays of cached responses off the generation thread
+    private final ScheduledExecutorService replayExecutor =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "CacheReplay"));
+    
+    // Batches in progress; the model is not evicted between their items
+    private final AtomicInteger activeBatches = new AtomicInteger();
+    
     // MTK backend state
     private static final Object MTK_LOCK = new Object();
     private static int mtkInitCount = 0;
     private static boolean isCleaningUp = false;
     private static final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor();
+    // Probes load a whole model, so they get their own thread instead of holding up cleanup
+    private static final ExecutorService mtkProbeExecutor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "MtkProbe"));
+    private static final String MTK_CONFIG_PATH = "/data/local/tmp/llm_sdk/config_breezetiny_3b_instruct.yaml";
+    private final AtomicBoolean mtkProbeScheduled = new AtomicBoolean(false);
+    private volatile boolean destroyed = false;
     
     static {
         // Only try to load MTK libraries if MTK backend is enabled
@@ -52,7 +119,6 @@ public class LLMEngineService extends BaseEngineService {
             try {
                 // Load libraries in order
                 System.loadLibrary("sigchain");  // Load signal handler first
-                Thread.sleep(100);  // Give time for signal handlers to initialize
                 
                 System.loadLibrary("llm_jni");
                 AppConstants.MTK_BACKEND_AVAILABLE = true;
@@ -63,6 +129,7 @@ public class LLMEngineService extends BaseEngineService {
                     try {
                         cleanupMTKResources();
                         cleanupExecutor.shutdownNow();
+                        mtkProbeExecutor.shutdownNow();
                     } catch (Exception e) {
                         Log.e(TAG, "Error in shutdown hook", e);
                     }
@@ -80,6 +147,14 @@ public class LLMEngineService extends BaseEngineService {
         return AppConstants.MTK_BACKEND_AVAILABLE && AppConstants.MTK_BACKEND_ENABLED;
     }
 
+    /**
+     * Loads the MTK native libraries ahead of engine initialization. They load in this class's
+     * static initializer, which calling this method triggers if it has not run yet.
+     */
+    public static void preloadNative() {
+        Log.d(TAG, "MTK native libraries " + (AppConstants.MTK_BACKEND_AVAILABLE ? "loaded" : "unavailable"));
+    }
+
     public String getModelName() {
         if (modelPath == null) {
             if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
@@ -98,6 +173,12 @@ public class LLMEngineService extends BaseEngineService {
 
     public interface StreamingResponseCallback {
         void onToken(String token);
+
+        /**
+         * Called on the generation thread once the request has finished.
+         */
+        default void onMetrics(GenerationMetrics metrics) {
+        }
     }
 
     @Override
@@ -122,22 +203,28 @@ public class LLMEngineService extends BaseEngineService {
                     preferredBackend = newBackend;
                     // Force reinitialization if backend changed
                     releaseResources();
-                    isInitialized = false;
                 }
                 Log.d(TAG, "Setting preferred backend to: " + preferredBackend);
             }
+            if (intent.hasExtra("synthetic_tokens_per_second")) {
+                syntheticConfig = new SyntheticBackend.Config(
+                    intent.getFloatExtra("synthetic_tokens_per_second", AppConstants.LLM_SYNTHETIC_TOKENS_PER_SECOND),
+                    intent.getFloatExtra("synthetic_jitter", AppConstants.LLM_SYNTHETIC_JITTER),
+                    intent.getLongExtra("synthetic_prefill_delay_ms", AppConstants.LLM_SYNTHETIC_PREFILL_DELAY_MS),
+                    intent.getBooleanExtra("synthetic_split_characters", false),
+                    intent.getBooleanExtra("synthetic_split_stop_markers", false),
+                    intent.getLongExtra("synthetic_seed", 0));
+                Log.d(TAG, "Using " + syntheticConfig);
+            }
         }
         
-        // Check if model needs to be downloaded
-        if (AppConstants.needsModelDownload(this)) {
+        // Check if model needs to be downloaded; the mock backend needs no model
+        if (!preferredBackend.equals(AppConstants.BACKEND_MOCK) && AppConstants.needsModelDownload(this)) {
             Log.e(TAG, "Model not found in any location, download required");
             stopSelf();
             return START_NOT_STICKY;
         }
         
-        if (executor == null) {
-            executor = Executors.newSingleThreadExecutor();
-        }
         return super.onStartCommand(intent, flags, startId);
     }
 
@@ -159,42 +246,60 @@ public class LLMEngineService extends BaseEngineService {
             try {
                 // Always release existing resources before initialization
                 releaseResources();
+                setState(EngineState.LOADING);
+                // Builds the manifest here, off the main thread, on the first launch after a download
+                ModelManifest.load(LLMEngineService.this);
+                tokenizer = LLMTokenizer.getInstance(getTokenizerPath());
                 
+                if (preferredBackend.equals(AppConstants.BACKEND_MOCK)) {
+                    initializeBackend(AppConstants.BACKEND_MOCK);
+                    warmUp();
+                    future.complete(true);
+                    return true;
+                }
+
+                // Benchmark the available backends once per OS build and model file
+                if (AppConstants.LLM_BACKEND_CALIBRATION_ENABLED
+                        && BackendCalibration.load(LLMEngineService.this, modelPath) == null) {
+                    String backend = calibrateBackends();
+                    if (backend != null) {
+                        preferredBackend = backend;
+                        warmUp();
+                        future.complete(true);
+                        return true;
+                    }
+                    Log.w(TAG, "Backend calibration failed, using preferred backend");
+                    setState(EngineState.LOADING);
+                }
+
                 // Try MTK backend only if it's preferred
                 if (preferredBackend.equals(AppConstants.BACKEND_MTK)) {
-                    // Add delay before trying MTK initialization
-                    Thread.sleep(AppConstants.BACKEND_INIT_DELAY_MS);
-                    
-                    if (initializeMTKBackend()) {
-                        currentBackend = AppConstants.BACKEND_MTK;
-                        isInitialized = true;
+                    if (initializeBackend(AppConstants.BACKEND_MTK)) {
                         Log.d(TAG, "Successfully initialized MTK backend");
+                        warmUp();
                         future.complete(true);
                         return true;
                     }
                     Log.w(TAG, "MTK backend initialization failed");
-                    
-                    // Add delay before trying fallback
-                    Thread.sleep(AppConstants.BACKEND_INIT_DELAY_MS);
                 }
 
                 // Try CPU backend if MTK failed or CPU is preferred
-                if (preferredBackend.equals(AppConstants.BACKEND_CPU)) {
-                    if (initializeLocalCPUBackend()) {
-                        currentBackend = AppConstants.BACKEND_CPU;
-                        isInitialized = true;
-                        Log.d(TAG, "Successfully initialized CPU backend");
-                        future.complete(true);
-                        return true;
-                    }
-                    Log.w(TAG, "CPU backend initialization failed");
+                if (initializeBackend(AppConstants.BACKEND_CPU)) {
+                    Log.d(TAG, "Successfully initialized CPU backend");
+                    warmUp();
+                    scheduleMtkProbe();
+                    future.complete(true);
+                    return true;
                 }
+                Log.w(TAG, "CPU backend initialization failed");
 
                 Log.e(TAG, "All backend initialization attempts failed");
+                setState(EngineState.UNLOADED);
                 future.complete(false);
                 return false;
             } catch (Exception e) {
                 Log.e(TAG, "Error during initialization", e);
+                setState(EngineState.UNLOADED);
                 future.completeExceptionally(e);
                 return false;
             }
@@ -203,6 +308,135 @@ public class LLMEngineService extends BaseEngineService {
         return future;
     }
 
+    /**
+     * Initializes the given backend and makes it the current one.
+     */
+    private boolean initializeBackend(String backend) {
+        boolean success;
+        if (backend.equals(AppConstants.BACKEND_MTK)) {
+            ModelWarmStarter.discard();
+            success = initializeMTKBackend();
+        } else if (backend.equals(AppConstants.BACKEND_MOCK)) {
+            syntheticBackend = new SyntheticBackend(syntheticConfig);
+            Log.i(TAG, "Initialized mock backend: " + syntheticConfig);
+            success = true;
+        } else {
+            success = initializeLocalCPUBackend();
+        }
+        if (success) {
+            currentBackend = backend;
+        }
+        return success;
+    }
+
+    /**
+     * Runs warm-up work on the freshly loaded backend, then marks the engine ready, or degraded
+     * when it fell back from the preferred backend or serves from the CPU while the MTK circuit
+     * is open. On the CPU backend the system prompt is prefilled so the first turn only prefills
+     * the user message.
+     */
+    private void warmUp() {
+        setState(EngineState.WARMING);
+        startSafetyGuard();
+        if (currentBackend.equals(AppConstants.BACKEND_CPU)
+                && AppConstants.LLM_PREFIX_CACHE_ENABLED && prefixCacheSupported) {
+            try {
+                ensurePrefixPrefilled(PromptManager.getFormattedSystemPrompt(ModelType.LLAMA_3_2));
+            } catch (Exception e) {
+                Log.w(TAG, "Error prefilling system prompt during warm-up", e);
+            }
+        }
+        // With the circuit open the preferred backend is already CPU, so check the circuit as well
+        boolean mtkCircuitOpen = currentBackend.equals(AppConstants.BACKEND_CPU)
+                && AppConstants.MTK_BACKEND_AVAILABLE && MtkCircuitBreaker.getInstance(this).isOpen();
+        if (currentBackend.equals(preferredBackend) && !mtkCircuitOpen) {
+            setState(EngineState.READY);
+        } else {
+            Log.w(TAG, "Serving from " + currentBackend + " backend instead of preferred "
+                + (mtkCircuitOpen ? AppConstants.BACKEND_MTK : preferredBackend));
+            setState(EngineState.DEGRADED);
+        }
+    }
+
+    /**
+     * Initializes every available backend in turn, measures it on a fixed prompt and stores the
+     * fastest as the device's calibrated choice. The winner is left initialized.
+     * @return The chosen backend, or null if no backend could be measured
+     */
+    private String calibrateBackends() {
+        List<String> candidates = new ArrayList<>();
+        if (isMTKBackendAvailable() && MtkCircuitBreaker.getInstance(this).allowRequest()) {
+            candidates.add(AppConstants.BACKEND_MTK);
+        }
+        candidates.add(AppConstants.BACKEND_CPU);
+        Log.i(TAG, "Calibrating backends: " + candidates);
+
+        List<BackendCalibration.Measurement> measurements = new ArrayList<>();
+        for (String backend : candidates) {
+            setState(EngineState.LOADING);
+            releaseBackend();
+            if (!initializeBackend(backend)) {
+                Log.w(TAG, "Calibration: " + backend + " backend failed to initialize");
+                continue;
+            }
+            setState(EngineState.WARMING);
+            BackendCalibration.Measurement measurement = measureBackend(backend);
+            if (measurement != null) {
+                Log.i(TAG, "Calibration: " + measurement);
+                measurements.add(measurement);
+            }
+        }
+
+        BackendCalibration calibration = BackendCalibration.fromMeasurements(measurements);
+        if (calibration == null) {
+            releaseBackend();
+            return null;
+        }
+        calibration.save(this, modelPath);
+
+        String winner = calibration.getBackend();
+        if (!winner.equals(currentBackend)) {
+            setState(EngineState.LOADING);
+            releaseBackend();
+            if (!initializeBackend(winner)) {
+                Log.e(TAG, "Calibrated backend " + winner + " failed to initialize");
+                return null;
+            }
+        }
+        return winner;
+    }
+
+    private BackendCalibration.Measurement measureBackend(String backend) {
+        String prompt = PromptManager.formatCompletePrompt(
+            BackendCalibration.CALIBRATION_PROMPT, Collections.emptyList(), ModelType.LLAMA_3_2);
+        CompletableFuture<GenerationMetrics> metricsFuture = new CompletableFuture<>();
+        GenerationRequest request = submitRequest(prompt, BackendCalibration.CALIBRATION_OUTPUT_TOKENS,
+            GenerationRequest.Priority.BACKGROUND, new StreamingResponseCallback() {
+                @Override
+                public void onToken(String token) {
+                }
+
+                @Override
+                public void onMetrics(GenerationMetrics metrics) {
+                    metricsFuture.complete(metrics);
+                }
+            });
+
+        try {
+            GenerationMetrics metrics = metricsFuture.get(AppConstants.LLM_CALIBRATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (request.getFuture().isCompletedExceptionally() || metrics.getGeneratedTokens() < 2) {
+                Log.w(TAG, "Calibration: " + backend + " produced no usable output");
+                return null;
+            }
+            return new BackendCalibration.Measurement(backend, metrics.getPrefillMs(),
+                metrics.getPrefillTokensPerSecond(), metrics.getDecodeTokensPerSecond());
+        } catch (Exception e) {
+            Log.e(TAG, "Calibration: error measuring " + backend + " backend", e);
+            request.cancel();
+            return null;
+        }
+    }
+
     private static void cleanupMTKResources() {
         synchronized (MTK_LOCK) {
             if (isCleaningUp) return;
@@ -228,8 +462,6 @@ public class LLMEngineService extends BaseEngineService {
                     resetFuture.cancel(true);
                 }
                 
-                Thread.sleep(100);
-                
                 // Release with timeout
                 Future<?> releaseFuture = cleanupExecutor.submit(() -> {
                     try {
@@ -249,10 +481,6 @@ public class LLMEngineService extends BaseEngineService {
                 // Reset state
                 mtkInitCount = 0;
                 
-                // Force garbage collection
-                System.gc();
-                Thread.sleep(100);
-                
             } catch (Exception e) {
                 Log.e("LLMEngineService", "Error during MTK cleanup", e);
             } finally {
@@ -274,7 +502,6 @@ public class LLMEngineService extends BaseEngineService {
                     Future<?> cleanupFuture = cleanupExecutor.submit(() -> {
                         try {
                             nativeResetLlm();
-                            Thread.sleep(100);
                             nativeReleaseLlm();
                         } catch (Exception e) {
                             Log.e(TAG, "Error during forced cleanup attempt", e);
@@ -287,17 +514,11 @@ public class LLMEngineService extends BaseEngineService {
                         Log.w(TAG, "Cleanup attempt " + (i+1) + " timed out");
                         cleanupFuture.cancel(true);
                     }
-                    
-                    Thread.sleep(200);
                 }
                 
                 // Reset state
                 mtkInitCount = 0;
                 
-                // Force garbage collection
-                System.gc();
-                Thread.sleep(200);
-                
             } catch (Exception e) {
                 Log.e(TAG, "Error during forced cleanup", e);
             } finally {
@@ -311,6 +532,10 @@ public class LLMEngineService extends BaseEngineService {
             Log.d(TAG, "MTK backend disabled, skipping");
             return false;
         }
+        if (!MtkCircuitBreaker.getInstance(this).allowRequest()) {
+            Log.w(TAG, "MTK circuit is open, skipping MTK backend");
+            return false;
+        }
 
         synchronized (MTK_LOCK) {
             if (isCleaningUp) {
@@ -324,18 +549,6 @@ public class LLMEngineService extends BaseEngineService {
                     Log.w(TAG, "MTK init count exceeded limit, forcing cleanup");
                     forceCleanupMTKResources();
                     mtkInitCount = 0;
-                    Thread.sleep(1000);  // Wait for cleanup to complete
-                }
-
-                // Add delay before initialization
-                Thread.sleep(AppConstants.BACKEND_INIT_DELAY_MS);
-                
-                // Initialize signal handlers first
-                try {
-                    System.loadLibrary("sigchain");
-                    Thread.sleep(100);
-                } catch (UnsatisfiedLinkError e) {
-                    Log.w(TAG, "Failed to load sigchain library", e);
                 }
 
                 Log.d(TAG, "Attempting MTK backend initialization...");
@@ -344,10 +557,9 @@ public class LLMEngineService extends BaseEngineService {
                 try {
                     // Reset state before initialization
                     nativeResetLlm();
-                    Thread.sleep(100);
                     
                     // Initialize with conservative settings
-                    success = nativeInitLlm("/data/local/tmp/llm_sdk/config_breezetiny_3b_instruct.yaml", true);
+                    success = callMtk("init", () -> nativeInitLlm(MTK_CONFIG_PATH, true));
                     
                     if (!success) {
                         Log.e(TAG, "MTK initialization returned false");
@@ -361,6 +573,7 @@ public class LLMEngineService extends BaseEngineService {
                 }
                 
                 if (success) {
+                    mtkSession.onLoaded();
                     mtkInitCount++;
                     Log.d(TAG, "MTK initialization successful. Init count: " + mtkInitCount);
                     return true;
@@ -378,12 +591,12 @@ public class LLMEngineService extends BaseEngineService {
     }
 
     private void cleanupAfterError() {
+        mtkSession.onReleased();
         try {
             // Force cleanup in a separate thread with timeout
             Thread cleanupThread = new Thread(() -> {
                 try {
                     nativeResetLlm();
-                    Thread.sleep(100);
                     nativeReleaseLlm();
                 } catch (Exception e) {
                     Log.w(TAG, "Error during error cleanup", e);
@@ -402,6 +615,86 @@ public class LLMEngineService extends BaseEngineService {
         }
     }
 
+    /**
+     * Runs a native MTK call and reports its outcome and duration to the circuit breaker. A false
+     * result or an exception counts as a failure.
+     */
+    private boolean callMtk(String operation, BooleanSupplier call) {
+        long start = SystemClock.elapsedRealtime();
+        boolean success = false;
+        try {
+            success = call.getAsBoolean();
+            return success;
+        } finally {
+            MtkCircuitBreaker breaker = MtkCircuitBreaker.getInstance(this);
+            if (success) {
+                breaker.recordSuccess();
+            } else {
+                breaker.recordFailure(operation, SystemClock.elapsedRealtime() - start);
+            }
+        }
+    }
+
+    /**
+     * Schedules a background probe of the MTK runtime for when the open circuit's backoff ends.
+     */
+    private void scheduleMtkProbe() {
+        long delay = MtkCircuitBreaker.getInstance(this).getProbeDelayMs();
+        if (delay < 0 || !AppConstants.MTK_BACKEND_AVAILABLE || mtkProbeScheduled.getAndSet(true)) {
+            return;
+        }
+        Log.i(TAG, "Probing MTK backend in " + delay + " ms");
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, mtkProbeExecutor).execute(this::probeMtk);
+    }
+
+    /**
+     * Loads and releases the MTK model while another backend serves requests. The current backend
+     * is kept; a successful probe closes the circuit so the next load uses MTK again.
+     */
+    private void probeMtk() {
+        mtkProbeScheduled.set(false);
+        if (destroyed || currentBackend.equals(AppConstants.BACKEND_MTK)) {
+            return;
+        }
+        if (isBusy()) {
+            // Loading the NPU model next to a running generation would slow it down
+            CompletableFuture.delayedExecutor(AppConstants.MTK_CIRCUIT_PROBE_BUSY_RETRY_MS, TimeUnit.MILLISECONDS,
+                mtkProbeExecutor).execute(this::probeMtk);
+            mtkProbeScheduled.set(true);
+            return;
+        }
+        synchronized (MTK_LOCK) {
+            if (isCleaningUp) {
+                return;
+            }
+            try {
+                if (callMtk("probe", () -> nativeInitLlm(MTK_CONFIG_PATH, false))) {
+                    Log.i(TAG, "MTK probe succeeded, MTK will be used on the next load");
+                }
+                nativeReleaseLlm();
+            } catch (Exception e) {
+                Log.w(TAG, "Error during MTK probe", e);
+            }
+        }
+        scheduleMtkProbe();
+    }
+
+    /**
+     * Moves generation to the CPU backend once the MTK circuit has opened, so requests stop
+     * paying for a failing runtime. Runs on the generation thread between requests.
+     */
+    private void failOverToCpu() {
+        Log.w(TAG, "MTK circuit opened, failing over to CPU backend");
+        setState(EngineState.LOADING);
+        releaseBackend();
+        if (!initializeBackend(AppConstants.BACKEND_CPU)) {
+            setState(EngineState.UNLOADED);
+            throw new IllegalStateException("Failed to fail over to CPU backend");
+        }
+        warmUp();
+        scheduleMtkProbe();
+    }
+
     private boolean initializeLocalCPUBackend() {
         try {
             Log.d(TAG, "Attempting Local CPU backend initialization...");
@@ -410,17 +703,28 @@ public class LLMEngineService extends BaseEngineService {
                 mModule.resetNative();
                 mModule = null;
             }
+            invalidatePrefixCache();
+            assistantHeaderTokens = -1;
 
             if (modelPath == null) {
                 Log.e(TAG, "Model path is null, cannot initialize");
                 return false;
             }
 
+            // Adopt the module loaded at process start if there is one
+            mModule = ModelWarmStarter.takeLoadedModule(modelPath);
+            if (mModule != null) {
+                Log.d(TAG, "Using warm-started model (pre-read " + ModelWarmStarter.getPreReadMs()
+                    + " ms, load " + ModelWarmStarter.getLoadMs() + " ms)");
+                return true;
+            }
+
             // Initialize LlamaModule with model parameters
+            long loadStart = android.os.SystemClock.elapsedRealtime();
             mModule = new LlamaModule(
                 ModelUtils.getModelCategory(ModelType.LLAMA_3_2),
                 modelPath,
-                AppConstants.getTokenizerPath(this),
+                getTokenizerPath(),
                 AppConstants.LLM_TEMPERATURE
             );
 
@@ -431,7 +735,8 @@ public class LLMEngineService extends BaseEngineService {
                 return false;
             }
 
-            Log.d(TAG, "Local CPU backend initialized successfully");
+            Log.d(TAG, "Local CPU backend initialized successfully, load took "
+                + (android.os.SystemClock.elapsedRealtime() - loadStart) + " ms");
             return true;
         } catch (Exception e) {
             Log.e(TAG, "Error initializing Local CPU backend", e);
@@ -439,242 +744,647 @@ public class LLMEngineService extends BaseEngineService {
         }
     }
 
+    /**
+     * Generates a short non-streaming response as background work, so it never delays chat turns.
+     */
     public CompletableFuture<String> generateResponse(String prompt) {
-        if (!isInitialized) {
+        if (!isReady()) {
             return CompletableFuture.completedFuture(AppConstants.LLM_ERROR_RESPONSE);
         }
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                switch (currentBackend) {
-                    case AppConstants.BACKEND_MTK:
-                        String response = nativeInference(prompt, 256, false);
-                        nativeResetLlm();
-                        nativeSwapModel(128);
-                        return response;
-                    case AppConstants.BACKEND_CPU:
-                        try {
-                            // Calculate sequence length based on prompt length, matching original implementation
-                            int seqLen = (int)(prompt.length() * 0.75) + 64;  // Original Llama runner formula
-                            
-                            CompletableFuture<String> future = new CompletableFuture<>();
-                            currentResponse = future;
-                            
-                            executor.execute(() -> {
-                                try {
-                                    mModule.generate(prompt, seqLen, new LlamaCallback() {
-                                        @Override
-                                        public void onResult(String result) {
-                                            if (!isGenerating.get() || 
-                                                result.equals(PromptFormat.getStopToken(ModelType.LLAMA_3_2))) {
-                                                return;
-                                            }
-                                            currentStreamingResponse.append(result);
-                                        }
-
-                                        @Override
-                                        public void onStats(float tps) {
-                                            Log.d(TAG, String.format("Generation speed: %.2f tokens/sec", tps));
-                                        }
-                                    }, false);
-                                    
-                                    // Only complete if we haven't been stopped
-                                    if (isGenerating.get()) {
-                                        currentResponse.complete(currentStreamingResponse.toString());
-                                    }
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error in CPU generation", e);
-                                    if (!currentResponse.isDone()) {
-                                        currentResponse.completeExceptionally(e);
-                                    }
-                                } finally {
-                                    isGenerating.set(false);
-                                }
-                            });
-                            
-                            return future.get(60000, TimeUnit.MILLISECONDS);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in CPU streaming response", e);
-                            throw e;
-                        }
-                    default:
-                        return AppConstants.LLM_ERROR_RESPONSE;
+        GenerationRequest request = submitRequest(prompt, 64, GenerationRequest.Priority.BACKGROUND, null, null, true);
+        CompletableFuture.delayedExecutor(60000, TimeUnit.MILLISECONDS)
+            .execute(() -> {
+                if (!request.isDone()) {
+                    Log.w(TAG, "Request " + request.getId() + " timed out");
+                    request.cancel();
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error generating response", e);
-                return AppConstants.LLM_ERROR_RESPONSE;
-            }
+            });
+        return request.getFuture().exceptionally(e -> {
+            Log.e(TAG, "Error generating response", e);
+            return AppConstants.LLM_ERROR_RESPONSE;
         });
     }
 
     public CompletableFuture<String> generateStreamingResponse(String prompt, StreamingResponseCallback callback) {
-        if (!isInitialized) {
+        return generateStreamingResponse(prompt, null, callback);
+    }
+
+    /**
+     * Streams the response to a formatted prompt while the safety guard checks the user's
+     * message, if a guard is installed. Output is released once the message is found safe.
+     * A prompt answered before is replayed from the response cache.
+     * @param userMessage The raw user message the prompt was built from, or null to skip the check
+     */
+    public CompletableFuture<String> generateStreamingResponse(String prompt, String userMessage,
+                                                               StreamingResponseCallback callback) {
+        if (!isReady()) {
             if (callback != null) {
                 callback.onToken(AppConstants.LLM_ERROR_RESPONSE);
             }
             return CompletableFuture.completedFuture(AppConstants.LLM_ERROR_RESPONSE);
         }
 
-        hasSeenAssistantMarker = false;
-        currentCallback = callback;
-        currentResponse = new CompletableFuture<>();
-        currentStreamingResponse.setLength(0);
-        isGenerating.set(true);
-        
-        CompletableFuture<String> resultFuture = new CompletableFuture<>();
-        
-        CompletableFuture.runAsync(() -> {
+        return submitRequest(prompt, getMinOutputLength(), GenerationRequest.Priority.INTERACTIVE, callback,
+            userMessage, true).getFuture();
+    }
+
+    /**
+     * Streams the response to a formatted prompt as a {@link TokenStream}. Unlike the callback
+     * API, subscribers are called on their own threads with their own bounded buffers, so a slow
+     * subscriber never holds up decoding. Subscribe before or after this returns; late
+     * subscribers receive the text generated so far first.
+     * @param userMessage The raw user message the prompt was built from, or null to skip the
+     *                    safety check
+     */
+    public TokenStream streamResponse(String prompt, String userMessage) {
+        TokenStream stream = new TokenStream(tokenStreamExecutor, AppConstants.LLM_TOKEN_STREAM_BUFFER_SIZE);
+        if (!isReady()) {
+            stream.terminate(new IllegalStateException("LLM engine not ready"));
+            return stream;
+        }
+
+        GenerationRequest request = submitRequest(prompt, getMinOutputLength(), GenerationRequest.Priority.INTERACTIVE,
+            stream::emit, userMessage, true);
+        stream.attach(request);
+        request.getFuture().whenComplete((response, error) -> stream.terminate(error));
+        return stream;
+    }
+
+    /**
+     * Queues a generation for an already formatted prompt and returns its handle.
+     * Interactive requests run before background ones and preempt a running background request.
+     * @param outputTokens Number of tokens reserved for the response
+     */
+    public GenerationRequest submitRequest(String prompt, int outputTokens, GenerationRequest.Priority priority,
+                                           StreamingResponseCallback callback) {
+        return submitRequest(prompt, outputTokens, priority, callback, null, false);
+    }
+
+    /**
+     * Runs a JSONL prompt set back to back on a thread of its own, keeping the model loaded
+     * throughout, and appends a JSONL result with metrics per prompt to the output file.
+     * A batch interrupted by process death resumes from the output when run again.
+     * Items are background work, so chat turns preempt them. Cancelling the returned future
+     * stops the batch after aborting the current item.
+     * @see BatchGeneration
+     */
+    public CompletableFuture<BatchGeneration.Summary> runBatch(File input, File output,
+                                                               BatchGeneration.Listener listener) {
+        CompletableFuture<BatchGeneration.Summary> future = new CompletableFuture<>();
+        AtomicReference<GenerationRequest> current = new AtomicReference<>();
+        future.whenComplete((summary, e) -> {
+            GenerationRequest request = current.get();
+            if (future.isCancelled() && request != null) {
+                request.cancel();
+            }
+        });
+
+        Thread thread = new Thread(() -> {
+            activeBatches.incrementAndGet();
             try {
-                switch (currentBackend) {
-                    case AppConstants.BACKEND_MTK:
-                        try {
-                            // MTK backend uses raw prompt without formatting
-                            executor.execute(() -> {
-                                try {
-                                    String response = nativeStreamingInference(prompt, 256, false, new TokenCallback() {
-                                        @Override
-                                        public void onToken(String token) {
-                                            if (callback != null && isGenerating.get()) {
-                                                callback.onToken(token);
-                                                currentStreamingResponse.append(token);
-                                            }
-                                        }
-                                    });
-                                    
-                                    // Only complete if we haven't been stopped
-                                    if (isGenerating.get()) {
-                                        currentResponse.complete(response);
-                                        resultFuture.complete(response);
-                                    }
-                                    
-                                    // Clean up MTK state
-                                    try {
-                                        nativeResetLlm();
-                                        nativeSwapModel(128);
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error resetting MTK state after generation", e);
-                                    }
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error in MTK streaming generation", e);
-                                    if (!currentResponse.isDone()) {
-                                        currentResponse.completeExceptionally(e);
-                                        resultFuture.completeExceptionally(e);
-                                    }
-                                } finally {
-                                    isGenerating.set(false);
-                                }
-                            });
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in MTK streaming response", e);
-                            throw e;
-                        }
-                        break;
-                        
-                    case AppConstants.BACKEND_CPU:
-                        // Only apply prompt formatting for local CPU backend
-                        Log.d(TAG, "Formatted prompt for local CPU: " + prompt);
-                        
-                        // Calculate sequence length with more generous output space
-                        int seqLen = Math.min(
-                            AppConstants.getLLMMaxSeqLength(context),
-                            prompt.length() + AppConstants.getLLMMinOutputLength(context)
-                        );
-                        
-                        executor.execute(() -> {
-                            try {
-                                mModule.generate(prompt, seqLen, new LlamaCallback() {
-                                    @Override
-                                    public void onResult(String token) {
-                                        if (!isGenerating.get()) {
-                                            return;
-                                        }
-
-                                        if (token == null || token.isEmpty()) {
-                                            return;
-                                        }
-
-                                        // Handle both stop tokens - filter out both EOS tokens
-                                        if (token.equals(PromptFormat.getStopToken(ModelType.LLAMA_3_2))) {
-                                            Log.d(TAG, "Stop token detected: " + token);
-                                            String finalResponse = currentStreamingResponse.toString();
-                                            if (!currentResponse.isDone()) {
-                                                currentResponse.complete(finalResponse);
-                                                resultFuture.complete(finalResponse);
-                                            }
-                                            isGenerating.set(false);
-                                            // Explicitly stop the module when we detect a stop token
-                                            try {
-                                                mModule.stop();
-                                            } catch (Exception e) {
-                                                Log.e(TAG, "Error stopping module after stop token", e);
-                                            }
-                                            return;
-                                        }
-
-                                        // Handle streaming response
-                                        if (callback != null) {
-                                            callback.onToken(token);
-                                        }
-                                        currentStreamingResponse.append(token);
-                                    }
-
-                                    @Override
-                                    public void onStats(float tps) {
-                                        Log.d(TAG, String.format("Generation speed: %.2f tokens/sec", tps));
-                                    }
-                                }, false);
-                                
-                                // Only complete if we haven't been stopped and have a response
-                                if (!currentResponse.isDone() && currentStreamingResponse.length() > 0) {
-                                    String finalResponse = currentStreamingResponse.toString();
-                                    currentResponse.complete(finalResponse);
-                                    resultFuture.complete(finalResponse);
-                                }
-                                
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error in CPU streaming generation", e);
-                                if (!currentResponse.isDone()) {
-                                    currentResponse.completeExceptionally(e);
-                                    resultFuture.completeExceptionally(e);
-                                }
-                            } finally {
-                                isGenerating.set(false);
-                            }
-                        });
-                        break;
-                        
-                    default:
-                        String error = "Unsupported backend: " + currentBackend;
-                        Log.e(TAG, error);
-                        resultFuture.completeExceptionally(new IllegalStateException(error));
-                }
+                BatchGeneration.Summary summary = BatchGeneration.run(input, output,
+                    item -> runBatchItem(item, current), listener, future::isCancelled);
+                future.complete(summary);
             } catch (Exception e) {
-                Log.e(TAG, "Error in streaming response", e);
-                resultFuture.completeExceptionally(e);
+                Log.e(TAG, "Batch generation failed", e);
+                future.completeExceptionally(e);
+            } finally {
+                activeBatches.decrementAndGet();
+            }
+        }, "BatchGeneration");
+        thread.start();
+        return future;
+    }
+
+    private BatchGeneration.Result runBatchItem(BatchGeneration.Item item,
+                                                AtomicReference<GenerationRequest> current) throws Exception {
+        if (!isReady()) {
+            throw new IllegalStateException("LLM engine not ready");
+        }
+        String prompt = item.formatted ? item.prompt
+            : PromptManager.formatCompletePrompt(item.prompt, Collections.emptyList(), ModelType.LLAMA_3_2);
+        int outputTokens = item.maxTokens > 0 ? item.maxTokens : getMinOutputLength();
+
+        CompletableFuture<GenerationMetrics> metricsFuture = new CompletableFuture<>();
+        GenerationRequest request = submitRequest(prompt, outputTokens, GenerationRequest.Priority.BACKGROUND,
+            new StreamingResponseCallback() {
+                @Override
+                public void onToken(String token) {
+                }
+
+                @Override
+                public void onMetrics(GenerationMetrics metrics) {
+                    metricsFuture.complete(metrics);
+                }
+            });
+        current.set(request);
+        try {
+            String response = request.getFuture().get();
+            // Metrics are delivered right after completion on the generation thread
+            GenerationMetrics metrics = null;
+            try {
+                metrics = metricsFuture.get(AppConstants.LLM_NATIVE_OP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                Log.w(TAG, "No metrics for batch item " + item.getId());
+            }
+            return new BatchGeneration.Result(response, metrics);
+        } finally {
+            current.set(null);
+        }
+    }
+
+    /**
+     * @param userMessage Raw user message for the safety guard, or null to skip the check
+     * @param cacheable Whether the response may be served from and stored in the response cache
+     */
+    private GenerationRequest submitRequest(String prompt, int outputTokens, GenerationRequest.Priority priority,
+                                            StreamingResponseCallback callback, String userMessage,
+                                            boolean cacheable) {
+        return scheduler.submit(priority, callback, request -> {
+            ensureReloaded();
+            if (currentBackend.equals(AppConstants.BACKEND_MTK) && MtkCircuitBreaker.getInstance(this).isOpen()) {
+                failOverToCpu();
+            }
+            startSafetyCheck(request, userMessage);
+
+            // Mock output is cheap and load tests want it generated every time
+            ResponseCache cache = cacheable && !currentBackend.equals(AppConstants.BACKEND_MOCK)
+                ? getResponseCache() : null;
+            String cacheKey = cache != null
+                ? cache.key(prompt, currentBackend, AppConstants.LLM_TEMPERATURE, outputTokens) : null;
+            if (cacheKey != null) {
+                List<String> cached = cache.get(cacheKey);
+                if (cached != null) {
+                    replayCachedResponse(request, cached);
+                    return;
+                }
+                request.captureTokens();
+            }
+
+            switch (currentBackend) {
+                case AppConstants.BACKEND_MTK:
+                    runMTKGeneration(request, prompt, outputTokens);
+                    break;
+                case AppConstants.BACKEND_CPU:
+                    runCPUGeneration(request, prompt, outputTokens);
+                    break;
+                case AppConstants.BACKEND_MOCK:
+                    runSyntheticGeneration(request, prompt, outputTokens);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported backend: " + currentBackend);
+            }
+
+            List<String> tokens = request.getCapturedTokens();
+            if (cacheKey != null && !request.isCancelled() && !request.isPreempted() && !request.isBlocked()
+                    && tokens != null && !tokens.isEmpty()) {
+                cache.put(cacheKey, tokens);
             }
         });
-        
-        return resultFuture;
     }
 
-    private void completeGeneration() {
-        if (isGenerating.compareAndSet(true, false)) {
-            String finalResponse = currentStreamingResponse.toString();
-            if (currentResponse != null && !currentResponse.isDone()) {
-                currentResponse.complete(finalResponse);
+    /**
+     * Returns the response cache for the current model file, or null if responses are not
+     * deterministic. A new model file starts from an empty cache.
+     */
+    public synchronized ResponseCache getResponseCache() {
+        if (!AppConstants.LLM_RESPONSE_CACHE_ENABLED || AppConstants.LLM_TEMPERATURE != 0.0f || modelPath == null) {
+            return null;
+        }
+        String identity = ResponseCache.modelIdentity(modelPath);
+        if (responseCache == null || !responseCache.getModelIdentity().equals(identity)) {
+            responseCache = new ResponseCache(new File(getCacheDir(), "response_cache"), identity,
+                AppConstants.LLM_RESPONSE_CACHE_MEMORY_ENTRIES, AppConstants.LLM_RESPONSE_CACHE_DISK_BYTES);
+        }
+        return responseCache;
+    }
+
+    /**
+     * Streams a cached response through the request as if it were being generated. With a pause
+     * between tokens the replay is paced on its own thread, so the generation thread moves on to
+     * the next queued request instead of sleeping.
+     */
+    private void replayCachedResponse(GenerationRequest request, List<String> tokens) {
+        Log.d(TAG, "Replaying " + tokens.size() + " cached tokens for request " + request.getId()
+            + ", " + responseCache);
+        if (AppConstants.LLM_RESPONSE_CACHE_REPLAY_DELAY_MS <= 0) {
+            for (int i = 0; i < tokens.size() && request.isActive(); i++) {
+                request.recordToken();
+                request.deliverToken(tokens.get(i));
             }
-            // Clean up resources
-            currentCallback = null;
-            System.gc(); // Request garbage collection for any lingering resources
+            return;
         }
+        request.deferCompletion();
+        replayToken(request, tokens, 0);
     }
 
+    private void replayToken(GenerationRequest request, List<String> tokens, int index) {
+        if (index < tokens.size() && request.isActive()) {
+            request.recordToken();
+            request.deliverToken(tokens.get(index));
+        }
+        if (index + 1 < tokens.size() && request.isActive()) {
+            try {
+                replayExecutor.schedule(() -> replayToken(request, tokens, index + 1),
+                    AppConstants.LLM_RESPONSE_CACHE_REPLAY_DELAY_MS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Replay stopped for request " + request.getId() + ", service is shutting down");
+            }
+        }
+        request.finishDeferred();
+    }
+
+    /**
+     * Runs an MTK generation. The previous turn is reset and the model swapped lazily, right
+     * before the prompt and only when needed, instead of after every generation.
+     */
+    private void runMTKGeneration(GenerationRequest request, String prompt, int outputTokens) {
+        // MTK backend uses raw prompt without formatting
+        int promptTokens = countTokens(prompt);
+        request.setPromptTokens(promptTokens);
+        if (!mtkSession.prepare(promptTokens)) {
+            Log.w(TAG, "Could not prepare MTK session, generating anyway: " + mtkSession);
+        }
+
+        StopSequenceMatcher stopMatcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        AtomicBoolean resetOnStop = new AtomicBoolean(false);
+        TokenCallback callback = token -> {
+            request.recordToken();
+            if (stopMatcher.isMatched() || !request.isActive()) {
+                return;
+            }
+            String text = stopMatcher.feed(token);
+            if (!text.isEmpty()) {
+                request.deliverToken(text);
+            }
+            if (stopMatcher.isMatched()) {
+                Log.d(TAG, "Stop sequence detected: " + stopMatcher.getMatchedSequence());
+                request.complete(request.getResponse());
+                resetOnStop.set(callMtk("reset", this::nativeResetLlm));
+            }
+        };
+        boolean generated = false;
+        try {
+            generated = callMtk("inference", () -> {
+                String response = nativeStreamingInference(prompt, outputTokens, false, callback);
+                // The runtime returns null, or nothing for a request nobody stopped, when it fails
+                return response != null && (!response.isEmpty() || !request.isActive());
+            });
+            String rest = stopMatcher.flush();
+            if (!rest.isEmpty()) {
+                request.deliverToken(rest);
+            }
+        } finally {
+            if (!generated) {
+                mtkSession.onFailed();
+            } else {
+                GenerationMetrics metrics = request.getMetrics();
+                int decodedTokens = metrics.getGeneratedTokens() - 1;
+                mtkSession.onGenerated(decodedTokens > 0 ? metrics.getDecodeMs() / decodedTokens : 0);
+                if (resetOnStop.get()) {
+                    // The reset that ended generation already cleared the turn
+                    mtkSession.onExternalReset();
+                }
+            }
+            Log.d(TAG, "MTK generation finished: " + mtkSession);
+        }
+    }
+
+    private void runCPUGeneration(GenerationRequest request, String prompt, int outputTokens) {
+        Log.d(TAG, "Formatted prompt for local CPU: " + prompt);
+
+        int promptTokens = countTokens(prompt);
+        request.setPromptTokens(promptTokens);
+        if (promptTokens > AppConstants.getLLMMaxInputLength(context)) {
+            Log.w(TAG, "Prompt has " + promptTokens + " tokens, exceeding max input length");
+            request.deliverToken(AppConstants.LLM_INPUT_TOO_LONG_ERROR);
+            return;
+        }
+
+        // Without a tokenizer one token per character is assumed as an upper bound
+        int seqLen = Math.min(
+            AppConstants.getLLMMaxSeqLength(context),
+            (promptTokens >= 0 ? promptTokens : prompt.length()) + outputTokens
+        );
+        StreamingLlamaCallback llamaCallback = new StreamingLlamaCallback(request);
+        generateWithPrefixCache(prompt, seqLen, llamaCallback);
+        llamaCallback.finish();
+    }
+
+    /**
+     * Streams the mock backend's output through the same callback as CPU generation, so stop
+     * sequence handling, cancellation and metrics behave as with a model.
+     */
+    private void runSyntheticGeneration(GenerationRequest request, String prompt, int outputTokens) {
+        request.setPromptTokens(countTokens(prompt));
+        StreamingLlamaCallback llamaCallback = new StreamingLlamaCallback(request);
+        syntheticBackend.generate(prompt, outputTokens, llamaCallback);
+        llamaCallback.finish();
+    }
+
+    /**
+     * Generates the reply to the next user turn of a multi-turn session. While the session stays
+     * active only the new turn is prefilled, since the KV cache already holds every earlier turn.
+     * The session is rebuilt from {@code history} when the id changes, after {@link #resetSession()},
+     * or when the next turn would overflow the max sequence length.
+     */
+    public CompletableFuture<String> generateSessionResponse(String id, List<ChatMessage> history,
+                                                             String userMessage, StreamingResponseCallback callback) {
+        ModelType modelType = ModelType.LLAMA_3_2;
+        if (!isReady() || !currentBackend.equals(AppConstants.BACKEND_CPU)
+                || !AppConstants.LLM_PREFIX_CACHE_ENABLED || !prefixCacheSupported) {
+            return generateStreamingResponse(formatPackedPrompt(userMessage, history, modelType), userMessage, callback);
+        }
+
+        return scheduler.submit(GenerationRequest.Priority.INTERACTIVE, callback, request -> {
+            ensureReloaded();
+            startSafetyCheck(request, userMessage);
+            StreamingLlamaCallback llamaCallback = new StreamingLlamaCallback(request);
+            try {
+                if (runSessionTurn(id, history, userMessage, modelType, llamaCallback)) {
+                    return;
+                }
+            } catch (Exception e) {
+                resetSession();
+                throw e;
+            }
+
+            Log.w(TAG, "Session turn could not be prefilled, falling back to full prompt");
+            resetSession();
+            runCPUGeneration(request, formatPackedPrompt(userMessage, history, modelType), getMinOutputLength());
+        }).getFuture();
+    }
+
+    /**
+     * Formats a full prompt with the history packed into the max sequence length, or with all of
+     * it when the tokenizer is unavailable.
+     */
+    private String formatPackedPrompt(String userMessage, List<ChatMessage> history, ModelType modelType) {
+        LLMTokenizer currentTokenizer = tokenizer;
+        if (currentTokenizer == null) {
+            return PromptManager.formatCompletePrompt(userMessage, history, modelType);
+        }
+        return PromptManager.formatBudgetedPrompt(userMessage, history, modelType, currentTokenizer,
+            getMaxSequenceLength(), getMinOutputLength());
+    }
+
+    /**
+     * Drops the incremental session so that the next session turn rebuilds it from history.
+     * Call this when the conversation is cleared or switched.
+     */
+    public void resetSession() {
+        sessionId = null;
+        sessionPos = 0;
+    }
+
+    /**
+     * Prefills the new turn on top of the session's KV cache and generates the reply.
+     * Returns false if nothing was generated and the caller should fall back to a full prompt.
+     */
+    private boolean runSessionTurn(String id, List<ChatMessage> history, String userMessage,
+                                   ModelType modelType, StreamingLlamaCallback llamaCallback) {
+        String header = PromptFormat.getAssistantHeader(modelType);
+        String userTurn = PromptFormat.getUserPromptTemplate(modelType)
+                .replace(PromptFormat.USER_PLACEHOLDER, userMessage);
+        if (header.isEmpty() || !userTurn.endsWith(header)) {
+            return false;
+        }
+        String userTurnBody = userTurn.substring(0, userTurn.length() - header.length());
+        int maxSeqLen = getMaxSequenceLength();
+        int minOutput = getMinOutputLength();
+
+        long turnPos = -1;
+        long turnStart = sessionPos;  // KV position where this turn's prefill begins
+        String continuation = PromptFormat.getStopToken(modelType) + userTurnBody;
+        int continuationTokens = countTokens(continuation);
+        if (id.equals(sessionId) && sessionPos > 0
+                && sessionPos + Math.max(0, continuationTokens) + minOutput < maxSeqLen) {
+            // The previous reply ended on a sampled stop token that was never fed back,
+            // so it is prefilled here to close that turn.
+            turnPos = mModule.prefillPrompt(continuation, sessionPos, 0, 0);
+            if (turnPos < 0 || turnPos + minOutput > maxSeqLen) {
+                Log.d(TAG, "Session overflows max sequence length, rebuilding from history");
+                turnPos = -1;
+            }
+        }
+
+        if (turnPos < 0) {
+            resetSession();
+            long prefixPos = ensurePrefixPrefilled(PromptManager.getFormattedSystemPrompt(modelType));
+            if (prefixPos <= 0) {
+                return false;
+            }
+            turnStart = prefixPos;
+            List<ChatMessage> sessionHistory = history;
+            LLMTokenizer currentTokenizer = tokenizer;
+            if (currentTokenizer != null) {
+                // Only the turns known to fit are prefilled, so overflow never wastes a prefill
+                int budget = (int) (maxSeqLen - prefixPos) - currentTokenizer.countTokens(userTurnBody) - minOutput;
+                sessionHistory = PromptManager.packConversationHistory(history, modelType, currentTokenizer, budget);
+                Log.d(TAG, "Packed " + sessionHistory.size() + " of " + history.size()
+                    + " history messages into " + budget + " tokens");
+            }
+            String historyText = PromptManager.getFormattedConversationHistory(sessionHistory, modelType);
+            turnPos = mModule.prefillPrompt(historyText + userTurnBody, prefixPos, 0, 0);
+            if (turnPos >= 0 && turnPos + minOutput > maxSeqLen && !historyText.isEmpty()) {
+                Log.w(TAG, "History overflows max sequence length, starting session without history");
+                turnPos = mModule.prefillPrompt(userTurnBody, prefixPos, 0, 0);
+            }
+            if (turnPos < 0 || turnPos + minOutput > maxSeqLen) {
+                return false;
+            }
+        }
+
+        if (assistantHeaderTokens < 0) {
+            // The header is constant, so its length is measured once; generateFromPos
+            // prefills the same tokens again at the same positions.
+            long headerEnd = mModule.prefillPrompt(header, turnPos, 0, 0);
+            if (headerEnd < 0) {
+                return false;
+            }
+            assistantHeaderTokens = headerEnd - turnPos;
+        }
+
+        sessionId = id;
+        int seqLen = (int) Math.min(maxSeqLen, turnPos + assistantHeaderTokens + minOutput);
+        llamaCallback.request.setPromptTokens((int) (turnPos - turnStart + assistantHeaderTokens));
+        mModule.generateFromPos(header, seqLen, turnPos, llamaCallback, false);
+        llamaCallback.finish();
+
+        if (llamaCallback.hasSeenStopToken()) {
+            // Every emitted token except the final stop token was fed back into the KV cache
+            sessionPos = turnPos + assistantHeaderTokens + llamaCallback.getTokenCount() - 1;
+            Log.d(TAG, "Session turn complete, sessionPos: " + sessionPos);
+        } else {
+            // Stopped early or ran out of room, so the tail of the cache is unknown
+            resetSession();
+        }
+        return true;
+    }
+
+    /**
+     * Runs a CPU generation, continuing from the cached system prompt prefix when possible
+     * so that only the part of the prompt after the system block is prefilled.
+     */
+    private void generateWithPrefixCache(String prompt, int seqLen, LlamaCallback callback) {
+        String prefix = PromptManager.getFormattedSystemPrompt(ModelType.LLAMA_3_2);
+        boolean hasPrefix = prompt.startsWith(prefix) && prompt.length() > prefix.length();
+
+        // Anything after the prefix is overwritten, which ends the incremental session
+        resetSession();
+
+        if (AppConstants.LLM_PREFIX_CACHE_ENABLED && prefixCacheSupported && hasPrefix) {
+            long startPos = ensurePrefixPrefilled(prefix);
+            if (startPos > 0) {
+                mModule.generateFromPos(prompt.substring(prefix.length()), seqLen, startPos, callback, false);
+                return;
+            }
+        }
+
+        // A full generate rewrites the KV cache from position 0, so the cached prefix
+        // only survives if this prompt starts with the same system block.
+        if (!hasPrefix) {
+            invalidatePrefixCache();
+        }
+        mModule.generate(prompt, seqLen, callback, false);
+    }
+
+    /**
+     * Prefills the system prompt once and returns the KV position following it.
+     * Returns -1 if the backend cannot prefill, which disables the prefix cache.
+     */
+    private long ensurePrefixPrefilled(String prefix) {
+        if (prefix.equals(cachedPrefix)) {
+            return cachedPrefixPos;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long pos = mModule.prefillPrompt(prefix, 0, 1, 0);
+        if (pos <= 0) {
+            Log.w(TAG, "Prefix prefill failed with code " + pos + ", disabling prefix cache");
+            prefixCacheSupported = false;
+            invalidatePrefixCache();
+            return -1;
+        }
+
+        cachedPrefix = prefix;
+        cachedPrefixPos = pos;
+        Log.d(TAG, String.format("Prefilled system prompt prefix: startPos=%d, took %d ms",
+            pos, System.currentTimeMillis() - startTime));
+        return pos;
+    }
+
+    private void invalidatePrefixCache() {
+        cachedPrefix = null;
+        cachedPrefixPos = 0;
+        resetSession();
+    }
+
+    /**
+     * Streams CPU tokens into a request and stops the module as soon as a stop sequence completes,
+     * or when the request is cancelled or preempted. Emitted tokens are counted so session mode can
+     * track the KV position.
+     */
+    private class StreamingLlamaCallback implements LlamaCallback {
+        private final GenerationRequest request;
+        private final StopSequenceMatcher stopMatcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        private int tokenCount = 0;
+        private boolean stopTokenSeen = false;
+
+        StreamingLlamaCallback(GenerationRequest request) {
+            this.request = request;
+        }
+
+        int getTokenCount() {
+            return tokenCount;
+        }
+
+        /**
+         * True if generation ended on the model's stop token as a single token, which is the
+         * only ending session mode knows how to continue from.
+         */
+        boolean hasSeenStopToken() {
+            return stopTokenSeen;
+        }
+
+        /**
+         * Emits text held back by the stop matcher once generation has returned.
+         */
+        void finish() {
+            String rest = stopMatcher.flush();
+            if (!rest.isEmpty()) {
+                request.deliverToken(rest);
+            }
+        }
+
+        @Override
+        public void onResult(String token) {
+            tokenCount++;
+            request.recordToken();
+            if (!request.isActive() || stopMatcher.isMatched()) {
+                // A stop issued before generation started is cleared by the runner, so repeat it
+                stopModule();
+                return;
+            }
+
+            if (token == null || token.isEmpty()) {
+                return;
+            }
+
+            String text = stopMatcher.feed(token);
+            if (!text.isEmpty()) {
+                request.deliverToken(text);
+            }
+
+            if (stopMatcher.isMatched()) {
+                Log.d(TAG, "Stop sequence detected: " + stopMatcher.getMatchedSequence());
+                stopTokenSeen = token.equals(PromptFormat.getStopToken(ModelType.LLAMA_3_2));
+                request.complete(request.getResponse());
+                stopModule();
+            }
+        }
+
+        @Override
+        public void onStats(float tps) {
+            request.setRuntimeTokensPerSecond(tps);
+        }
+
+        private void stopModule() {
+            SyntheticBackend synthetic = syntheticBackend;
+            if (synthetic != null) {
+                synthetic.stop();
+                return;
+            }
+            try {
+                mModule.stop();
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping module", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the request that is generating and drops queued interactive requests.
+     * Background requests that have not started are left queued.
+     */
     public void stopGeneration() {
-        isGenerating.set(false);
-        
-        if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
+        scheduler.cancelAll(GenerationRequest.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Stops whatever the backend is generating. Called by the scheduler on cancel and preemption.
+     */
+    private void interruptGeneration() {
+        SyntheticBackend synthetic = syntheticBackend;
+        if (synthetic != null) {
+            synthetic.stop();
+        } else if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
             try {
-                nativeResetLlm();
+                if (callMtk("reset", this::nativeResetLlm)) {
+                    mtkSession.onExternalReset();
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping MTK generation", e);
             }
@@ -685,21 +1395,111 @@ public class LLMEngineService extends BaseEngineService {
                 Log.e(TAG, "Error stopping CPU generation", e);
             }
         }
+    }
 
-        if (currentResponse != null && !currentResponse.isDone()) {
-            String finalResponse = currentStreamingResponse.toString();
-            if (finalResponse.isEmpty()) {
-                finalResponse = "[Generation stopped by user]";
-            }
-            currentResponse.complete(finalResponse);
+    public int getQueuedRequestCount() {
+        return scheduler.getQueuedCount();
+    }
+
+    /**
+     * Loads the safety guard in the background if its model is installed. The guard runs on its
+     * own thread and module, next to whichever backend serves chat.
+     */
+    private void startSafetyGuard() {
+        if (!AppConstants.SAFETY_GUARD_ENABLED || safetyGuard != null) {
+            return;
         }
-        
-        // Clean up resources
-        currentCallback = null;
-        System.gc();
+        String guardModelPath = AppConstants.getSafetyGuardModelPath(this);
+        String guardTokenizerPath = AppConstants.getSafetyGuardTokenizerPath(this);
+        if (guardModelPath == null || guardTokenizerPath == null) {
+            Log.d(TAG, "Safety guard model not installed, responses are not moderated");
+            return;
+        }
+        SafetyGuard guard = new SafetyGuard(guardModelPath, guardTokenizerPath);
+        guard.load();
+        safetyGuard = guard;
+    }
+
+    private void releaseSafetyGuard() {
+        SafetyGuard guard = safetyGuard;
+        safetyGuard = null;
+        if (guard != null) {
+            guard.release();
+        }
+    }
+
+    /**
+     * Classifies the user's message on the guard thread while the request prefills, and holds
+     * the request's output until the verdict is in.
+     */
+    private void startSafetyCheck(GenerationRequest request, String userMessage) {
+        SafetyGuard guard = safetyGuard;
+        if (guard != null && userMessage != null) {
+            request.setSafetyGate(guard.classify(userMessage));
+        }
+    }
+
+    /**
+     * Reloads the backend if it was evicted while the request was queued.
+     */
+    private void ensureReloaded() {
+        if (!ensureResident()) {
+            throw new IllegalStateException("Failed to reload evicted LLM backend");
+        }
+    }
+
+    @Override
+    public long getResidentBytes() {
+        boolean modelLoaded = modelPath != null && !currentBackend.equals(AppConstants.BACKEND_MOCK);
+        long bytes = modelLoaded ? new File(modelPath).length() : 0;
+        if (safetyGuard != null) {
+            String guardModelPath = AppConstants.getSafetyGuardModelPath(this);
+            bytes += guardModelPath != null ? new File(guardModelPath).length() : 0;
+        }
+        return bytes;
+    }
+
+    @Override
+    protected boolean isBusy() {
+        return scheduler.getRunningRequest() != null || scheduler.getQueuedCount() > 0 || activeBatches.get() > 0;
+    }
+
+    @Override
+    protected void evictEngine() {
+        evictedBackend = currentBackend;
+        releaseBackend();
+    }
+
+    @Override
+    protected boolean reloadEngine() {
+        setState(EngineState.LOADING);
+        if (initializeBackend(evictedBackend)) {
+            warmUp();
+            return true;
+        }
+        setState(EngineState.UNLOADED);
+        return false;
     }
 
     public void releaseResources() {
+        scheduler.cancelAll(null);
+        if (!scheduler.awaitIdle(AppConstants.MTK_CLEANUP_TIMEOUT_MS)) {
+            Log.w(TAG, "Generation still running while releasing resources");
+        }
+        boolean loaded = getState() != EngineState.UNLOADED;
+        if (loaded) {
+            setState(EngineState.RELEASING);
+        }
+        releaseBackend();
+        if (loaded) {
+            setState(EngineState.UNLOADED);
+        }
+    }
+
+    /**
+     * Frees the current backend without changing the engine state. Generation must have stopped.
+     */
+    private void releaseBackend() {
         synchronized (MTK_LOCK) {
             if (isCleaningUp) {
                 Log.w(TAG, "Cleanup already in progress");
@@ -708,16 +1508,12 @@ public class LLMEngineService extends BaseEngineService {
             
             isCleaningUp = true;
             try {
-                stopGeneration();
-                
                 // Release MTK resources if using MTK backend
                 if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
                     try {
-                        // Add delay before cleanup
-                        Thread.sleep(AppConstants.BACKEND_CLEANUP_DELAY_MS);
                         nativeResetLlm();
-                        Thread.sleep(AppConstants.BACKEND_CLEANUP_DELAY_MS);
                         nativeReleaseLlm();
+                        mtkSession.onReleased();
                         mtkInitCount = 0; // Reset init count
                         Log.d(TAG, "Released MTK resources");
                     } catch (Exception e) {
@@ -731,16 +1527,18 @@ public class LLMEngineService extends BaseEngineService {
                     try {
                         mModule.resetNative();
                         mModule = null;
+                        invalidatePrefixCache();
                         Log.d(TAG, "Released CPU resources");
                     } catch (Exception e) {
                         Log.e(TAG, "Error releasing CPU resources", e);
                     }
                 }
                 
+                syntheticBackend = null;
+                releaseSafetyGuard();
+                
                 // Reset state
                 currentBackend = AppConstants.BACKEND_NONE;
-                isInitialized = false;
-                System.gc(); // Request garbage collection
                 
                 Log.d(TAG, "All resources released");
             } catch (Exception e) {
@@ -754,6 +1552,7 @@ public class LLMEngineService extends BaseEngineService {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        destroyed = true;
         
         // Run cleanup with timeout
         Future<?> cleanupFuture = cleanupExecutor.submit(() -> {
@@ -774,10 +1573,10 @@ public class LLMEngineService extends BaseEngineService {
             Log.e(TAG, "Error waiting for cleanup", e);
         }
         
-        if (executor != null) {
-            executor.shutdown();
-            executor = null;
-        }
+        scheduler.shutdown();
+        replayExecutor.shutdownNow();
+        // After cleanup, so open streams still deliver their completion
+        tokenStreamExecutor.shutdown();
     }
 
     public String getCurrentBackend() {
@@ -800,6 +1599,27 @@ public class LLMEngineService extends BaseEngineService {
         void onToken(String token);
     }
 
+    /**
+     * Returns the exact token count of text, or -1 when the tokenizer could not be loaded.
+     */
+    public int countTokens(String text) {
+        LLMTokenizer currentTokenizer = tokenizer;
+        return currentTokenizer != null ? currentTokenizer.countTokens(text) : -1;
+    }
+
+    public LLMTokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    /**
+     * Tokenizer paired with the model in its manifest, resolved on disk until the manifest exists.
+     */
+    private String getTokenizerPath() {
+        ModelManifest manifest = ModelManifest.getCurrent();
+        return manifest != null && manifest.getTokenizerPath() != null
+            ? manifest.getTokenizerPath() : AppConstants.getTokenizerPath(this);
+    }
+
     private int getMaxSequenceLength() {
         return AppConstants.getLLMMaxSeqLength(this);
     }
@@ -0,0 +1,211 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.executorch.LlamaModule;
+import com.executorch.ModelUtils;
+import com.executorch.ModelType;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.LLMTokenizer;
+import com.mtkresearch.breeze_app.utils.ModelManifest;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads the CPU model at process start, before any activity binds {@link LLMEngineService}.
+ * The model file is first read sequentially so that {@link LlamaModule#load()} runs against a
+ * warm page cache instead of faulting pages in from flash. The service adopts the loaded module
+ * through {@link #takeLoadedModule(String)}.
+ */
+public final class ModelWarmStarter {
+    private static final String TAG = "ModelWarmStarter";
+    private static final int READ_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private enum State { IDLE, RUNNING, DONE }
+
+    private static final Object lock = new Object();
+    private static State state = State.IDLE;
+    private static boolean discardRequested = false;
+    private static String loadedModelPath = null;
+    private static LlamaModule loadedModule = null;
+    private static volatile long preReadMs = -1;
+    private static volatile long loadMs = -1;
+
+    private ModelWarmStarter() {}
+
+    /**
+     * Starts the warm start on a dedicated thread. Does nothing if it already ran, the model
+     * is not downloaded yet or the device prefers the MTK backend. Safe to call on the main thread.
+     */
+    public static void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        synchronized (lock) {
+            if (state != State.IDLE) {
+                return;
+            }
+            state = State.RUNNING;
+        }
+        Thread thread = new Thread(() -> run(appContext), "ModelWarmStart");
+        thread.start();
+    }
+
+    /**
+     * Hands over the module loaded at startup, waiting for a load in progress to finish rather
+     * than loading a second copy of the model next to it. A module loaded for a different path
+     * is released.
+     * @return The loaded module, or null if none is available for this path
+     */
+    static LlamaModule takeLoadedModule(String modelPath) {
+        LlamaModule module;
+        synchronized (lock) {
+            boolean interrupted = false;
+            if (state == State.RUNNING) {
+                Log.d(TAG, "Waiting for warm start to finish");
+            }
+            while (state == State.RUNNING) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    // The load cannot be cancelled, so stopping early would only double memory use
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            module = loadedModule;
+            loadedModule = null;
+            if (module == null || modelPath.equals(loadedModelPath)) {
+                return module;
+            }
+        }
+        Log.d(TAG, "Warm-started model " + loadedModelPath + " does not match " + modelPath + ", releasing it");
+        module.resetNative();
+        return null;
+    }
+
+    /**
+     * Releases the warm-started module if nobody adopted it, e.g. when the MTK backend is used.
+     */
+    static void discard() {
+        LlamaModule module;
+        synchronized (lock) {
+            if (state == State.RUNNING) {
+                discardRequested = true;
+                return;
+            }
+            module = loadedModule;
+            loadedModule = null;
+        }
+        if (module != null) {
+            Log.d(TAG, "Releasing unused warm-started model");
+            module.resetNative();
+        }
+    }
+
+    /**
+     * Time spent pre-reading the model file, or -1 if the warm start did not run.
+     */
+    public static long getPreReadMs() {
+        return preReadMs;
+    }
+
+    /**
+     * Time spent in {@link LlamaModule#load()} after the pre-read, or -1 if the warm start did not load.
+     */
+    public static long getLoadMs() {
+        return loadMs;
+    }
+
+    private static void run(Context context) {
+        String modelPath = null;
+        LlamaModule module = null;
+        try {
+            if (AppConstants.needsModelDownload(context)) {
+                Log.d(TAG, "Model not downloaded, skipping warm start");
+                return;
+            }
+            if (!AppConstants.BACKEND_CPU.equals(com.mtkresearch.breeze_app.utils.ModelUtils.getPreferredBackend(context))) {
+                Log.d(TAG, "CPU backend not preferred, skipping warm start");
+                return;
+            }
+
+            modelPath = AppConstants.getModelPath(context);
+            // Builds the manifest off the main thread on the first launch after a download
+            ModelManifest manifest = ModelManifest.load(context);
+            String tokenizerPath = manifest != null && manifest.getTokenizerPath() != null
+                ? manifest.getTokenizerPath() : AppConstants.getTokenizerPath(context);
+
+            long start = SystemClock.elapsedRealtime();
+            long bytes = preRead(modelPath);
+            preReadMs = SystemClock.elapsedRealtime() - start;
+            Log.i(TAG, String.format("Pre-read %d MB in %d ms (%.1f MB/s)", bytes >> 20, preReadMs,
+                preReadMs > 0 ? (bytes / 1048576.0) * 1000.0 / preReadMs : 0.0));
+
+            // The service builds its Java-side tokenizer from the same file, keep it cached
+            LLMTokenizer.getInstance(tokenizerPath);
+
+            start = SystemClock.elapsedRealtime();
+            module = new LlamaModule(
+                ModelUtils.getModelCategory(ModelType.LLAMA_3_2),
+                modelPath,
+                tokenizerPath,
+                AppConstants.LLM_TEMPERATURE
+            );
+            int loadResult = module.load();
+            if (loadResult != 0) {
+                Log.e(TAG, "Failed to load model during warm start: " + loadResult);
+                module.resetNative();
+                module = null;
+                return;
+            }
+            loadMs = SystemClock.elapsedRealtime() - start;
+            Log.i(TAG, "Model loaded in " + loadMs + " ms after a " + preReadMs + " ms pre-read");
+        } catch (Exception | UnsatisfiedLinkError e) {
+            Log.e(TAG, "Error during warm start", e);
+            if (module != null) {
+                module.resetNative();
+                module = null;
+            }
+        } finally {
+            boolean discard;
+            synchronized (lock) {
+                discard = discardRequested;
+                if (!discard) {
+                    loadedModule = module;
+                    loadedModelPath = modelPath;
+                }
+                state = State.DONE;
+                lock.notifyAll();
+            }
+            if (discard && module != null) {
+                Log.d(TAG, "Warm start no longer needed, releasing model");
+                module.resetNative();
+            }
+        }
+    }
+
+    /**
+     * Reads the whole file sequentially through a reused buffer so the kernel's read-ahead
+     * pulls it into the page cache at full sequential bandwidth.
+     * @return The number of bytes read
+     */
+    private static long preRead(String path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        long total = 0;
+        try (FileInputStream input = new FileInputStream(path);
+             FileChannel channel = input.getChannel()) {
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                total += read;
+                buffer.clear();
+            }
+        }
+        return total;
+    }
+}
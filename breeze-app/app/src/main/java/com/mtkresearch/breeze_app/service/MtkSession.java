@@ -0,0 +1,201 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the state of the MTK runtime between generations so that resets and model swaps are
+ * only paid when the next prompt needs them. The runtime prefills with the prompt-size variant of
+ * the model and decodes with the one-token variant, and it cannot be queried for either, so the
+ * loaded variant and whether the KV cache holds a finished turn are recorded from the calls made.
+ * <p>
+ * Prefilling on the one-token variant costs about one decode step per prompt token, while
+ * prefilling on the prompt variant costs a swap there and the runtime's swap back. Once both have
+ * been measured, a prompt stays on the generation variant whenever that is the cheaper of the two.
+ * <p>
+ * Not thread-safe except for {@link #onExternalReset()}; generation runs on one thread at a time.
+ */
+class MtkSession {
+    private static final String TAG = "MtkSession";
+    static final int UNKNOWN_TOKEN_SIZE = -1;
+
+    /**
+     * Native operations of the runtime.
+     */
+    interface Runtime {
+        boolean reset();
+
+        boolean swapModel(int tokenSize);
+    }
+
+    private final Runtime runtime;
+    private final int promptTokenSize;
+    private final int generationTokenSize;
+    private final int swapMinPromptTokens;
+    private final LongSupplier clockMs;
+
+    private int loadedTokenSize = UNKNOWN_TOKEN_SIZE;
+    private volatile boolean dirty = false;
+
+    private int resets = 0;
+    private int swaps = 0;
+    private int skippedSwaps = 0;
+    private long resetMs = 0;
+    private long swapMs = 0;
+    private double decodeMsPerToken = 0;
+
+    /**
+     * @param promptTokenSize Token size of the variant used to prefill prompts
+     * @param generationTokenSize Token size of the variant the runtime decodes with
+     * @param swapMinPromptTokens Shorter prompts are prefilled on the generation variant until the
+     *                            swap and decode costs have been measured
+     */
+    MtkSession(Runtime runtime, int promptTokenSize, int generationTokenSize, int swapMinPromptTokens) {
+        this(runtime, promptTokenSize, generationTokenSize, swapMinPromptTokens, SystemClock::elapsedRealtime);
+    }
+
+    MtkSession(Runtime runtime, int promptTokenSize, int generationTokenSize, int swapMinPromptTokens,
+               LongSupplier clockMs) {
+        this.runtime = runtime;
+        this.promptTokenSize = promptTokenSize;
+        this.generationTokenSize = generationTokenSize;
+        this.swapMinPromptTokens = swapMinPromptTokens;
+        this.clockMs = clockMs;
+    }
+
+    /**
+     * Records a fresh initialization, which loads the prompt variant with an empty cache.
+     */
+    void onLoaded() {
+        loadedTokenSize = promptTokenSize;
+        dirty = false;
+    }
+
+    /**
+     * Records that the runtime was released; the next initialization loads it again.
+     */
+    void onReleased() {
+        loadedTokenSize = UNKNOWN_TOKEN_SIZE;
+        dirty = false;
+    }
+
+    /**
+     * Records a failed generation, after which neither the variant nor the cache is known.
+     */
+    void onFailed() {
+        loadedTokenSize = UNKNOWN_TOKEN_SIZE;
+        dirty = true;
+    }
+
+    /**
+     * Records a reset made outside the session, such as the one that stops a generation.
+     */
+    void onExternalReset() {
+        dirty = false;
+    }
+
+    /**
+     * Records a generation that reached decoding, leaving its turn in the cache and the
+     * generation variant loaded.
+     * @param decodeMsPerToken Measured time per decoded token, or 0 if too few tokens were decoded
+     */
+    void onGenerated(double decodeMsPerToken) {
+        loadedTokenSize = generationTokenSize;
+        dirty = true;
+        if (decodeMsPerToken > 0) {
+            this.decodeMsPerToken = decodeMsPerToken;
+        }
+    }
+
+    /**
+     * Readies the runtime for a prompt: clears the previous turn if it is still cached and swaps
+     * to the prompt variant only if that is cheaper than prefilling on the generation variant.
+     * @param promptTokens Token count of the prompt, or negative if unknown
+     * @return false if a native call failed and the runtime state is unknown
+     */
+    boolean prepare(int promptTokens) {
+        if (dirty) {
+            long start = clockMs.getAsLong();
+            boolean reset = runtime.reset();
+            long elapsed = clockMs.getAsLong() - start;
+            resets++;
+            resetMs += elapsed;
+            Log.d(TAG, "Reset took " + elapsed + " ms");
+            if (!reset) {
+                onFailed();
+                return false;
+            }
+            dirty = false;
+        }
+
+        int required = getRequiredTokenSize(promptTokens);
+        if (required == loadedTokenSize) {
+            if (loadedTokenSize != promptTokenSize) {
+                skippedSwaps++;
+                Log.d(TAG, "Prefilling " + promptTokens + " tokens without a swap");
+            }
+            return true;
+        }
+        long start = clockMs.getAsLong();
+        boolean swapped = runtime.swapModel(required);
+        long elapsed = clockMs.getAsLong() - start;
+        swaps++;
+        swapMs += elapsed;
+        Log.d(TAG, "Swap from " + loadedTokenSize + " to " + required + " tokens took " + elapsed + " ms");
+        if (!swapped) {
+            loadedTokenSize = UNKNOWN_TOKEN_SIZE;
+            return false;
+        }
+        loadedTokenSize = required;
+        return true;
+    }
+
+    /**
+     * Variant a prompt needs: the loaded generation variant for prompts shorter than
+     * {@link #getSwapBreakEvenTokens()}, the prompt variant otherwise or when the length or loaded
+     * variant is unknown.
+     */
+    int getRequiredTokenSize(int promptTokens) {
+        if (loadedTokenSize == generationTokenSize && promptTokens >= 0 && promptTokens < getSwapBreakEvenTokens()) {
+            return generationTokenSize;
+        }
+        return promptTokenSize;
+    }
+
+    /**
+     * Prompt length at which swapping to the prompt variant and back costs as much as
+     * prefilling one token at a time, or the configured minimum until both are measured.
+     */
+    int getSwapBreakEvenTokens() {
+        if (swaps == 0 || decodeMsPerToken <= 0) {
+            return swapMinPromptTokens;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, 2.0 * swapMs / swaps / decodeMsPerToken);
+    }
+
+    int getLoadedTokenSize() {
+        return loadedTokenSize;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    int getSwapCount() {
+        return swaps;
+    }
+
+    int getResetCount() {
+        return resets;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "MtkSession{variant %d, %d resets (%d ms), %d swaps (%d ms), %d skipped, "
+            + "%.1f ms/token, swap break-even %d tokens}",
+            loadedTokenSize, resets, resetMs, swaps, swapMs, skippedSwaps, decodeMsPerToken, getSwapBreakEvenTokens());
+    }
+}
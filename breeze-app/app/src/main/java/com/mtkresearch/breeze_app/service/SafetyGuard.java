@@ -0,0 +1,227 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import org.pytorch.executorch.LlamaCallback;
+import org.pytorch.executorch.LlamaModule;
+import com.executorch.ModelType;
+import com.executorch.ModelUtils;
+import com.executorch.PromptFormat;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.HashUtils;
+import com.mtkresearch.breeze_app.utils.LLMTokenizer;
+import com.mtkresearch.breeze_app.utils.StopSequenceMatcher;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Classifies user prompts with Llama Guard 3 on a module and thread of its own, so a check runs
+ * while the chat model prefills instead of before it. The guard instructions in front of the
+ * user's text never change; they are prefilled once and every check continues from that KV
+ * position. Verdicts are cached by prompt hash.
+ */
+public class SafetyGuard {
+    private static final String TAG = "SafetyGuard";
+    private static final int VERDICT_TOKENS = 16;  // "unsafe", the categories and the stop token
+
+    /**
+     * Result of a check: safe, or unsafe with the violated categories, e.g. "S1,S10".
+     */
+    public static final class Verdict {
+        private final boolean safe;
+        private final String categories;
+
+        Verdict(boolean safe, String categories) {
+            this.safe = safe;
+            this.categories = categories;
+        }
+
+        public boolean isSafe() {
+            return safe;
+        }
+
+        public String getCategories() {
+            return categories;
+        }
+
+        /**
+         * Parses the guard output: "safe", or "unsafe" followed by a line of categories.
+         * @return The verdict, or null if the output is neither
+         */
+        static Verdict parse(String output) {
+            String[] lines = output.trim().split("\\s*\n\\s*");
+            String first = lines[0].trim().toLowerCase();
+            if (first.equals("safe")) {
+                return new Verdict(true, "");
+            }
+            if (first.equals("unsafe")) {
+                return new Verdict(false, lines.length > 1 ? lines[1].replace(" ", "") : "");
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return safe ? "safe" : "unsafe(" + categories + ")";
+        }
+    }
+
+    private final String modelPath;
+    private final String tokenizerPath;
+    private final String guardPrefix;
+    private final String guardSuffix;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "SafetyGuard"));
+    private final Map<String, Verdict> verdictCache =
+        new LinkedHashMap<String, Verdict>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                return size() > AppConstants.SAFETY_VERDICT_CACHE_SIZE;
+            }
+        };
+
+    // Only touched on the guard thread
+    private LlamaModule module;
+    private LLMTokenizer tokenizer;
+    private long prefixPos = 0;
+
+    SafetyGuard(String modelPath, String tokenizerPath) {
+        this.modelPath = modelPath;
+        this.tokenizerPath = tokenizerPath;
+        String template = PromptFormat.getFormattedLlamaGuardPrompt(PromptFormat.USER_PLACEHOLDER);
+        int userStart = template.indexOf(PromptFormat.USER_PLACEHOLDER);
+        this.guardPrefix = template.substring(0, userStart);
+        this.guardSuffix = template.substring(userStart + PromptFormat.USER_PLACEHOLDER.length());
+    }
+
+    /**
+     * Loads the guard model and prefills the guard instructions on the guard thread.
+     * Checks requested meanwhile wait for the load.
+     */
+    void load() {
+        executor.execute(() -> {
+            long startTime = System.currentTimeMillis();
+            try {
+                tokenizer = LLMTokenizer.getInstance(tokenizerPath);
+                module = new LlamaModule(ModelUtils.getModelCategory(ModelType.LLAMA_GUARD_3),
+                    modelPath, tokenizerPath, 0.0f);
+                int loadResult = module.load();
+                if (loadResult != 0) {
+                    throw new IllegalStateException("Load failed with code " + loadResult);
+                }
+                prefixPos = module.prefillPrompt(guardPrefix, 0, 1, 0);
+                if (prefixPos <= 0) {
+                    throw new IllegalStateException("Prefix prefill failed with code " + prefixPos);
+                }
+                Log.i(TAG, String.format("Loaded safety guard in %d ms, instructions cover %d positions",
+                    System.currentTimeMillis() - startTime, prefixPos));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load safety guard", e);
+                releaseModule();
+            }
+        });
+    }
+
+    /**
+     * Classifies the user prompt on the guard thread.
+     * @return Completes with the verdict, or exceptionally if the guard could not classify it
+     */
+    CompletableFuture<Verdict> classify(String userPrompt) {
+        String key = HashUtils.sha256Hex(userPrompt);
+        synchronized (verdictCache) {
+            Verdict cached = verdictCache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        CompletableFuture<Verdict> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    Verdict verdict = runClassification(userPrompt);
+                    synchronized (verdictCache) {
+                        verdictCache.put(key, verdict);
+                    }
+                    Log.d(TAG, "Verdict " + verdict + " in " + (System.currentTimeMillis() - startTime) + " ms");
+                    future.complete(verdict);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error classifying prompt", e);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Frees the guard model once pending checks have run. The guard cannot be used afterwards.
+     */
+    void release() {
+        try {
+            executor.execute(this::releaseModule);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Safety guard already released");
+        }
+        executor.shutdown();
+    }
+
+    private Verdict runClassification(String userPrompt) {
+        if (module == null) {
+            throw new IllegalStateException("Safety guard not loaded");
+        }
+
+        // Only the user's text and the closing instructions are prefilled after the cached prefix
+        String rest = userPrompt + guardSuffix;
+        int restTokens = tokenizer != null ? tokenizer.countTokens(rest) : rest.length();
+        long seqLen = prefixPos + restTokens + VERDICT_TOKENS;
+        if (seqLen > AppConstants.SAFETY_GUARD_MAX_SEQ_LEN) {
+            throw new IllegalArgumentException("Prompt too long for the safety guard: " + seqLen + " positions");
+        }
+
+        StringBuilder output = new StringBuilder();
+        StopSequenceMatcher stopMatcher = StopSequenceMatcher.forModel(ModelType.LLAMA_GUARD_3);
+        module.generateFromPos(rest, (int) seqLen, prefixPos, new LlamaCallback() {
+            @Override
+            public void onResult(String token) {
+                if (stopMatcher.isMatched()) {
+                    return;
+                }
+                output.append(stopMatcher.feed(token));
+                if (stopMatcher.isMatched()) {
+                    module.stop();
+                }
+            }
+
+            @Override
+            public void onStats(float tps) {
+            }
+        }, false);
+        output.append(stopMatcher.flush());
+
+        Verdict verdict = Verdict.parse(output.toString());
+        if (verdict == null) {
+            throw new IllegalStateException("Unexpected safety guard output: " + output);
+        }
+        return verdict;
+    }
+
+    private void releaseModule() {
+        if (module != null) {
+            try {
+                module.resetNative();
+            } catch (Exception e) {
+                Log.e(TAG, "Error releasing safety guard", e);
+            }
+            module = null;
+        }
+        prefixPos = 0;
+    }
+}
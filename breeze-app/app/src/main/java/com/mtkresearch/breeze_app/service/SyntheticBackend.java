@@ -0,0 +1,229 @@
+package com.mtkresearch.breeze_app.service;
+
+import org.pytorch.executorch.LlamaCallback;
+import com.executorch.ModelType;
+import com.executorch.PromptFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Model-free LLM backend that streams canned text through a {@link LlamaCallback} at a
+ * configurable token rate, so the generation pipeline can be load tested without a model file
+ * or a device. Like the ExecuTorch runner it blocks until generation ends, and a stop issued
+ * before generation starts is cleared.
+ */
+public class SyntheticBackend {
+    private static final String[] RESPONSES = {
+        "您好！這是由模擬後端產生的回應，用來測試串流顯示、對話紀錄儲存與語音合成的串接是否順暢。😊",
+        "臺灣位於東亞，擁有豐富的自然景觀與多元文化。北部有陽明山與九份老街，中部有日月潭與阿里山，"
+            + "南部則有墾丁國家公園與府城的傳統小吃。🏔️🌊",
+        "以下是三個重點：第一，先確認需求；第二，拆解成可以驗證的小步驟；第三，每完成一步就測試一次。"
+            + "這樣即使中途出錯，也能很快找到原因。👍",
+    };
+
+    /**
+     * Timing and shape of the synthetic output.
+     */
+    public static final class Config {
+        final float tokensPerSecond;
+        final float jitter;
+        final long prefillDelayMs;
+        final boolean splitCharacters;
+        final boolean splitStopMarkers;
+        final long seed;
+
+        /**
+         * @param tokensPerSecond Mean decode rate
+         * @param jitter Each inter-token delay varies uniformly by up to this fraction of the mean
+         * @param prefillDelayMs Delay before the first token
+         * @param splitCharacters Emit the halves of surrogate pairs in separate callbacks, as a
+         *                        runtime does when a character spans two tokens
+         * @param splitStopMarkers Emit the stop token in two pieces, the first joined to text
+         * @param seed Seed of the jitter and token boundaries, for reproducible runs
+         */
+        public Config(float tokensPerSecond, float jitter, long prefillDelayMs,
+                      boolean splitCharacters, boolean splitStopMarkers, long seed) {
+            if (tokensPerSecond <= 0) {
+                throw new IllegalArgumentException("tokensPerSecond must be positive: " + tokensPerSecond);
+            }
+            this.tokensPerSecond = tokensPerSecond;
+            this.jitter = Math.max(0f, Math.min(1f, jitter));
+            this.prefillDelayMs = Math.max(0, prefillDelayMs);
+            this.splitCharacters = splitCharacters;
+            this.splitStopMarkers = splitStopMarkers;
+            this.seed = seed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SyntheticBackend.Config{%.1f tokens/s, jitter %.2f, prefill %d ms%s%s}",
+                tokensPerSecond, jitter, prefillDelayMs, splitCharacters ? ", split characters" : "",
+                splitStopMarkers ? ", split stop markers" : "");
+        }
+    }
+
+    /**
+     * Time source of the token pacing, replaceable in tests.
+     */
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void await(Object lock, long nanos) throws InterruptedException {
+                lock.wait(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+            }
+        };
+
+        long nanoTime();
+
+        /**
+         * Waits on the lock, which the caller holds, for up to the given time or until notified.
+         */
+        void await(Object lock, long nanos) throws InterruptedException;
+    }
+
+    private final Config config;
+    private final Clock clock;
+    private final Object lock = new Object();
+    private boolean stopped = false;
+
+    public SyntheticBackend(Config config) {
+        this(config, Clock.SYSTEM);
+    }
+
+    SyntheticBackend(Config config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Streams a response to the prompt and returns once it has ended or was stopped. The stop
+     * token follows the response unless {@code maxTokens} cuts it short.
+     */
+    public void generate(String prompt, int maxTokens, LlamaCallback callback) {
+        synchronized (lock) {
+            stopped = false;
+        }
+        Random random = new Random(config.seed ^ prompt.hashCode());
+        List<String> tokens = tokenize(RESPONSES[Math.floorMod(prompt.hashCode(), RESPONSES.length)], random);
+
+        if (!pause(config.prefillDelayMs * 1_000_000L)) {
+            return;
+        }
+        long decodeStart = clock.nanoTime();
+        double meanDelayNanos = 1e9 / config.tokensPerSecond;
+        int emitted = 0;
+        for (String token : tokens) {
+            if (emitted >= maxTokens) {
+                break;
+            }
+            if (emitted > 0) {
+                double factor = 1 + config.jitter * (2 * random.nextDouble() - 1);
+                if (!pause((long) (meanDelayNanos * factor))) {
+                    return;
+                }
+            }
+            callback.onResult(token);
+            emitted++;
+        }
+
+        long decodeNanos = clock.nanoTime() - decodeStart;
+        if (emitted > 1 && decodeNanos > 0 && !isStopped()) {
+            callback.onStats((float) ((emitted - 1) * 1e9 / decodeNanos));
+        }
+    }
+
+    /**
+     * Ends the running generation at the next token boundary.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+
+    private boolean isStopped() {
+        synchronized (lock) {
+            return stopped;
+        }
+    }
+
+    /**
+     * Waits for the given time unless stopped first.
+     * @return false if generation was stopped
+     */
+    private boolean pause(long nanos) {
+        long deadline = clock.nanoTime() + nanos;
+        synchronized (lock) {
+            while (!stopped) {
+                long remaining = deadline - clock.nanoTime();
+                if (remaining <= 0) {
+                    return true;
+                }
+                try {
+                    clock.await(lock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Splits the text into tokens of one to three characters followed by the stop token.
+     */
+    List<String> tokenize(String text, Random random) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = start;
+            int characters = 1 + random.nextInt(3);
+            for (int i = 0; i < characters && end < text.length(); i++) {
+                end += Character.charCount(text.codePointAt(end));
+            }
+            String token = text.substring(start, end);
+            int pair = firstSurrogatePair(token);
+            if (config.splitCharacters && pair >= 0) {
+                // Ends one callback on the high surrogate and starts the next on the low one
+                tokens.add(token.substring(0, pair + 1));
+                end = start + pair + 1;
+            } else {
+                tokens.add(token);
+            }
+            start = end;
+        }
+
+        String stopToken = PromptFormat.getStopToken(ModelType.LLAMA_3_2);
+        if (config.splitStopMarkers && !tokens.isEmpty()) {
+            int cut = 1 + random.nextInt(stopToken.length() - 1);
+            int last = tokens.size() - 1;
+            tokens.set(last, tokens.get(last) + stopToken.substring(0, cut));
+            tokens.add(stopToken.substring(cut));
+        } else {
+            tokens.add(stopToken);
+        }
+        return tokens;
+    }
+
+    private static int firstSurrogatePair(String token) {
+        for (int i = 0; i + 1 < token.length(); i++) {
+            if (Character.isHighSurrogate(token.charAt(i)) && Character.isLowSurrogate(token.charAt(i + 1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -13,6 +13,7 @@ import android.util.Log;
 import android.speech.tts.UtteranceProgressListener;
 
 import com.k2fsa.sherpa.onnx.SherpaTTS;
+import com.mtkresearch.breeze_app.utils.AppConstants;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -39,6 +40,7 @@ public class TTSEngineService extends BaseEngineService {
     private SherpaTTS localTTS;
     private String backend = "none";
     private boolean isTextToSpeechInitialized = false;
+    private volatile boolean isSpeaking = false;
     private AudioTrack audioTrack;
 
     public class LocalBinder extends BaseEngineService.LocalBinder<TTSEngineService> { }
@@ -57,9 +59,15 @@ public class TTSEngineService extends BaseEngineService {
 
     @Override
     public CompletableFuture<Boolean> initialize() {
+        setState(EngineState.LOADING);
         return initializeBackends()
             .thenApply(success -> {
-                isInitialized = success;
+                if (!success) {
+                    setState(EngineState.UNLOADED);
+                } else {
+                    // The system engine is only a fallback for the bundled model
+                    setState(backend.equals("default") ? EngineState.DEGRADED : EngineState.READY);
+                }
                 Log.d(TAG, String.format("TTS initialization %s using %s", 
                     success ? "SUCCESS ✅" : "FAILED ❌", backend));
                 return success;
@@ -81,6 +89,7 @@ public class TTSEngineService extends BaseEngineService {
                 if (success) {
                     Log.d(TAG, "✅ " + backendName + " TTS initialized");
                     backend = backendName.toLowerCase();
+                    setState(EngineState.WARMING);
                     return testTTSEngine();
                 }
                 Log.d(TAG, "❌ " + backendName + " TTS failed");
@@ -199,19 +208,31 @@ public class TTSEngineService extends BaseEngineService {
 
     @Override
     public boolean isReady() {
-        return isInitialized && (
+        if (isEvicted()) {
+            return true; // Reloads on the next speak()
+        }
+        return super.isReady() && (
             (backend.equals("local") && localTTS != null) ||
             (backend.equals("default") && isTextToSpeechInitialized)
         );
     }
 
+    /**
+     * Speaks the text, reloading the model first if it was evicted. Blocks, so call it off the
+     * main thread.
+     */
     public CompletableFuture<Void> speak(String text) {
         CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!ensureResident()) {
+            future.completeExceptionally(new IllegalStateException("Failed to reload TTS"));
+            return future;
+        }
         if (localTTS == null || !localTTS.isInitialized()) {
             future.completeExceptionally(new IllegalStateException("TTS not initialized"));
             return future;
         }
 
+        isSpeaking = true;
         try {
             switch (backend) {
                 case "mtk":
@@ -228,6 +249,8 @@ public class TTSEngineService extends BaseEngineService {
             }
         } catch (Exception e) {
             future.completeExceptionally(e);
+        } finally {
+            isSpeaking = false;
         }
         return future;
     }
@@ -399,8 +422,29 @@ public class TTSEngineService extends BaseEngineService {
         }
     }
 
+    @Override
+    public long getResidentBytes() {
+        return backend.equals("local") && localTTS != null ? AppConstants.TTS_INIT_MEMORY_BYTES : 0;
+    }
+
+    @Override
+    protected boolean isBusy() {
+        return isSpeaking;
+    }
+
+    @Override
+    protected void evictEngine() {
+        if (localTTS != null) {
+            localTTS.release();
+            localTTS = null;
+        }
+    }
+
     @Override
     public void onDestroy() {
+        if (getState() != EngineState.UNLOADED) {
+            setState(EngineState.RELEASING);
+        }
         if (localTTS != null) {
             localTTS.release();
         }
@@ -409,6 +453,7 @@ public class TTSEngineService extends BaseEngineService {
             textToSpeech.shutdown();
         }
         releaseAudioTrack();
+        setState(EngineState.UNLOADED);
         super.onDestroy();
     }
 
@@ -0,0 +1,326 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the tokens of one generation to any number of {@link Flow.Subscriber}s, such as the
+ * chat UI, the TTS chunker and the history journal. Every subscriber has its own bounded buffer
+ * and is called on the executor, never on the generation thread, so a slow subscriber cannot
+ * delay decoding or the other subscribers. Tokens are delivered only as the subscriber requests
+ * them. When its buffer is full, new text is merged into the last buffered token, so no text is
+ * lost and a lagging subscriber simply receives fewer, larger tokens.
+ * <p>
+ * A subscriber that joins late first receives everything generated so far as one token.
+ * The stream completes when the generation ends, including after {@link #cancel()}, and fails
+ * if the generation fails. Cancelling a subscription only detaches that subscriber.
+ */
+public class TokenStream implements Flow.Publisher<TokenStream.Token> {
+    private static final String TAG = "TokenStream";
+
+    /**
+     * Text of one or more consecutive tokens.
+     */
+    public static final class Token {
+        private final String text;
+        private final int index;
+        private final int count;
+
+        Token(String text, int index, int count) {
+            this.text = text;
+            this.index = index;
+            this.count = count;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Position of the first token merged into this one within the response.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Number of tokens merged into this one, more than 1 when the subscriber fell behind.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        Token merge(Token next) {
+            return new Token(text + next.text, index, count + next.count);
+        }
+
+        @Override
+        public String toString() {
+            return "Token{index=" + index + ", count=" + count + ", text='" + text + "'}";
+        }
+    }
+
+    private final Executor executor;
+    private final int bufferSize;
+    private final List<TokenSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private final StringBuilder emitted = new StringBuilder();
+    private int emittedTokens = 0;
+    private boolean terminated = false;
+    private Throwable error = null;
+    private GenerationRequest request = null;
+    private boolean cancelRequested = false;
+
+    /**
+     * @param executor Runs subscriber callbacks; each subscriber is called by one task at a time
+     * @param bufferSize Tokens buffered per subscriber before new text is merged
+     */
+    TokenStream(Executor executor, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Token> subscriber) {
+        Objects.requireNonNull(subscriber);
+        TokenSubscription subscription = new TokenSubscription(subscriber);
+        synchronized (this) {
+            if (emittedTokens > 0) {
+                subscription.enqueue(new Token(emitted.toString(), 0, emittedTokens));
+            }
+            if (terminated) {
+                subscription.terminate(error);
+            } else {
+                subscriptions.add(subscription);
+            }
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Stops the generation behind this stream. Subscribers receive the text generated so far,
+     * then complete.
+     */
+    public void cancel() {
+        GenerationRequest target;
+        synchronized (this) {
+            cancelRequested = true;
+            target = request;
+        }
+        if (target != null) {
+            target.cancel();
+        }
+    }
+
+    public synchronized boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Connects the stream to the request producing its tokens, for {@link #cancel()}.
+     */
+    void attach(GenerationRequest request) {
+        boolean cancelNow;
+        synchronized (this) {
+            this.request = request;
+            cancelNow = cancelRequested;
+        }
+        if (cancelNow) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Publishes a token. Called on the generation thread; never blocks on subscribers.
+     */
+    void emit(String text) {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            Token token = new Token(text, emittedTokens, 1);
+            emitted.append(text);
+            emittedTokens++;
+            for (TokenSubscription subscription : subscriptions) {
+                subscription.enqueue(token);
+            }
+        }
+        for (TokenSubscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Ends the stream, normally if {@code failure} is null.
+     */
+    void terminate(Throwable failure) {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            error = failure;
+            for (TokenSubscription subscription : subscriptions) {
+                subscription.terminate(failure);
+            }
+        }
+        for (TokenSubscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+        subscriptions.clear();
+    }
+
+    private final class TokenSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Token> subscriber;
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+
+        // Guarded by this subscription
+        private final ArrayDeque<Token> buffer = new ArrayDeque<>();
+        private long demand = 0;
+        private boolean cancelled = false;
+        private boolean terminated = false;
+        private Throwable failure = null;
+
+        // Only touched inside drain(), which never runs concurrently with itself
+        private boolean subscribed = false;
+        private boolean done = false;
+
+        TokenSubscription(Flow.Subscriber<? super Token> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void enqueue(Token token) {
+            if (cancelled || terminated) {
+                return;
+            }
+            if (buffer.size() >= bufferSize) {
+                buffer.addLast(buffer.pollLast().merge(token));
+            } else {
+                buffer.addLast(token);
+            }
+        }
+
+        synchronized void terminate(Throwable error) {
+            if (!terminated) {
+                terminated = true;
+                failure = error;
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    // Rule 3.9 of the reactive streams specification: fail at once, dropping the buffer
+                    buffer.clear();
+                    terminated = true;
+                    failure = new IllegalArgumentException("Non-positive request: " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            if (n <= 0) {
+                subscriptions.remove(this);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    Log.w(TAG, "Token stream executor is shut down", e);
+                    cancel();
+                }
+            }
+        }
+
+        /**
+         * Delivers buffered tokens up to the demand, then the terminal signal once the buffer is
+         * empty, so a failed generation still delivers its text first. Runs on the executor;
+         * scheduling ensures one drain at a time per subscriber.
+         */
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    if (!subscribed) {
+                        subscribed = true;
+                        subscriber.onSubscribe(this);
+                    }
+                    deliver();
+                } catch (RuntimeException e) {
+                    // Subscribers must not throw; drop the offending one rather than the stream
+                    Log.e(TAG, "Subscriber failed, cancelling its subscription", e);
+                    cancel();
+                    done = true;
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            while (!done) {
+                Token token;
+                Throwable error = null;
+                synchronized (this) {
+                    if (cancelled) {
+                        done = true;
+                        return;
+                    }
+                    if (!buffer.isEmpty()) {
+                        if (demand == 0) {
+                            return;
+                        }
+                        token = buffer.pollFirst();
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                    } else if (terminated) {
+                        token = null;
+                        error = failure;
+                    } else {
+                        return;
+                    }
+                }
+                if (token == null) {
+                    // Terminal signals need no demand
+                    done = true;
+                    subscriptions.remove(this);
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                subscriber.onNext(token);
+            }
+        }
+    }
+}
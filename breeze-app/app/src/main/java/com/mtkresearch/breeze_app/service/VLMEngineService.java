@@ -5,12 +5,17 @@ import android.net.Uri;
 import android.os.IBinder;
 import android.util.Log;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.pytorch.executorch.LlamaCallback;
 import org.pytorch.executorch.LlamaModule;
 import com.executorch.ETImage;
 import com.executorch.PromptFormat;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.ImageTensorCache;
 
 import java.io.File;
 
@@ -24,9 +29,13 @@ public class VLMEngineService extends BaseEngineService {
     private static final int SEQ_LEN = 512;
     private static final int IMAGE_CHANNELS = 3;
     private static final float TEMPERATURE = 0.8f;
+    private static final String MODEL_PATH = "/data/local/tmp/llava/llava.pte";
+    private static final String TOKENIZER_PATH = "/data/local/tmp/llava/tokenizer.bin";
     
     private LlamaModule mModule;
     private long startPos = 0;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private ImageTensorCache imageCache = null;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -35,24 +44,27 @@ public class VLMEngineService extends BaseEngineService {
 
     @Override
     public CompletableFuture<Boolean> initialize() {
+        setState(EngineState.LOADING);
         return CompletableFuture.supplyAsync(() -> {
             try {
                 if (initializeMTKBackend()) {
                     backend = "mtk";
-                    isInitialized = true;
+                    setState(EngineState.READY);
                     return true;
                 }
 
                 if (initializeLocalCPUBackend()) {
                     backend = "local_cpu";
-                    isInitialized = true;
+                    setState(EngineState.READY);
                     return true;
                 }
 
                 Log.e(TAG, "All backend initialization attempts failed");
+                setState(EngineState.UNLOADED);
                 return false;
             } catch (Exception e) {
                 Log.e(TAG, "Error during initialization", e);
+                setState(EngineState.UNLOADED);
                 return false;
             }
         });
@@ -82,17 +94,14 @@ public class VLMEngineService extends BaseEngineService {
 
     private void initializeLocalCpuModel() {
         try {
-            String modelPath = "/data/local/tmp/llava/llava.pte";
-            String tokenizerPath = "/data/local/tmp/llava/tokenizer.bin";
-
-            File modelFile = new File(modelPath);
-            File tokenizerFile = new File(tokenizerPath);
+            File modelFile = new File(MODEL_PATH);
+            File tokenizerFile = new File(TOKENIZER_PATH);
 
             if (!modelFile.exists() || !tokenizerFile.exists()) {
                 throw new IllegalStateException("Model or tokenizer files not found");
             }
 
-            mModule = new LlamaModule(MODEL_TYPE, modelPath, tokenizerPath, TEMPERATURE);
+            mModule = new LlamaModule(MODEL_TYPE, MODEL_PATH, TOKENIZER_PATH, TEMPERATURE);
             mModule.load();
             Log.i(TAG, "Local CPU model initialized successfully");
         } catch (Exception e) {
@@ -130,29 +139,23 @@ public class VLMEngineService extends BaseEngineService {
         }
     }
 
-    @Override
-    public boolean isReady() {
-        return isInitialized;
-    }
-
     public CompletableFuture<String> analyzeImage(Uri imageUri, String userPrompt) {
-        if (!isInitialized || !backend.equals("local_cpu")) {
+        if (!isReady() || !backend.equals("local_cpu")) {
             CompletableFuture<String> future = new CompletableFuture<>();
             future.completeExceptionally(new IllegalStateException("Engine not initialized or wrong backend"));
             return future;
         }
 
+        activeRequests.incrementAndGet();
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Log.d(TAG, "Processing image: " + imageUri);
-                ETImage processedImage = new ETImage(getContentResolver(), imageUri);
-                if (processedImage.getWidth() == 0 || processedImage.getHeight() == 0) {
-                    throw new IllegalStateException("Failed to process image");
+                if (!ensureResident()) {
+                    throw new IllegalStateException("Failed to reload evicted VLM model");
                 }
-
-                int[] imageData = processedImage.getInts();
-                Log.d(TAG, "Image processed, dimensions: " + processedImage.getWidth() + "x" + processedImage.getHeight());
-                prefillImage(imageData, processedImage.getWidth(), processedImage.getHeight());
+                Log.d(TAG, "Processing image: " + imageUri);
+                ImageTensorCache.Tensor image = getImageTensor(imageUri);
+                Log.d(TAG, "Image processed, dimensions: " + image.getWidth() + "x" + image.getHeight());
+                prefillImage(image.getData(), image.getWidth(), image.getHeight());
 
                 CompletableFuture<String> resultFuture = new CompletableFuture<>();
                 StringBuilder result = new StringBuilder();
@@ -183,22 +186,89 @@ public class VLMEngineService extends BaseEngineService {
             } catch (Exception e) {
                 Log.e(TAG, "Error analyzing image", e);
                 throw new RuntimeException("Failed to analyze image: " + e.getMessage(), e);
+            } finally {
+                activeRequests.decrementAndGet();
             }
         });
     }
 
+    /**
+     * Returns the preprocessed tensor of an image, from the cache if the same picture was
+     * analyzed before. The image is only decoded and converted on a miss.
+     */
+    private ImageTensorCache.Tensor getImageTensor(Uri imageUri) {
+        String key = null;
+        try (InputStream in = getContentResolver().openInputStream(imageUri)) {
+            if (in != null) {
+                key = ImageTensorCache.key(in, ETImage.RESIZED_IMAGE_WIDTH);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot hash image, skipping tensor cache", e);
+        }
+        ImageTensorCache cache = getImageCache();
+        if (key != null) {
+            ImageTensorCache.Tensor cached = cache.get(key);
+            if (cached != null) {
+                Log.d(TAG, "Image tensor cache hit, " + cache);
+                return cached;
+            }
+        }
+
+        ETImage processedImage = new ETImage(getContentResolver(), imageUri);
+        try {
+            if (processedImage.getWidth() == 0 || processedImage.getHeight() == 0) {
+                throw new IllegalStateException("Failed to process image");
+            }
+            // The cache keeps its own copy so the pooled image buffer can go back to the pool
+            ImageTensorCache.Tensor tensor = new ImageTensorCache.Tensor(
+                processedImage.getWidth(), processedImage.getHeight(), processedImage.getInts().clone());
+            if (key != null) {
+                cache.put(key, tensor);
+            }
+            return tensor;
+        } finally {
+            processedImage.release();
+        }
+    }
+
+    private synchronized ImageTensorCache getImageCache() {
+        if (imageCache == null) {
+            imageCache = new ImageTensorCache(new File(getCacheDir(), "image_tensor_cache"),
+                AppConstants.VLM_IMAGE_CACHE_MEMORY_ENTRIES, AppConstants.VLM_IMAGE_CACHE_DISK_BYTES);
+        }
+        return imageCache;
+    }
+
     private void resetModel() {
         if (mModule != null) {
             mModule.resetNative();
+            mModule = null;
             startPos = 0;
         }
     }
 
     @Override
-    protected void finalize() throws Throwable {
-        if (mModule != null) {
-            mModule.resetNative();
+    public long getResidentBytes() {
+        return mModule != null ? new File(MODEL_PATH).length() : 0;
+    }
+
+    @Override
+    protected boolean isBusy() {
+        return activeRequests.get() > 0;
+    }
+
+    @Override
+    protected void evictEngine() {
+        resetModel();
+    }
+
+    @Override
+    public void onDestroy() {
+        if (getState() != EngineState.UNLOADED) {
+            setState(EngineState.RELEASING);
         }
-        super.finalize();
+        resetModel();
+        setState(EngineState.UNLOADED);
+        super.onDestroy();
     }
-} 
\ No newline at end of file
+}
@@ -30,6 +30,7 @@ public class AppConstants {
     public static final String BACKEND_NONE = "none";
     public static final String BACKEND_CPU = "cpu";
     public static final String BACKEND_MTK = "mtk";
+    public static final String BACKEND_MOCK = "mock";  // Synthetic model-free backend for pipeline load tests
     public static final String BACKEND_DEFAULT = BACKEND_CPU;  // Default to CPU backend since MTK is experimental
     
     // Backend Enable Flags
@@ -40,15 +41,32 @@ public class AppConstants {
     public static final int MAX_MTK_INIT_ATTEMPTS = 5;
     public static final long MTK_CLEANUP_TIMEOUT_MS = 5000;  // 5 seconds timeout for cleanup
     public static final long MTK_NATIVE_OP_TIMEOUT_MS = 2000;  // 2 seconds timeout for native operations
-    public static final long BACKEND_INIT_DELAY_MS = 200;    // Delay between backend initialization attempts
-    public static final long BACKEND_CLEANUP_DELAY_MS = 100; // Delay for backend cleanup operations
+    public static final int MTK_PROMPT_TOKEN_SIZE = 128;  // Token size of the model variant that prefills prompts
+    public static final int MTK_GENERATION_TOKEN_SIZE = 1;  // Token size of the variant the runtime decodes with
+    public static final int MTK_SWAP_MIN_PROMPT_TOKENS = 16;  // Shorter prompts skip the variant swap until its cost is measured
+    public static final int MTK_CIRCUIT_FAILURE_THRESHOLD = 2;  // Consecutive failed native calls that route to CPU
+    public static final long MTK_CIRCUIT_BASE_BACKOFF_MS = 10 * 60 * 1000;  // First background MTK probe after opening
+    public static final long MTK_CIRCUIT_MAX_BACKOFF_MS = 24 * 60 * 60 * 1000;  // Longest wait between MTK probes
+    public static final long MTK_CIRCUIT_PROBE_BUSY_RETRY_MS = 30000;  // Probe delay while a generation is running
+    public static final long ENGINE_START_TIMEOUT_MS = 5000;  // Max wait for a bound engine to start loading
+    public static final long ENGINE_LOAD_TIMEOUT_MS = 60000;  // Max wait for a TTS or ASR engine to finish loading
+    public static final int MAX_PARALLEL_ENGINE_INITS = 2;  // Engines loaded at once when memory allows
+    public static final long LLM_INIT_MEMORY_BYTES = 768L * 1024 * 1024;  // Estimated KV cache and runtime buffers of a loading LLM
+    public static final long TTS_INIT_MEMORY_BYTES = 150L * 1024 * 1024;  // Estimated memory of the loaded VITS model
+    public static final long ASR_INIT_MEMORY_BYTES = 200L * 1024 * 1024;  // Estimated memory of the loaded ASR model
+    public static final float ENGINE_MEMORY_BUDGET_FRACTION = 0.5f;  // Share of device RAM loaded engines may hold before LRU eviction
     
     // LLM Service Constants
     public static final long LLM_INIT_TIMEOUT_MS = 300000;  // 5 minutes for initialization
     public static final long LLM_GENERATION_TIMEOUT_MS = Long.MAX_VALUE;  // No timeout for generation
     public static final long LLM_NATIVE_OP_TIMEOUT_MS = 10000;  // 10 seconds for native ops
     public static final long LLM_CLEANUP_TIMEOUT_MS = 10000;  // 10 seconds for cleanup
+    public static final boolean LLM_BACKEND_CALIBRATION_ENABLED = true;  // Benchmark backends once per OS build and model
+    public static final long LLM_CALIBRATION_TIMEOUT_MS = 60000;  // 1 minute per backend benchmark
     public static final int LLM_MAX_MTK_INIT_ATTEMPTS = 3;
+    public static final float LLM_SYNTHETIC_TOKENS_PER_SECOND = 20f;  // Default decode rate of the mock backend
+    public static final float LLM_SYNTHETIC_JITTER = 0.2f;  // Inter-token delay variation of the mock backend
+    public static final long LLM_SYNTHETIC_PREFILL_DELAY_MS = 300;  // Time to first token of the mock backend
     
     // Model Files and Paths
     public static final String LLAMA_MODEL_FILE = "llama3_2.pte";
@@ -179,6 +197,25 @@ public class AppConstants {
         return appTokenizerFile.getAbsolutePath();
     }
 
+    // Get the Llama Guard model path, or null if the guard model is not installed
+    public static String getSafetyGuardModelPath(Context context) {
+        return findModelFile(context, SAFETY_GUARD_MODEL_FILE);
+    }
+
+    // Get the Llama Guard tokenizer path, or null if it is not installed
+    public static String getSafetyGuardTokenizerPath(Context context) {
+        return findModelFile(context, SAFETY_GUARD_TOKENIZER_FILE);
+    }
+
+    private static String findModelFile(Context context, String fileName) {
+        File legacyFile = new File(LLAMA_MODEL_DIR, fileName);
+        if (legacyFile.exists() && legacyFile.length() > 0) {
+            return legacyFile.getAbsolutePath();
+        }
+        File appFile = new File(new File(context.getFilesDir(), APP_MODEL_DIR), fileName);
+        return appFile.exists() && appFile.length() > 0 ? appFile.getAbsolutePath() : null;
+    }
+
     // Check if model needs to be downloaded
     public static boolean needsModelDownload(Context context) {
         // First check legacy location
@@ -191,20 +228,15 @@ public class AppConstants {
         return !appModelFile.exists() || appModelFile.length() == 0;
     }
 
-    // Get the current effective model path (used for sequence length calculations)
-    private static String getCurrentModelPath(Context context) {
-        return isModelInLegacyLocation() ? 
-            new File(LLAMA_MODEL_DIR, BREEZE_MODEL_FILE).getAbsolutePath() :
-            new File(new File(context.getFilesDir(), APP_MODEL_DIR), BREEZE_MODEL_FILE).getAbsolutePath();
-    }
-
-    // LLM Sequence Length Constants - these should be calculated based on the current model path
+    // LLM Sequence Length Constants - read from the current model's manifest once it is loaded
     public static int getLLMMaxSeqLength(Context context) {
-        return getCurrentModelPath(context).contains("2048") ? 2048 : 128;
+        ModelManifest manifest = ModelManifest.getCurrent();
+        return manifest != null ? manifest.getMaxSeqLength() : ModelManifest.getMaxSeqLengthFromName(BREEZE_MODEL_FILE);
     }
 
     public static int getLLMMinOutputLength(Context context) {
-        return getCurrentModelPath(context).contains("2048") ? 512 : 32;
+        ModelManifest manifest = ModelManifest.getCurrent();
+        return manifest != null ? manifest.getMinOutputLength() : ModelManifest.getMaxSeqLengthFromName(BREEZE_MODEL_FILE) / 4;
     }
 
     public static int getLLMMaxInputLength(Context context) {
@@ -217,9 +249,27 @@ public class AppConstants {
     public static final String LLM_EMPTY_RESPONSE_ERROR = "I apologize, but I couldn't generate a proper response. Please try rephrasing your question.";
     public static final String LLM_INPUT_TOO_LONG_ERROR = "I apologize, but your input is too long. Please try breaking it into smaller parts.";
     public static final String LLM_INVALID_TOKEN_ERROR = "I apologize, but I was unable to generate a valid response. This might be due to the complexity of the question or current model limitations. Please try rephrasing your question.";
+    public static final String LLM_UNSAFE_PROMPT_RESPONSE = "I apologize, but I can't help with that request.";
     
     // LLM Configuration
     public static final float LLM_TEMPERATURE = 0.0f;
+    public static final boolean LLM_PREFIX_CACHE_ENABLED = true;  // Prefill the system prompt once and reuse its KV position
+    public static final boolean LLM_INCREMENTAL_SESSION_ENABLED = true;  // Prefill only the new turn when history is enabled
+    public static final boolean LLM_RESPONSE_CACHE_ENABLED = true;  // Replay repeated prompts, only used at temperature 0
+    public static final int LLM_RESPONSE_CACHE_MEMORY_ENTRIES = 32;  // Responses kept in memory
+    public static final long LLM_RESPONSE_CACHE_DISK_BYTES = 4L * 1024 * 1024;  // Size limit of the on-disk tier
+    public static final long LLM_RESPONSE_CACHE_REPLAY_DELAY_MS = 15;  // Pause between replayed tokens, 0 replays at once
+    public static final int VLM_IMAGE_CACHE_MEMORY_ENTRIES = 4;  // Preprocessed images kept in memory, about 1 MB each
+    public static final long VLM_IMAGE_CACHE_DISK_BYTES = 16L * 1024 * 1024;  // Size limit of the on-disk image tier
+    public static final int LLM_TOKEN_STREAM_BUFFER_SIZE = 64;  // Tokens buffered per stream subscriber before merging
+
+    // Safety Guard Configuration (Llama Guard 3, used only when its model is present)
+    public static final boolean SAFETY_GUARD_ENABLED = true;
+    public static final String SAFETY_GUARD_MODEL_FILE = "llama_guard_3_1b.pte";
+    public static final String SAFETY_GUARD_TOKENIZER_FILE = "llama_guard_3_tokenizer.model";
+    public static final int SAFETY_GUARD_MAX_SEQ_LEN = 1024;  // Guard instructions plus the user prompt
+    public static final int SAFETY_VERDICT_CACHE_SIZE = 256;  // Verdicts kept by prompt hash
+    public static final long SAFETY_GUARD_TIMEOUT_MS = 10000;  // Max wait for a verdict once the reply is complete
     
     // When false: Send button always shows send icon and only sends messages
     // When true: Send button toggles between send and audio chat mode
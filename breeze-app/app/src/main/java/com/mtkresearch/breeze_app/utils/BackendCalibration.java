@@ -0,0 +1,184 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Result of benchmarking the LLM backends on this device. It is stored together with a
+ * fingerprint of the OS build and the model file, so calibration runs again only when either
+ * changes and every other launch reads the stored choice without probing the hardware.
+ */
+public class BackendCalibration {
+    private static final String TAG = "BackendCalibration";
+    private static final String PREFS_NAME = "backend_calibration";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_BACKEND = "backend";
+    private static final String KEY_BACKENDS = "backends";
+    private static final String KEY_PREFILL_MS = "_prefill_ms";
+    private static final String KEY_PREFILL_TPS = "_prefill_tps";
+    private static final String KEY_DECODE_TPS = "_decode_tps";
+
+    // Fixed workload, identical on every backend so the measurements are comparable
+    public static final String CALIBRATION_PROMPT =
+        "Write a detailed paragraph explaining how a rainbow forms, covering sunlight, "
+            + "refraction, reflection inside raindrops and why the colors appear in a fixed order.";
+    public static final int CALIBRATION_OUTPUT_TOKENS = 48;
+    // Reply length used to weigh decode speed against prefill time when ranking backends
+    private static final int REFERENCE_OUTPUT_TOKENS = 128;
+
+    /**
+     * Throughput of one backend on the calibration prompt.
+     */
+    public static class Measurement {
+        private final String backend;
+        private final double prefillMs;
+        private final double prefillTokensPerSecond;
+        private final double decodeTokensPerSecond;
+
+        public Measurement(String backend, double prefillMs, double prefillTokensPerSecond,
+                           double decodeTokensPerSecond) {
+            this.backend = backend;
+            this.prefillMs = prefillMs;
+            this.prefillTokensPerSecond = prefillTokensPerSecond;
+            this.decodeTokensPerSecond = decodeTokensPerSecond;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        /**
+         * Time to prefill the calibration prompt, including any system prompt prefix.
+         */
+        public double getPrefillMs() {
+            return prefillMs;
+        }
+
+        /**
+         * Prefill throughput, or 0 if the prompt could not be tokenized.
+         */
+        public double getPrefillTokensPerSecond() {
+            return prefillTokensPerSecond;
+        }
+
+        public double getDecodeTokensPerSecond() {
+            return decodeTokensPerSecond;
+        }
+
+        /**
+         * Estimated latency of a typical turn: the calibration prefill plus a reference-length reply.
+         */
+        double getEstimatedTurnMs() {
+            return prefillMs + REFERENCE_OUTPUT_TOKENS * 1000.0 / decodeTokensPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: prefill %.1f ms (%.1f tok/s), decode %.1f tok/s",
+                backend, prefillMs, prefillTokensPerSecond, decodeTokensPerSecond);
+        }
+    }
+
+    private final String backend;
+    private final List<Measurement> measurements;
+
+    private BackendCalibration(String backend, List<Measurement> measurements) {
+        this.backend = backend;
+        this.measurements = Collections.unmodifiableList(measurements);
+    }
+
+    /**
+     * Picks the backend with the lowest estimated turn latency.
+     * @return The calibration, or null if no backend produced a usable measurement
+     */
+    public static BackendCalibration fromMeasurements(List<Measurement> measurements) {
+        List<Measurement> usable = new ArrayList<>();
+        Measurement best = null;
+        for (Measurement measurement : measurements) {
+            if (measurement.getDecodeTokensPerSecond() <= 0 || measurement.getPrefillMs() <= 0) {
+                continue;
+            }
+            usable.add(measurement);
+            if (best == null || measurement.getEstimatedTurnMs() < best.getEstimatedTurnMs()) {
+                best = measurement;
+            }
+        }
+        return best == null ? null : new BackendCalibration(best.getBackend(), usable);
+    }
+
+    /**
+     * Returns the stored calibration, or null if there is none for the current OS build and model file.
+     */
+    public static BackendCalibration load(Context context, String modelPath) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!getFingerprint(modelPath).equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            return null;
+        }
+        String backend = prefs.getString(KEY_BACKEND, null);
+        String backends = prefs.getString(KEY_BACKENDS, "");
+        if (backend == null || backends.isEmpty()) {
+            return null;
+        }
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (String name : backends.split(",")) {
+            measurements.add(new Measurement(name,
+                prefs.getFloat(name + KEY_PREFILL_MS, 0),
+                prefs.getFloat(name + KEY_PREFILL_TPS, 0),
+                prefs.getFloat(name + KEY_DECODE_TPS, 0)));
+        }
+        return new BackendCalibration(backend, measurements);
+    }
+
+    public void save(Context context, String modelPath) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .edit()
+            .clear()
+            .putString(KEY_FINGERPRINT, getFingerprint(modelPath))
+            .putString(KEY_BACKEND, backend);
+        StringBuilder backends = new StringBuilder();
+        for (Measurement measurement : measurements) {
+            String name = measurement.getBackend();
+            if (backends.length() > 0) {
+                backends.append(',');
+            }
+            backends.append(name);
+            editor.putFloat(name + KEY_PREFILL_MS, (float) measurement.getPrefillMs())
+                .putFloat(name + KEY_PREFILL_TPS, (float) measurement.getPrefillTokensPerSecond())
+                .putFloat(name + KEY_DECODE_TPS, (float) measurement.getDecodeTokensPerSecond());
+        }
+        editor.putString(KEY_BACKENDS, backends.toString()).apply();
+        ModelManifest.recordPreferredBackend(context, modelPath, backend);
+        Log.i(TAG, "Saved calibration: " + this);
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public List<Measurement> getMeasurements() {
+        return measurements;
+    }
+
+    @Override
+    public String toString() {
+        return "BackendCalibration{backend=" + backend + ", " + measurements + "}";
+    }
+
+    /**
+     * Identifies the OS build and model file. Size and modification time stand in for a content
+     * hash, which would mean reading the whole multi-GB file.
+     */
+    private static String getFingerprint(String modelPath) {
+        File model = new File(modelPath);
+        return Build.FINGERPRINT + "|" + model.getAbsolutePath() + "|" + model.length() + "|" + model.lastModified();
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
  */
 public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.MessageViewHolder> {
     private static final String TAG = "ChatMessageAdapter";
+    private static final Object PAYLOAD_TEXT_APPENDED = new Object();  // Partial bind: only append new text
     private final List<ChatMessage> messages = new ArrayList<>();
     private final Handler handler = new Handler(Looper.getMainLooper());
     private OnSpeakerClickListener speakerClickListener;
@@ -72,6 +73,14 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
         }
     }
 
+    /**
+     * Notifies that text was appended to the message at position, so only the new text is
+     * appended to the bound view instead of rebinding the whole item.
+     */
+    public void notifyTextAppended(int position) {
+        notifyItemChanged(position, PAYLOAD_TEXT_APPENDED);
+    }
+
     public void removeLastMessage() {
         if (!messages.isEmpty()) {
             int lastIndex = messages.size() - 1;
@@ -138,6 +147,24 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        boolean textOnly = !payloads.isEmpty();
+        for (Object payload : payloads) {
+            textOnly &= payload == PAYLOAD_TEXT_APPENDED;
+        }
+        if (!textOnly) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        ChatMessage message = messages.get(position);
+        holder.appendText(message);
+        if (!message.isUser()) {
+            holder.speakerButton.setVisibility(message.hasText() ? View.VISIBLE : View.GONE);
+        }
+    }
+
     private void setupUserMessage(MessageViewHolder holder, ConstraintLayout.LayoutParams params, ChatMessage message) {
         params.startToStart = ConstraintLayout.LayoutParams.UNSET;
         params.endToEnd = ConstraintLayout.LayoutParams.PARENT_ID;
@@ -170,7 +197,7 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
     }
 
     private void setupImageAndSpeakerButtons(MessageViewHolder holder, ChatMessage message) {
-        Uri imageUri = message.getImageUri();
+        Uri imageUri = message.hasImage() ? Uri.parse(message.getImageUri()) : null;
         if (imageUri != null) {
             Log.d(TAG, "Image URI present: " + imageUri);
             holder.messageImage.setVisibility(View.VISIBLE);
@@ -225,5 +252,18 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
         void bind(ChatMessage message) {
             messageText.setText(message.getText());
         }
+
+        /**
+         * Appends whatever part of the message text is not shown yet.
+         */
+        void appendText(ChatMessage message) {
+            int shown = messageText.getText().length();
+            int length = message.getTextLength();
+            if (shown > length) {
+                messageText.setText(message.getText());
+            } else if (shown < length) {
+                messageText.append(message.getTextFrom(shown));
+            }
+        }
     }
 }
\ No newline at end of file
@@ -52,7 +52,7 @@ public class ConversationManager {
         Log.d(TAG, String.format("Getting history: total messages=%d, lookback=%d", 
             messages.size(), lookback));
 
-        return PromptManager.getFormattedConversationHistory(messages, modelType);
+        return PromptManager.getFormattedConversationHistory(messages, modelType, lookback);
     }
 
     /**
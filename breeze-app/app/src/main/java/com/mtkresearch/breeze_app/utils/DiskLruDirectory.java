@@ -0,0 +1,143 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Size-bounded directory of cache entries, one file per key. Entries are evicted by modification
+ * time, oldest first, and reading an entry makes it the newest. Not thread-safe; the owning cache
+ * synchronizes access.
+ */
+public class DiskLruDirectory {
+    private static final String TAG = "DiskLruDirectory";
+
+    interface Reader<T> {
+        T read(File file) throws IOException;
+    }
+
+    interface Writer {
+        void write(File file) throws IOException;
+    }
+
+    private final File directory;
+    private final String suffix;
+    private final long maxBytes;
+    private long bytes = 0;
+
+    /**
+     * @param suffix File name suffix of entries; other files in the directory are left alone
+     */
+    public DiskLruDirectory(File directory, String suffix, long maxBytes) {
+        this.directory = directory;
+        this.suffix = suffix;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Creates the directory, counts the entries already in it and trims them to the limit.
+     * @return false if the directory cannot be created
+     */
+    public boolean open() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create cache directory " + directory);
+            return false;
+        }
+        bytes = 0;
+        for (File file : listEntries()) {
+            bytes += file.length();
+        }
+        trim();
+        return true;
+    }
+
+    /**
+     * Reads an entry and marks it as the most recently used.
+     * @return The entry, or null if there is none; unreadable entries are deleted
+     */
+    public <T> T read(String key, Reader<T> reader) {
+        File file = entryFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            T entry = reader.read(file);
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), e);
+            delete(file, file.length());
+            return null;
+        }
+    }
+
+    /**
+     * Writes or replaces an entry, then evicts the oldest entries over the limit.
+     * @return false if writing failed; the entry is deleted then
+     */
+    public boolean write(String key, Writer writer) {
+        File file = entryFile(key);
+        long previousLength = file.exists() ? file.length() : 0;
+        try {
+            writer.write(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cache entry " + file.getName(), e);
+            delete(file, previousLength);
+            return false;
+        }
+        bytes += file.length() - previousLength;
+        trim();
+        return true;
+    }
+
+    /**
+     * Deletes every entry.
+     */
+    public void clear() {
+        for (File file : listEntries()) {
+            file.delete();
+        }
+        bytes = 0;
+    }
+
+    /**
+     * Bytes taken by the entries on disk.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private void trim() {
+        if (bytes <= maxBytes) {
+            return;
+        }
+        File[] files = listEntries();
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (bytes <= maxBytes) {
+                break;
+            }
+            delete(file, file.length());
+        }
+    }
+
+    /**
+     * @param countedLength Length the file was accounted with
+     */
+    private void delete(File file, long countedLength) {
+        if (file.delete() || !file.exists()) {
+            bytes = Math.max(0, bytes - countedLength);
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + suffix);
+    }
+
+    private File[] listEntries() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        return files != null ? files : new File[0];
+    }
+}
@@ -0,0 +1,192 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Two-tier cache of preprocessed vision inputs: an in-memory LRU in front of a size-bounded
+ * directory on disk. Keys hash the encoded image bytes together with the target resolution, so
+ * a picture asked about again skips decoding, scaling and conversion and goes straight to
+ * prefill. Tensors are stored on disk as one byte per channel value.
+ */
+public class ImageTensorCache {
+    private static final String ENTRY_SUFFIX = ".rgb";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Planar RGB image in the layout {@code LlamaModule.prefillImages} takes.
+     */
+    public static final class Tensor {
+        private final int width;
+        private final int height;
+        private final int[] data;
+
+        /**
+         * @param data Channel values from 0 to 255; owned by the tensor and never modified
+         */
+        public Tensor(int width, int height, int[] data) {
+            if (data.length != width * height * 3) {
+                throw new IllegalArgumentException("Expected " + width * height * 3 + " values, got " + data.length);
+            }
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int[] getData() {
+            return data;
+        }
+    }
+
+    private final DiskLruDirectory disk;
+    private final Map<String, Tensor> memory;
+
+    private int memoryHits = 0;
+    private int diskHits = 0;
+    private int misses = 0;
+    private int stores = 0;
+
+    public ImageTensorCache(File directory, int maxMemoryEntries, long maxDiskBytes) {
+        this.disk = new DiskLruDirectory(directory, ENTRY_SUFFIX, maxDiskBytes);
+        this.memory = new LinkedHashMap<String, Tensor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tensor> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        disk.open();
+    }
+
+    /**
+     * Builds the cache key of an image from its encoded bytes and the long side it is scaled to.
+     * The stream is read to the end but not closed.
+     */
+    public static String key(InputStream image, int maxLength) throws IOException {
+        MessageDigest digest = HashUtils.newSha256();
+        digest.update(String.format(Locale.US, "%d\n%d\n", FORMAT_VERSION, maxLength)
+            .getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = image.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HashUtils.toHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached tensor, or null on a miss. Disk hits are promoted to memory.
+     */
+    public synchronized Tensor get(String key) {
+        Tensor tensor = memory.get(key);
+        if (tensor != null) {
+            memoryHits++;
+            return tensor;
+        }
+
+        tensor = disk.read(key, ImageTensorCache::readEntry);
+        if (tensor != null) {
+            memory.put(key, tensor);
+            diskHits++;
+            return tensor;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Stores a tensor, which the cache keeps without copying.
+     */
+    public synchronized void put(String key, Tensor tensor) {
+        memory.put(key, tensor);
+        stores++;
+        disk.write(key, file -> writeEntry(file, tensor));
+    }
+
+    /**
+     * Drops every entry from both tiers.
+     */
+    public synchronized void clear() {
+        memory.clear();
+        disk.clear();
+    }
+
+    public synchronized int getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized int getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getStores() {
+        return stores;
+    }
+
+    public synchronized long getDiskBytes() {
+        return disk.getBytes();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "ImageTensorCache{memoryHits=%d, diskHits=%d, misses=%d, stores=%d, disk=%d KB}",
+            memoryHits, diskHits, misses, stores, disk.getBytes() >> 10);
+    }
+
+    private static Tensor readEntry(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown entry format");
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width <= 0 || height <= 0 || (long) width * height * 3 != file.length() - 12) {
+                throw new IOException("Truncated entry");
+            }
+            byte[] bytes = new byte[width * height * 3];
+            in.readFully(bytes);
+            int[] data = new int[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                data[i] = bytes[i] & 0xFF;
+            }
+            return new Tensor(width, height, data);
+        }
+    }
+
+    private static void writeEntry(File file, Tensor tensor) throws IOException {
+        int[] data = tensor.getData();
+        byte[] bytes = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            bytes[i] = (byte) data[i];
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(tensor.getWidth());
+            out.writeInt(tensor.getHeight());
+            out.write(bytes);
+        }
+    }
+}
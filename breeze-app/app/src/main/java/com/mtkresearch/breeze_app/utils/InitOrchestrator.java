@@ -0,0 +1,352 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs startup steps concurrently while respecting their dependencies. A step starts once all of
+ * its dependencies succeeded and both a concurrency limit and a memory budget allow it. Steps
+ * are admitted in priority order, and smaller lower priority steps backfill the memory left when
+ * a larger one does not fit yet. A step whose dependency failed is skipped. {@link #run()}
+ * returns a trace of the run.
+ */
+public class InitOrchestrator {
+    private static final String TAG = "InitOrchestrator";
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    public interface Listener {
+        /**
+         * Called on the step's thread once it finished, failed or was skipped.
+         */
+        void onStepFinished(String name, Status status);
+    }
+
+    public enum Status { PENDING, RUNNING, SUCCEEDED, FAILED, SKIPPED }
+
+    private static final class Task {
+        final String name;
+        final int priority;
+        final long memoryBytes;
+        final Step step;
+        final List<String> dependencies;
+        final int order;
+        Status status = Status.PENDING;
+        long startMs = -1;
+        long endMs = -1;
+
+        Task(String name, int priority, long memoryBytes, Step step, List<String> dependencies, int order) {
+            this.name = name;
+            this.priority = priority;
+            this.memoryBytes = memoryBytes;
+            this.step = step;
+            this.dependencies = dependencies;
+            this.order = order;
+        }
+    }
+
+    private final int maxConcurrency;
+    private final long memoryBudgetBytes;
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final Object lock = new Object();
+    private Listener listener;
+    private int running = 0;
+    private long runningMemoryBytes = 0;
+    private int peakConcurrency = 0;
+    private long startTime;
+
+    /**
+     * @param maxConcurrency Maximum number of steps running at once
+     * @param memoryBudgetBytes Combined estimated memory of steps running at once. A step that
+     *                          exceeds the budget on its own still runs, but alone.
+     */
+    public InitOrchestrator(int maxConcurrency, long memoryBudgetBytes) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Adds a step. Higher priority steps are started first when several are ready.
+     * @param memoryBytes Estimated memory the step needs while it runs
+     */
+    public InitOrchestrator add(String name, int priority, long memoryBytes, Step step, String... dependsOn) {
+        if (tasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate step: " + name);
+        }
+        List<String> dependencies = new ArrayList<>();
+        Collections.addAll(dependencies, dependsOn);
+        tasks.put(name, new Task(name, priority, memoryBytes, step, dependencies, tasks.size()));
+        return this;
+    }
+
+    public InitOrchestrator setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Runs all steps and blocks until every one has finished or been skipped.
+     */
+    public Trace run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrency, r -> new Thread(r, "EngineInit"));
+        startTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                List<Task> skipped;
+                synchronized (lock) {
+                    skipped = skipBlockedTasks();
+                    if (skipped.isEmpty()) {
+                        for (Task task : takeAdmittableTasks()) {
+                            executor.execute(() -> execute(task));
+                        }
+                        if (running == 0 && !hasPending()) {
+                            break;
+                        }
+                        lock.wait();
+                        continue;
+                    }
+                }
+                notifyFinished(skipped);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Trace trace = new Trace(new ArrayList<>(tasks.values()), System.currentTimeMillis() - startTime, peakConcurrency);
+        Log.i(TAG, trace.toString());
+        return trace;
+    }
+
+    private void execute(Task task) {
+        Throwable error = null;
+        try {
+            task.step.run();
+        } catch (Throwable t) {
+            error = t;
+            Log.e(TAG, "Step " + task.name + " failed", t);
+        }
+        synchronized (lock) {
+            task.endMs = System.currentTimeMillis() - startTime;
+            task.status = error == null ? Status.SUCCEEDED : Status.FAILED;
+            running--;
+            runningMemoryBytes -= task.memoryBytes;
+            lock.notifyAll();
+        }
+        notifyFinished(Collections.singletonList(task));
+    }
+
+    private void notifyFinished(List<Task> finished) {
+        Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        for (Task task : finished) {
+            try {
+                current.onStepFinished(task.name, task.status);
+            } catch (Exception e) {
+                Log.e(TAG, "Error in step listener", e);
+            }
+        }
+    }
+
+    /**
+     * Marks pending steps that can never run as skipped: a dependency failed, was skipped or
+     * does not exist. Also breaks dependency cycles once nothing else can make progress.
+     */
+    private List<Task> skipBlockedTasks() {
+        List<Task> skipped = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            if (task.status != Status.PENDING) {
+                continue;
+            }
+            for (String name : task.dependencies) {
+                Task dependency = tasks.get(name);
+                if (dependency == null || dependency.status == Status.FAILED || dependency.status == Status.SKIPPED) {
+                    skip(task, skipped);
+                    break;
+                }
+            }
+        }
+        if (skipped.isEmpty() && running == 0 && hasPending() && !hasReadyTask()) {
+            for (Task task : tasks.values()) {
+                if (task.status == Status.PENDING) {
+                    Log.w(TAG, "Step " + task.name + " is part of a dependency cycle");
+                    skip(task, skipped);
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private void skip(Task task, List<Task> skipped) {
+        task.status = Status.SKIPPED;
+        task.startMs = task.endMs = System.currentTimeMillis() - startTime;
+        skipped.add(task);
+    }
+
+    /**
+     * Starts ready steps in priority order, skipping over steps that do not fit the remaining
+     * memory. A higher priority step still waiting on its dependencies keeps its memory reserved,
+     * so lower priority steps cannot delay it.
+     */
+    private List<Task> takeAdmittableTasks() {
+        List<Task> admitted = new ArrayList<>();
+        long reservedBytes = 0;
+        for (Task task : pendingTasksByPriority()) {
+            if (!dependenciesSucceeded(task)) {
+                reservedBytes += task.memoryBytes;
+                continue;
+            }
+            boolean fitsMemory = running == 0
+                || runningMemoryBytes + reservedBytes + task.memoryBytes <= memoryBudgetBytes;
+            if (running >= maxConcurrency) {
+                break;
+            }
+            if (!fitsMemory) {
+                continue;
+            }
+            task.status = Status.RUNNING;
+            task.startMs = System.currentTimeMillis() - startTime;
+            running++;
+            runningMemoryBytes += task.memoryBytes;
+            peakConcurrency = Math.max(peakConcurrency, running);
+            admitted.add(task);
+        }
+        return admitted;
+    }
+
+    private List<Task> pendingTasksByPriority() {
+        List<Task> pending = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            if (task.status == Status.PENDING) {
+                pending.add(task);
+            }
+        }
+        Collections.sort(pending, (a, b) -> a.priority != b.priority
+            ? Integer.compare(b.priority, a.priority) : Integer.compare(a.order, b.order));
+        return pending;
+    }
+
+    private boolean hasReadyTask() {
+        for (Task task : tasks.values()) {
+            if (task.status == Status.PENDING && dependenciesSucceeded(task)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean dependenciesSucceeded(Task task) {
+        for (String name : task.dependencies) {
+            Task dependency = tasks.get(name);
+            if (dependency == null || dependency.status != Status.SUCCEEDED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasPending() {
+        for (Task task : tasks.values()) {
+            if (task.status == Status.PENDING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Outcome and timing of each step, in the order the steps were added.
+     */
+    public static class Trace {
+        private static final int TIMELINE_WIDTH = 40;
+
+        private final List<Task> tasks;
+        private final long totalMs;
+        private final int peakConcurrency;
+
+        private Trace(List<Task> tasks, long totalMs, int peakConcurrency) {
+            this.tasks = tasks;
+            this.totalMs = totalMs;
+            this.peakConcurrency = peakConcurrency;
+        }
+
+        public long getTotalMs() {
+            return totalMs;
+        }
+
+        public int getPeakConcurrency() {
+            return peakConcurrency;
+        }
+
+        public Status getStatus(String name) {
+            Task task = find(name);
+            return task != null ? task.status : null;
+        }
+
+        /**
+         * Milliseconds from the start of the run until the step started, or -1 if it never ran.
+         */
+        public long getStartMs(String name) {
+            Task task = find(name);
+            return task != null ? task.startMs : -1;
+        }
+
+        public long getEndMs(String name) {
+            Task task = find(name);
+            return task != null ? task.endMs : -1;
+        }
+
+        private Task find(String name) {
+            for (Task task : tasks) {
+                if (task.name.equals(name)) {
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Renders one line per step with a timeline bar, so overlapping steps line up visually.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.US,
+                "Startup trace: %d ms total, peak concurrency %d", totalMs, peakConcurrency));
+            int nameWidth = 4;
+            for (Task task : tasks) {
+                nameWidth = Math.max(nameWidth, task.name.length());
+            }
+            for (Task task : tasks) {
+                sb.append('\n').append(String.format(Locale.US, "  %-" + nameWidth + "s %6d - %6d ms %-9s |%s|",
+                    task.name, task.startMs, task.endMs, task.status, timeline(task)));
+            }
+            return sb.toString();
+        }
+
+        private String timeline(Task task) {
+            char[] bar = new char[TIMELINE_WIDTH];
+            Arrays.fill(bar, ' ');
+            if (task.status == Status.SUCCEEDED || task.status == Status.FAILED) {
+                long span = Math.max(1, totalMs);
+                int from = (int) Math.min(TIMELINE_WIDTH - 1, task.startMs * TIMELINE_WIDTH / span);
+                int to = (int) Math.min(TIMELINE_WIDTH - 1, Math.max(from, (task.endMs * TIMELINE_WIDTH - 1) / span));
+                for (int i = from; i <= to; i++) {
+                    bar[i] = task.status == Status.SUCCEEDED ? '#' : 'x';
+                }
+            }
+            return new String(bar);
+        }
+    }
+}
@@ -392,6 +392,7 @@ public class ModelDownloadDialog extends Dialog {
                 if (!tempFile.renameTo(outputFile)) {
                     throw new IOException("Failed to move temporary file to final location");
                 }
+                ModelManifest.invalidate();
 
                 // Log successful download
                 Log.i(TAG, "Successfully downloaded " + fileName + " from " + urlString);
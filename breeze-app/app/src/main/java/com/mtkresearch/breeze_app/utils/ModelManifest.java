@@ -0,0 +1,463 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Capabilities of a model file: sequence length, vocabulary, tokenizer pairing and preferred
+ * backend. The manifest is built once per model file, from the metadata methods the ExecuTorch
+ * export embeds in the .pte and from the paired tokenizer, and persisted under a key of size,
+ * modification time and a hash of the file's first bytes. {@link #load(Context)} loads it off the
+ * main thread during engine initialization; after that every lookup is a field read with no
+ * filesystem access.
+ */
+public class ModelManifest {
+    private static final String TAG = "ModelManifest";
+    private static final String PREFS_NAME = "model_manifest";
+    private static final int FORMAT_VERSION = 2;
+    static final int HASH_PREFIX_BYTES = 64 * 1024;
+
+    // Constant methods added by the ExecuTorch Llama export
+    private static final String METHOD_MAX_SEQ_LEN = "get_max_seq_len";
+    private static final String METHOD_VOCAB_SIZE = "get_vocab_size";
+
+    // Manifest of the current model, set by load() once the model file exists
+    private static volatile ModelManifest current = null;
+
+    private final String modelPath;
+    private final long size;
+    private final long lastModified;
+    private final String hashPrefix;
+    private final int maxSeqLength;
+    private final int vocabSize;
+    private final String tokenizerPath;
+    private final int tokenizerVocabSize;
+    private final boolean fromMetadata;
+    private volatile String preferredBackend;
+
+    ModelManifest(String modelPath, long size, long lastModified, String hashPrefix, int maxSeqLength,
+                  int vocabSize, String tokenizerPath, int tokenizerVocabSize, boolean fromMetadata,
+                  String preferredBackend) {
+        this.modelPath = modelPath;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hashPrefix = hashPrefix;
+        this.maxSeqLength = maxSeqLength;
+        this.vocabSize = vocabSize;
+        this.tokenizerPath = tokenizerPath;
+        this.tokenizerVocabSize = tokenizerVocabSize;
+        this.fromMetadata = fromMetadata;
+        this.preferredBackend = preferredBackend;
+    }
+
+    /**
+     * Returns the manifest of the current model without touching the disk.
+     * @return The manifest, or null until {@link #load(Context)} has run
+     */
+    public static ModelManifest getCurrent() {
+        return current;
+    }
+
+    /**
+     * Loads the manifest of the current model, building it on the first run after a download.
+     * Reads the model and tokenizer files, so it must not run on the main thread.
+     * @return The manifest, or null while the model has not been downloaded
+     */
+    public static ModelManifest load(Context context) {
+        ModelManifest manifest = current;
+        if (manifest != null) {
+            return manifest;
+        }
+        synchronized (ModelManifest.class) {
+            if (current == null) {
+                String modelPath = AppConstants.getModelPath(context);
+                File model = new File(modelPath);
+                if (!model.isFile() || model.length() == 0) {
+                    return null;
+                }
+                current = loadOrBuild(context, model, AppConstants.getTokenizerPath(context));
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Returns the manifest for the given model if it is already loaded, without touching the disk.
+     */
+    public static ModelManifest peek(String modelPath) {
+        ModelManifest manifest = current;
+        return manifest != null && manifest.modelPath.equals(modelPath) ? manifest : null;
+    }
+
+    /**
+     * Drops the in-memory manifest, for when the model file has been replaced.
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Stores the backend chosen for the model, if its manifest is loaded.
+     */
+    public static void recordPreferredBackend(Context context, String modelPath, String backend) {
+        ModelManifest manifest = peek(new File(modelPath).getAbsolutePath());
+        if (manifest != null && !backend.equals(manifest.preferredBackend)) {
+            manifest.preferredBackend = backend;
+            manifest.save(context);
+        }
+    }
+
+    private static ModelManifest loadOrBuild(Context context, File model, String tokenizerPath) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String modelPath = model.getAbsolutePath();
+        ModelManifest stored = null;
+        String json = prefs.getString(modelPath, null);
+        if (json != null) {
+            try {
+                stored = fromJson(json);
+            } catch (JsonParseException | IllegalStateException e) {
+                Log.w(TAG, "Discarding unreadable manifest for " + modelPath, e);
+            }
+        }
+
+        long size = model.length();
+        long lastModified = model.lastModified();
+        if (stored != null && stored.size == size && stored.lastModified == lastModified) {
+            Log.d(TAG, "Loaded " + stored);
+            return stored;
+        }
+
+        try {
+            String hashPrefix = hashPrefix(model);
+            ModelManifest manifest;
+            if (stored != null && stored.size == size && stored.hashPrefix.equals(hashPrefix)) {
+                // Same content with a new timestamp, e.g. after a copy
+                manifest = stored.withLastModified(lastModified);
+            } else {
+                manifest = build(model, hashPrefix, tokenizerPath);
+            }
+            manifest.save(context);
+            Log.i(TAG, "Built " + manifest);
+            return manifest;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading model file " + modelPath, e);
+            return null;
+        }
+    }
+
+    private void save(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .edit()
+            .putString(modelPath, toJson())
+            .apply();
+    }
+
+    /**
+     * Reads the capabilities of a model file. Values missing from the .pte metadata, as in
+     * models exported without it, fall back to the tokenizer and the file name.
+     */
+    static ModelManifest build(File model, String hashPrefix, String tokenizerPath) throws IOException {
+        ProgramMetadata metadata;
+        try {
+            metadata = ProgramMetadata.read(model);
+        } catch (RuntimeException e) {
+            // Fall back to the file name and tokenizer rather than failing every caller
+            Log.w(TAG, "Cannot read program metadata of " + model, e);
+            metadata = ProgramMetadata.EMPTY;
+        }
+        LLMTokenizer tokenizer = tokenizerPath != null ? LLMTokenizer.getInstance(tokenizerPath) : null;
+        int tokenizerVocabSize = tokenizer != null ? tokenizer.getVocabSize() : 0;
+
+        long maxSeqLength = metadata.getInt(METHOD_MAX_SEQ_LEN);
+        long vocabSize = metadata.getInt(METHOD_VOCAB_SIZE);
+        if (vocabSize > 0 && tokenizerVocabSize > vocabSize) {
+            Log.w(TAG, "Tokenizer " + tokenizerPath + " has " + tokenizerVocabSize
+                + " tokens but the model only " + vocabSize);
+        }
+
+        return new ModelManifest(model.getAbsolutePath(), model.length(), model.lastModified(), hashPrefix,
+            maxSeqLength > 0 ? (int) maxSeqLength : getMaxSeqLengthFromName(model.getName()),
+            vocabSize > 0 ? (int) vocabSize : tokenizerVocabSize,
+            tokenizerPath, tokenizerVocabSize, maxSeqLength > 0, null);
+    }
+
+    /**
+     * Sequence length for models without metadata, which carry it in the file name.
+     */
+    static int getMaxSeqLengthFromName(String name) {
+        return name.contains("2048") ? 2048 : 128;
+    }
+
+    /**
+     * Hex SHA-256 of the first {@link #HASH_PREFIX_BYTES} of the file, which covers the program
+     * header of a .pte without reading its multi-GB weights.
+     */
+    static String hashPrefix(File file) throws IOException {
+        MessageDigest digest = HashUtils.newSha256();
+        byte[] buffer = new byte[8192];
+        int remaining = HASH_PREFIX_BYTES;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, Math.min(buffer.length, remaining))) > 0) {
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return HashUtils.toHex(digest.digest());
+    }
+
+    private ModelManifest withLastModified(long lastModified) {
+        return new ModelManifest(modelPath, size, lastModified, hashPrefix, maxSeqLength, vocabSize,
+            tokenizerPath, tokenizerVocabSize, fromMetadata, preferredBackend);
+    }
+
+    String toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("version", FORMAT_VERSION);
+        json.addProperty("model_path", modelPath);
+        json.addProperty("size", size);
+        json.addProperty("last_modified", lastModified);
+        json.addProperty("hash_prefix", hashPrefix);
+        json.addProperty("max_seq_length", maxSeqLength);
+        json.addProperty("vocab_size", vocabSize);
+        json.addProperty("tokenizer_path", tokenizerPath);
+        json.addProperty("tokenizer_vocab_size", tokenizerVocabSize);
+        json.addProperty("from_metadata", fromMetadata);
+        json.addProperty("preferred_backend", preferredBackend);
+        return json.toString();
+    }
+
+    /**
+     * @return The manifest, or null if it was written by another format version
+     */
+    static ModelManifest fromJson(String text) {
+        JsonObject json = JsonParser.parseString(text).getAsJsonObject();
+        if (json.get("version").getAsInt() != FORMAT_VERSION) {
+            return null;
+        }
+        return new ModelManifest(
+            json.get("model_path").getAsString(),
+            json.get("size").getAsLong(),
+            json.get("last_modified").getAsLong(),
+            json.get("hash_prefix").getAsString(),
+            json.get("max_seq_length").getAsInt(),
+            json.get("vocab_size").getAsInt(),
+            getNullableString(json, "tokenizer_path"),
+            json.get("tokenizer_vocab_size").getAsInt(),
+            json.get("from_metadata").getAsBoolean(),
+            getNullableString(json, "preferred_backend"));
+    }
+
+    private static String getNullableString(JsonObject json, String name) {
+        JsonElement element = json.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    public int getMaxSeqLength() {
+        return maxSeqLength;
+    }
+
+    /**
+     * Tokens reserved for the response, a quarter of the sequence length.
+     */
+    public int getMinOutputLength() {
+        return maxSeqLength / 4;
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    /**
+     * Tokenizer the model was paired with when the manifest was built.
+     */
+    public String getTokenizerPath() {
+        return tokenizerPath;
+    }
+
+    /**
+     * Backend recorded by the last calibration, or null if none has run for this file.
+     */
+    public String getPreferredBackend() {
+        return preferredBackend;
+    }
+
+    @Override
+    public String toString() {
+        return "ModelManifest{" + new File(modelPath).getName() + ", seq " + maxSeqLength
+            + (fromMetadata ? "" : " (from name)") + ", vocab " + vocabSize + ", backend " + preferredBackend + "}";
+    }
+
+    /**
+     * Reader for the constant methods of an ExecuTorch program. A .pte starts with the Program
+     * flatbuffer; each constant method is an execution plan without instructions whose outputs
+     * are Int values. Only the flatbuffer tables on the way to those values are touched, so the
+     * mapped weights are never paged in.
+     */
+    static final class ProgramMetadata {
+        private static final String FILE_IDENTIFIER_PREFIX = "ET";
+        private static final String EXTENDED_HEADER_MAGIC = "eh00";
+        // Bounds the mapping for files without an extended header, whose weights may be inline
+        private static final long MAX_PROGRAM_BYTES = 256L * 1024 * 1024;
+        // Members of the KernelTypes union in the program schema
+        private static final int TYPE_INT = 2;
+        private static final int TYPE_INT_LIST = 7;
+
+        static final ProgramMetadata EMPTY = new ProgramMetadata(null);
+
+        private final ByteBuffer buffer;
+
+        private ProgramMetadata(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        static ProgramMetadata read(File file) throws IOException {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r");
+                 FileChannel channel = in.getChannel()) {
+                long size = channel.size();
+                if (size < 8) {
+                    return EMPTY;
+                }
+                ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                byte[] bytes = header.array();
+                if (!new String(bytes, 4, 4, StandardCharsets.US_ASCII).startsWith(FILE_IDENTIFIER_PREFIX)) {
+                    return EMPTY;
+                }
+
+                // Only the program flatbuffer is mapped; the weights in the segments after it are not
+                long window = Math.min(size, MAX_PROGRAM_BYTES);
+                if (header.position() == 24
+                        && new String(bytes, 8, 4, StandardCharsets.US_ASCII).equals(EXTENDED_HEADER_MAGIC)) {
+                    long programSize = header.getLong(16);
+                    if (programSize > 0) {
+                        window = Math.min(window, programSize);
+                    }
+                }
+                return new ProgramMetadata(channel.map(FileChannel.MapMode.READ_ONLY, 0, window)
+                    .order(ByteOrder.LITTLE_ENDIAN));
+            }
+        }
+
+        /**
+         * @return The value of a method returning one integer, or -1 if the method is absent
+         */
+        long getInt(String method) {
+            long[] values = getLongs(method);
+            return values.length == 1 ? values[0] : -1;
+        }
+
+        private long[] getLongs(String method) {
+            if (buffer == null) {
+                return new long[0];
+            }
+            try {
+                int program = buffer.getInt(0);
+                int plans = field(program, 1);
+                if (plans == 0) {
+                    return new long[0];
+                }
+                for (int i = 0, count = buffer.getInt(plans); i < count; i++) {
+                    int plan = indirect(plans + 4 + 4 * i);
+                    int name = field(plan, 0);
+                    if (name != 0 && method.equals(string(name))) {
+                        return outputs(plan);
+                    }
+                }
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                Log.w(TAG, "Malformed program metadata", e);
+            }
+            return new long[0];
+        }
+
+        private long[] outputs(int plan) {
+            int values = field(plan, 2);
+            int outputs = field(plan, 4);
+            if (values == 0 || outputs == 0) {
+                return new long[0];
+            }
+            List<Long> result = new ArrayList<>();
+            for (int i = 0, count = buffer.getInt(outputs); i < count; i++) {
+                collect(values, buffer.getInt(outputs + 4 + 4 * i), result);
+            }
+            long[] longs = new long[result.size()];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = result.get(i);
+            }
+            return longs;
+        }
+
+        private void collect(int values, int index, List<Long> result) {
+            int value = indirect(values + 4 + 4 * index);
+            int typeField = fieldOffset(value, 0);
+            int val = field(value, 1);
+            if (typeField == 0 || val == 0) {
+                return;
+            }
+            int type = buffer.get(value + typeField) & 0xff;
+            if (type == TYPE_INT) {
+                int intVal = fieldOffset(val, 0);
+                result.add(intVal == 0 ? 0L : buffer.getLong(val + intVal));
+            } else if (type == TYPE_INT_LIST) {
+                // Items are indices of other values
+                int items = field(val, 0);
+                for (int i = 0, count = items == 0 ? 0 : buffer.getInt(items); i < count; i++) {
+                    collect(values, (int) buffer.getLong(items + 4 + 8 * i), result);
+                }
+            }
+        }
+
+        /**
+         * Offset of a field within its table, or 0 if the field is absent.
+         */
+        private int fieldOffset(int table, int field) {
+            int vtable = table - buffer.getInt(table);
+            int vtableSize = buffer.getShort(vtable) & 0xffff;
+            int entry = 4 + 2 * field;
+            return entry < vtableSize ? buffer.getShort(vtable + entry) & 0xffff : 0;
+        }
+
+        /**
+         * Position of the table, vector or string a reference field points to, or 0 if absent.
+         */
+        private int field(int table, int field) {
+            int offset = fieldOffset(table, field);
+            return offset == 0 ? 0 : indirect(table + offset);
+        }
+
+        private int indirect(int position) {
+            return position + buffer.getInt(position);
+        }
+
+        private String string(int position) {
+            byte[] bytes = new byte[buffer.getInt(position)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(position + 4 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -45,20 +45,6 @@ public class ModelUtils {
         return getModelNameFromPath(modelPath);
     }
 
-    /**
-     * Gets the model type based on the model file name.
-     * @param modelPath Full path to the model file
-     * @return ModelType enum value
-     */
-    public static com.executorch.ModelType getModelType(String modelPath) {
-        String modelName = getModelNameFromPath(modelPath).toLowerCase();
-        // Both Breeze and Llama models will use LLAMA_3_2 since BREEZE_2 is not available
-        if (modelName.contains("llama") || modelName.contains("breeze")) {
-            return com.executorch.ModelType.LLAMA_3_2;
-        }
-        return com.executorch.ModelType.LLAMA_3_2; // Default to LLAMA_3_2
-    }
-
     /**
      * Gets a user-friendly display name for the model.
      * @param modelPath Full path to the model file or config file
@@ -96,6 +82,40 @@ public class ModelUtils {
         }
     }
 
+    // Result of chipset detection, which cannot change while the process is running
+    private static volatile String detectedBackend = null;
+
+    /**
+     * Returns the backend chosen by the stored on-device calibration for the current model,
+     * falling back to chipset detection until a calibration has run.
+     * @return The preferred backend identifier ("mtk" or "cpu")
+     */
+    public static String getPreferredBackend(android.content.Context context) {
+        // If MTK backend is disabled via flag, always return CPU
+        if (!AppConstants.MTK_BACKEND_ENABLED) {
+            return "cpu";
+        }
+        if (MtkCircuitBreaker.getInstance(context).isOpen()) {
+            Log.i(TAG, "MTK circuit is open, using CPU backend");
+            return "cpu";
+        }
+
+        ModelManifest manifest = ModelManifest.getCurrent();
+        if (manifest != null && manifest.getPreferredBackend() != null) {
+            Log.i(TAG, "Using calibrated backend from " + manifest);
+            return manifest.getPreferredBackend();
+        }
+        BackendCalibration calibration = BackendCalibration.load(context, AppConstants.getModelPath(context));
+        if (calibration != null) {
+            Log.i(TAG, "Using calibrated backend: " + calibration);
+            if (manifest != null) {
+                ModelManifest.recordPreferredBackend(context, manifest.getModelPath(), calibration.getBackend());
+            }
+            return calibration.getBackend();
+        }
+        return getPreferredBackend();
+    }
+
     /**
      * Determines the preferred backend based on device hardware capabilities.
      * @return The preferred backend identifier ("mtk" or "cpu")
@@ -107,6 +127,15 @@ public class ModelUtils {
             return "cpu";
         }
 
+        String backend = detectedBackend;
+        if (backend == null) {
+            backend = detectBackend();
+            detectedBackend = backend;
+        }
+        return backend;
+    }
+
+    private static String detectBackend() {
         try {
             // Get the device's chipset information from multiple sources
             String hardware = android.os.Build.HARDWARE.toLowerCase();
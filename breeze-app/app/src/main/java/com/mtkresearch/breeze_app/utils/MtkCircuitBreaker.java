@@ -0,0 +1,257 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Circuit breaker around the native MTK runtime. Consecutive failed native calls open the
+ * circuit, after which the app goes straight to the CPU backend instead of repeating slow MTK
+ * initialization and cleanup on every launch. While open, MTK is probed in the background on an
+ * exponential backoff; a successful probe closes the circuit for the next load.
+ * <p>
+ * The state is persisted for the current OS build. A new build starts closed, since an update
+ * may have fixed the driver, and a reboot makes a background probe due at once.
+ */
+public class MtkCircuitBreaker {
+    private static final String TAG = "MtkCircuitBreaker";
+    private static final String PREFS_NAME = "mtk_circuit_breaker";
+    private static final String KEY_STATE = "state";
+    private static final int MAX_RECORDED_FAILURES = 8;
+    // Boot times estimated from the two clocks drift by a few ms; a reboot moves them by far more
+    private static final long BOOT_TIME_TOLERANCE_MS = 60000;
+
+    private static MtkCircuitBreaker instance;
+
+    /**
+     * One failed native call.
+     */
+    public static final class Failure {
+        private final String operation;
+        private final long durationMs;
+        private final long timeMs;
+
+        Failure(String operation, long durationMs, long timeMs) {
+            this.operation = operation;
+            this.durationMs = durationMs;
+            this.timeMs = timeMs;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * How long the call took before failing, which shows hangs that ended in a timeout.
+         */
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * Wall clock time of the failure.
+         */
+        public long getTimeMs() {
+            return timeMs;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " after " + durationMs + " ms";
+        }
+    }
+
+    private final int failureThreshold;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final String build;
+    private final long bootTime;
+    private final SharedPreferences prefs;
+
+    // Guarded by this
+    private boolean open = false;
+    private int consecutiveFailures = 0;
+    private int backoffLevel = 0;
+    private long nextProbeAt = 0;
+    private final Deque<Failure> failures = new ArrayDeque<>();
+
+    /**
+     * @param build OS build the state belongs to
+     * @param bootTime Wall clock time of the last boot
+     * @param prefs Where the state is persisted, or null to keep it in memory
+     */
+    MtkCircuitBreaker(int failureThreshold, long baseBackoffMs, long maxBackoffMs, String build, long bootTime,
+                      SharedPreferences prefs) {
+        this.failureThreshold = failureThreshold;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.build = build;
+        this.bootTime = bootTime;
+        this.prefs = prefs;
+    }
+
+    /**
+     * Returns the process-wide breaker, loading its persisted state on first use.
+     */
+    public static synchronized MtkCircuitBreaker getInstance(Context context) {
+        if (instance == null) {
+            SharedPreferences prefs = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            long now = System.currentTimeMillis();
+            instance = new MtkCircuitBreaker(AppConstants.MTK_CIRCUIT_FAILURE_THRESHOLD,
+                AppConstants.MTK_CIRCUIT_BASE_BACKOFF_MS, AppConstants.MTK_CIRCUIT_MAX_BACKOFF_MS,
+                Build.FINGERPRINT, now - SystemClock.elapsedRealtime(), prefs);
+            instance.restore(prefs.getString(KEY_STATE, null), now);
+            if (instance.isOpen()) {
+                Log.w(TAG, "MTK circuit is open: " + instance);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return true if MTK may be used, false if callers should go straight to the CPU backend
+     */
+    public synchronized boolean allowRequest() {
+        return !open;
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    public synchronized void recordSuccess() {
+        if (open || consecutiveFailures > 0) {
+            Log.i(TAG, "MTK call succeeded, closing circuit after " + consecutiveFailures + " failures");
+            open = false;
+            consecutiveFailures = 0;
+            backoffLevel = 0;
+            nextProbeAt = 0;
+            save();
+        }
+    }
+
+    /**
+     * Records a failed native call and opens the circuit once the failures reach the threshold.
+     */
+    public synchronized void recordFailure(String operation, long durationMs) {
+        recordFailure(operation, durationMs, System.currentTimeMillis());
+    }
+
+    synchronized void recordFailure(String operation, long durationMs, long now) {
+        Failure failure = new Failure(operation, durationMs, now);
+        failures.addLast(failure);
+        while (failures.size() > MAX_RECORDED_FAILURES) {
+            failures.removeFirst();
+        }
+        consecutiveFailures++;
+        if (open) {
+            // A failed probe: wait longer before the next one
+            scheduleProbe(now);
+        } else if (consecutiveFailures >= failureThreshold) {
+            open = true;
+            scheduleProbe(now);
+            Log.w(TAG, "Opening MTK circuit after " + consecutiveFailures + " consecutive failures: " + failures);
+        } else {
+            Log.w(TAG, "MTK " + failure + " (" + consecutiveFailures + "/" + failureThreshold + ")");
+        }
+        save();
+    }
+
+    private void scheduleProbe(long now) {
+        long backoff = Math.min(maxBackoffMs, baseBackoffMs << Math.min(backoffLevel, 30));
+        nextProbeAt = now + backoff;
+        backoffLevel++;
+    }
+
+    /**
+     * @return Milliseconds until the next background probe is due, 0 if due now, or -1 if the
+     *         circuit is closed
+     */
+    public synchronized long getProbeDelayMs() {
+        return getProbeDelayMs(System.currentTimeMillis());
+    }
+
+    synchronized long getProbeDelayMs(long now) {
+        return open ? Math.max(0, nextProbeAt - now) : -1;
+    }
+
+    public synchronized List<Failure> getRecentFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Restores state saved by {@link #encode()} if it was saved on the same build, making a probe
+     * due at once if the device has rebooted since.
+     */
+    synchronized void restore(String state, long now) {
+        if (state == null) {
+            return;
+        }
+        String[] lines = state.split("\n");
+        String[] header = lines[0].split(",");
+        try {
+            if (header.length != 5 || !build.equals(lines.length > 1 ? lines[1] : null)) {
+                return;
+            }
+            long savedBootTime = Long.parseLong(header[0]);
+            open = Boolean.parseBoolean(header[1]);
+            consecutiveFailures = Integer.parseInt(header[2]);
+            backoffLevel = Integer.parseInt(header[3]);
+            nextProbeAt = Long.parseLong(header[4]);
+            for (int i = 2; i < lines.length; i++) {
+                String[] fields = lines[i].split(",");
+                failures.addLast(new Failure(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            }
+            if (open && Math.abs(bootTime - savedBootTime) > BOOT_TIME_TOLERANCE_MS) {
+                nextProbeAt = now;
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Discarding malformed circuit state", e);
+            open = false;
+            consecutiveFailures = 0;
+            backoffLevel = 0;
+            nextProbeAt = 0;
+            failures.clear();
+        }
+    }
+
+    /**
+     * Serializes the state as a header line, the build fingerprint and one line per failure.
+     */
+    synchronized String encode() {
+        StringBuilder state = new StringBuilder()
+            .append(bootTime).append(',').append(open).append(',').append(consecutiveFailures).append(',')
+            .append(backoffLevel).append(',').append(nextProbeAt)
+            .append('\n').append(build);
+        for (Failure failure : failures) {
+            state.append('\n').append(failure.operation).append(',').append(failure.durationMs)
+                .append(',').append(failure.timeMs);
+        }
+        return state.toString();
+    }
+
+    private void save() {
+        if (prefs != null) {
+            prefs.edit().putString(KEY_STATE, encode()).apply();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "MtkCircuitBreaker{%s, %d consecutive failures, backoff level %d, %s}",
+            open ? "open" : "closed", consecutiveFailures, backoffLevel, failures);
+    }
+}
@@ -0,0 +1,196 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Two-tier cache of complete responses for deterministic, temperature 0 generation: an in-memory
+ * LRU in front of a size-bounded directory on disk. Keys hash the formatted prompt together with
+ * the model file identity, backend and sampling parameters. A response is kept as the tokens that
+ * were streamed, so a hit can be replayed at the original granularity. The disk tier is cleared
+ * when it was written for a different model file.
+ */
+public class ResponseCache {
+    private static final String TAG = "ResponseCache";
+    private static final String IDENTITY_FILE = "model_identity";
+    private static final String ENTRY_SUFFIX = ".tokens";
+    private static final int FORMAT_VERSION = 1;
+
+    private final File directory;
+    private final String modelIdentity;
+    private final DiskLruDirectory disk;
+    private final Map<String, List<String>> memory;
+
+    private int memoryHits = 0;
+    private int diskHits = 0;
+    private int misses = 0;
+    private int stores = 0;
+
+    /**
+     * @param modelIdentity Identity of the model file, see {@link #modelIdentity(String)}
+     */
+    public ResponseCache(File directory, String modelIdentity, int maxMemoryEntries, long maxDiskBytes) {
+        this.directory = directory;
+        this.modelIdentity = modelIdentity;
+        this.disk = new DiskLruDirectory(directory, ENTRY_SUFFIX, maxDiskBytes);
+        this.memory = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        openDirectory();
+    }
+
+    /**
+     * Identifies a model file by path, size and modification time, so a replaced file gets
+     * a new identity.
+     */
+    public static String modelIdentity(String modelPath) {
+        if (modelPath == null) {
+            return "none";
+        }
+        File model = new File(modelPath);
+        return model.getAbsolutePath() + "|" + model.length() + "|" + model.lastModified();
+    }
+
+    public String getModelIdentity() {
+        return modelIdentity;
+    }
+
+    /**
+     * Builds the cache key of a generation.
+     */
+    public String key(String formattedPrompt, String backend, float temperature, int outputTokens) {
+        return HashUtils.sha256Hex(String.format(Locale.US, "%d\n%s\n%s\n%.4f\n%d\n%s", FORMAT_VERSION, modelIdentity,
+            backend, temperature, outputTokens, formattedPrompt));
+    }
+
+    /**
+     * Returns the cached tokens, or null on a miss. Disk hits are promoted to memory.
+     */
+    public synchronized List<String> get(String key) {
+        List<String> tokens = memory.get(key);
+        if (tokens != null) {
+            memoryHits++;
+            return tokens;
+        }
+
+        tokens = disk.read(key, ResponseCache::readEntry);
+        if (tokens != null) {
+            memory.put(key, tokens);
+            diskHits++;
+            return tokens;
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String key, List<String> tokens) {
+        List<String> copy = Collections.unmodifiableList(new ArrayList<>(tokens));
+        memory.put(key, copy);
+        stores++;
+        disk.write(key, file -> writeEntry(file, copy));
+    }
+
+    /**
+     * Drops every entry from both tiers.
+     */
+    public synchronized void clear() {
+        memory.clear();
+        disk.clear();
+    }
+
+    public synchronized int getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized int getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getStores() {
+        return stores;
+    }
+
+    public synchronized long getDiskBytes() {
+        return disk.getBytes();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "ResponseCache{memoryHits=%d, diskHits=%d, misses=%d, stores=%d, disk=%d KB}",
+            memoryHits, diskHits, misses, stores, disk.getBytes() >> 10);
+    }
+
+    /**
+     * Creates the directory and clears it if it was written for a different model file.
+     */
+    private void openDirectory() {
+        if (!disk.open()) {
+            return;
+        }
+        File identityFile = new File(directory, IDENTITY_FILE);
+        String storedIdentity = null;
+        if (identityFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(identityFile))) {
+                storedIdentity = in.readUTF();
+            } catch (IOException e) {
+                Log.w(TAG, "Unreadable model identity, clearing cache", e);
+            }
+        }
+        if (!modelIdentity.equals(storedIdentity)) {
+            if (storedIdentity != null) {
+                Log.i(TAG, "Model file changed, clearing response cache");
+            }
+            clear();
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(identityFile))) {
+                out.writeUTF(modelIdentity);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write model identity", e);
+            }
+        }
+    }
+
+    private static List<String> readEntry(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown entry format");
+            }
+            int count = in.readInt();
+            List<String> tokens = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                tokens.add(in.readUTF());
+            }
+            return Collections.unmodifiableList(tokens);
+        }
+    }
+
+    private static void writeEntry(File file, List<String> tokens) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(tokens.size());
+            for (String token : tokens) {
+                out.writeUTF(token);
+            }
+        }
+    }
+}
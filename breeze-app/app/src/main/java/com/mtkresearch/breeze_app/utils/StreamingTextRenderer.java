@@ -0,0 +1,88 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.view.Choreographer;
+
+/**
+ * Coalesces streamed tokens and hands them to the UI at most once per display frame.
+ * Tokens may be appended from any thread; the listener always runs on the main thread.
+ * Must be constructed on the main thread.
+ */
+public class StreamingTextRenderer implements Choreographer.FrameCallback {
+
+    public interface Listener {
+        /**
+         * Called on the main thread with all text received since the previous frame.
+         * @param isFirst True for the first flush of the stream
+         */
+        void onTextFlushed(String delta, boolean isFirst);
+    }
+
+    private final Choreographer choreographer;
+    private final Listener listener;
+    private final Object lock = new Object();
+    private final StringBuilder pending = new StringBuilder();
+    private boolean frameScheduled = false;
+    private boolean finished = false;
+    private boolean hasFlushed = false;  // Main thread only
+
+    public StreamingTextRenderer(Listener listener) {
+        this.choreographer = Choreographer.getInstance();
+        this.listener = listener;
+    }
+
+    /**
+     * Buffers a token and schedules a flush on the next frame if none is pending.
+     */
+    public void append(String token) {
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            pending.append(token);
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        String delta;
+        synchronized (lock) {
+            frameScheduled = false;
+            if (finished || pending.length() == 0) {
+                return;
+            }
+            delta = pending.toString();
+            pending.setLength(0);
+        }
+        deliver(delta);
+    }
+
+    /**
+     * Flushes any pending text immediately and ignores later tokens. Must be called on the main thread.
+     */
+    public void finish() {
+        String delta;
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            delta = pending.toString();
+            pending.setLength(0);
+        }
+        choreographer.removeFrameCallback(this);
+        if (!delta.isEmpty()) {
+            deliver(delta);
+        }
+    }
+
+    private void deliver(String delta) {
+        boolean isFirst = !hasFlushed;
+        hasFlushed = true;
+        listener.onTextFlushed(delta, isFirst);
+    }
+}
@@ -0,0 +1,127 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class BatchGenerationTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readsItemsWithDefaults() throws IOException {
+        File input = write("in.jsonl", "{\"id\":\"a\",\"prompt\":\"Hi\",\"max_tokens\":32}\n\n"
+            + "{\"prompt\":\"<|begin_of_text|>Hey\",\"formatted\":true}\n");
+        List<BatchGeneration.Item> items = BatchGeneration.readItems(input);
+        assertEquals(2, items.size());
+        assertEquals("a", items.get(0).id);
+        assertEquals(32, items.get(0).maxTokens);
+        assertFalse(items.get(0).formatted);
+        assertEquals("3", items.get(1).id);
+        assertEquals(1, items.get(1).index);
+        assertTrue(items.get(1).formatted);
+    }
+
+    @Test
+    public void rejectsDuplicateIds() throws IOException {
+        File input = write("in.jsonl", "{\"id\":\"a\",\"prompt\":\"1\"}\n{\"id\":\"a\",\"prompt\":\"2\"}\n");
+        boolean rejected = false;
+        try {
+            BatchGeneration.readItems(input);
+        } catch (IOException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+
+    @Test
+    public void writesResultsAndErrors() throws IOException {
+        File input = write("in.jsonl", "{\"id\":\"a\",\"prompt\":\"ok\"}\n{\"id\":\"b\",\"prompt\":\"fail\"}\n");
+        File output = new File(folder.getRoot(), "out.jsonl");
+        BatchGeneration.Summary summary = BatchGeneration.run(input, output, item -> {
+            if (item.prompt.equals("fail")) {
+                throw new IllegalStateException("boom");
+            }
+            return new BatchGeneration.Result("response to " + item.prompt, null);
+        }, null, () -> false);
+
+        assertEquals(1, summary.getSucceeded());
+        assertEquals(1, summary.getFailed());
+        List<String> lines = lines(output);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"status\":\"ok\""));
+        assertTrue(lines.get(0).contains("response to ok"));
+        assertTrue(lines.get(1).contains("\"error\":\"boom\""));
+    }
+
+    @Test
+    public void resumesAfterPartialLineAndRetriesFailures() throws IOException {
+        File input = write("in.jsonl", "{\"id\":\"a\",\"prompt\":\"1\"}\n{\"id\":\"b\",\"prompt\":\"2\"}\n"
+            + "{\"id\":\"c\",\"prompt\":\"3\"}\n");
+        File output = write("out.jsonl", "{\"id\":\"a\",\"status\":\"ok\",\"response\":\"x\"}\n"
+            + "{\"id\":\"b\",\"status\":\"error\",\"error\":\"boom\"}\n{\"id\":\"c\",\"stat");
+
+        Set<String> done = BatchGeneration.readCheckpoint(output);
+        assertEquals(Set.of("a"), done);
+        assertEquals(2, lines(output).size());
+
+        List<String> ran = new ArrayList<>();
+        BatchGeneration.Summary summary = BatchGeneration.run(input, output, item -> {
+            ran.add(item.id);
+            return new BatchGeneration.Result("r", null);
+        }, null, () -> false);
+        assertEquals(List.of("b", "c"), ran);
+        assertEquals(1, summary.getSkipped());
+        assertEquals(2, summary.getSucceeded());
+        assertEquals(4, lines(output).size());
+        assertEquals(Set.of("a", "b", "c"), BatchGeneration.readCheckpoint(output));
+    }
+
+    @Test
+    public void corruptLineKeepsTheResultsAfterIt() throws IOException {
+        File output = write("out.jsonl", "{\"id\":\"a\",\"status\":\"ok\",\"response\":\"x\"}\n"
+            + "{\"id\":\"b\",\"sta\n"
+            + "{\"id\":\"c\",\"status\":\"ok\",\"response\":\"z\"}\n");
+
+        assertEquals(Set.of("a", "c"), BatchGeneration.readCheckpoint(output));
+        // Only a partial last line is ever truncated
+        assertEquals(3, lines(output).size());
+    }
+
+    @Test
+    public void cancellationStopsWithoutRecordingTheCurrentItem() throws IOException {
+        File input = write("in.jsonl", "{\"id\":\"a\",\"prompt\":\"1\"}\n{\"id\":\"b\",\"prompt\":\"2\"}\n");
+        File output = new File(folder.getRoot(), "out.jsonl");
+        boolean[] cancelled = {false};
+        BatchGeneration.Summary summary = BatchGeneration.run(input, output, item -> {
+            cancelled[0] = true;
+            throw new IllegalStateException("cancelled");
+        }, null, () -> cancelled[0]);
+
+        assertEquals(0, summary.getFailed());
+        assertEquals(2, summary.getRemaining());
+        assertEquals(0, lines(output).size());
+    }
+}
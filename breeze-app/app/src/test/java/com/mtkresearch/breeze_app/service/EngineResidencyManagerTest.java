@@ -0,0 +1,126 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+public class EngineResidencyManagerTest {
+    private static final long MB = 1024 * 1024;
+
+    private static class FakeResident implements EngineResidencyManager.Resident {
+        final String name;
+        final long bytes;
+        EngineResidencyManager manager;
+        boolean busy = false;
+        int evictions = 0;
+
+        FakeResident(String name, long bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getResidentName() {
+            return name;
+        }
+
+        @Override
+        public long getResidentBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean evict() {
+            if (busy) {
+                return false;
+            }
+            evictions++;
+            manager.onUnloaded(this);
+            return true;
+        }
+    }
+
+    private static FakeResident load(EngineResidencyManager manager, String name, long bytes) {
+        FakeResident resident = new FakeResident(name, bytes);
+        resident.manager = manager;
+        manager.onLoaded(resident);
+        return resident;
+    }
+
+    private static EngineResidencyManager newManager(long budgetBytes) {
+        return new EngineResidencyManager(budgetBytes, Runnable::run);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenOverBudget() {
+        EngineResidencyManager manager = newManager(1000 * MB);
+        FakeResident llm = load(manager, "llm", 600 * MB);
+        FakeResident tts = load(manager, "tts", 150 * MB);
+        manager.touch(llm);
+        FakeResident vlm = load(manager, "vlm", 400 * MB);
+
+        assertEquals(1, tts.evictions);
+        assertEquals(0, llm.evictions);
+        assertTrue(manager.isResident(vlm));
+        assertEquals(1000 * MB, manager.getResidentBytes());
+    }
+
+    @Test
+    public void newlyLoadedEngineIsNeverEvicted() {
+        EngineResidencyManager manager = newManager(500 * MB);
+        FakeResident llm = load(manager, "llm", 400 * MB);
+        FakeResident vlm = load(manager, "vlm", 800 * MB);
+
+        assertEquals(1, llm.evictions);
+        assertEquals(0, vlm.evictions);
+        assertTrue(manager.isResident(vlm));
+    }
+
+    @Test
+    public void busyEngineIsSkipped() {
+        EngineResidencyManager manager = newManager(1000 * MB);
+        FakeResident llm = load(manager, "llm", 600 * MB);
+        llm.busy = true;
+        FakeResident asr = load(manager, "asr", 200 * MB);
+        load(manager, "vlm", 400 * MB);
+
+        assertEquals(0, llm.evictions);
+        assertEquals(1, asr.evictions);
+        assertEquals(1, manager.getEvictionCount());
+    }
+
+    @Test
+    public void trimMemoryKeepsMostRecentUntilComplete() {
+        EngineResidencyManager manager = newManager(Long.MAX_VALUE / 4);
+        FakeResident tts = load(manager, "tts", 150 * MB);
+        FakeResident llm = load(manager, "llm", 600 * MB);
+
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(750 * MB, manager.getResidentBytes());
+
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(1, tts.evictions);
+        assertTrue(manager.isResident(llm));
+
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertFalse(manager.isResident(llm));
+        assertEquals(0, manager.getResidentBytes());
+    }
+
+    @Test
+    public void lowMemoryEvictsIdleEngines() {
+        EngineResidencyManager manager = newManager(Long.MAX_VALUE);
+        FakeResident llm = load(manager, "llm", 600 * MB);
+        FakeResident tts = load(manager, "tts", 150 * MB);
+        tts.busy = true;
+
+        manager.onLowMemory();
+
+        assertEquals(1, llm.evictions);
+        assertTrue(manager.isResident(tts));
+    }
+}
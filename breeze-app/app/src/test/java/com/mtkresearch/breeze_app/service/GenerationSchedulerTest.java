@@ -0,0 +1,181 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class GenerationSchedulerTest {
+    private static final long TIMEOUT_S = 5;
+
+    // Counted down by the scheduler's interrupter, like a backend stopping its generation
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicInteger interrupts = new AtomicInteger();
+    private final GenerationScheduler scheduler = new GenerationScheduler(() -> {
+        interrupts.incrementAndGet();
+        stopped.countDown();
+    });
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    private GenerationRequest submit(GenerationRequest.Priority priority, String name) {
+        return scheduler.submit(priority, null, request -> {
+            order.add(name);
+            request.deliverToken(name);
+        });
+    }
+
+    /**
+     * Submits an interactive request that runs until the returned gate is opened.
+     */
+    private CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        scheduler.submit(GenerationRequest.Priority.INTERACTIVE, null, request -> {
+            started.countDown();
+            gate.await(TIMEOUT_S, TimeUnit.SECONDS);
+        });
+        await(started);
+        return gate;
+    }
+
+    @Test
+    public void runsInteractiveBeforeBackgroundAndFifoWithinEach() throws Exception {
+        CountDownLatch gate = block();
+        List<GenerationRequest> requests = Arrays.asList(
+            submit(GenerationRequest.Priority.BACKGROUND, "b1"),
+            submit(GenerationRequest.Priority.INTERACTIVE, "i1"),
+            submit(GenerationRequest.Priority.BACKGROUND, "b2"),
+            submit(GenerationRequest.Priority.INTERACTIVE, "i2"));
+        assertEquals(4, scheduler.getQueuedCount());
+        gate.countDown();
+
+        for (GenerationRequest request : requests) {
+            request.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("i1", "i2", "b1", "b2"), order);
+        // Interactive work never preempts interactive work
+        assertEquals(0, interrupts.get());
+    }
+
+    @Test
+    public void interactiveRequestPreemptsAndRestartsBackground() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        GenerationRequest background = scheduler.submit(GenerationRequest.Priority.BACKGROUND, null, request -> {
+            if (runs.incrementAndGet() == 1) {
+                request.deliverToken("partial ");
+                started.countDown();
+                stopped.await(TIMEOUT_S, TimeUnit.SECONDS);
+                return;
+            }
+            order.add("background");
+            request.deliverToken("complete");
+        });
+        await(started);
+
+        GenerationRequest interactive = submit(GenerationRequest.Priority.INTERACTIVE, "interactive");
+        assertEquals("interactive", interactive.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        // The restarted run starts over instead of appending to the preempted output
+        assertEquals("complete", background.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("interactive", "background"), order);
+        assertEquals(2, runs.get());
+        assertEquals(1, background.getPreemptionCount());
+        assertEquals(1, interrupts.get());
+    }
+
+    @Test
+    public void cancelledQueuedRequestNeverRuns() throws Exception {
+        CountDownLatch gate = block();
+        GenerationRequest queued = submit(GenerationRequest.Priority.INTERACTIVE, "queued");
+        GenerationRequest next = submit(GenerationRequest.Priority.INTERACTIVE, "next");
+
+        assertTrue(queued.cancel());
+        assertTrue(queued.isCancelled());
+        assertEquals(GenerationRequest.STOPPED_RESPONSE, queued.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(0, interrupts.get());
+
+        gate.countDown();
+        next.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("next"), order);
+        assertFalse(queued.cancel());
+    }
+
+    @Test
+    public void cancelledRunningRequestStopsWithItsPartialResponse() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        GenerationRequest running = scheduler.submit(GenerationRequest.Priority.INTERACTIVE, null, request -> {
+            request.deliverToken("partial");
+            started.countDown();
+            stopped.await(TIMEOUT_S, TimeUnit.SECONDS);
+            // Output after the stop is dropped
+            request.deliverToken(" more");
+        });
+        await(started);
+
+        assertTrue(running.cancel());
+        assertEquals("partial", running.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(1, interrupts.get());
+        assertTrue(scheduler.awaitIdle(TimeUnit.SECONDS.toMillis(TIMEOUT_S)));
+        assertFalse(running.cancel());
+
+        // The scheduler keeps serving after a cancellation
+        assertEquals("after", submit(GenerationRequest.Priority.INTERACTIVE, "after")
+            .getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void deferredRequestFreesTheWorkerUntilItFinishes() throws Exception {
+        AtomicReference<GenerationRequest> handedOff = new AtomicReference<>();
+        GenerationRequest deferred = scheduler.submit(GenerationRequest.Priority.INTERACTIVE, null, request -> {
+            request.deliverToken("first ");
+            request.deferCompletion();
+            handedOff.set(request);
+        });
+
+        // The next request runs while the deferred one is still delivering
+        assertEquals("next", submit(GenerationRequest.Priority.INTERACTIVE, "next")
+            .getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        assertFalse(deferred.isDone());
+
+        handedOff.get().deliverToken("second");
+        handedOff.get().finishDeferred();
+        assertEquals("first second", deferred.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(0, interrupts.get());
+    }
+
+    @Test
+    public void cancelAllStopsDeferredRequests() throws Exception {
+        CountDownLatch handedOff = new CountDownLatch(1);
+        GenerationRequest deferred = scheduler.submit(GenerationRequest.Priority.BACKGROUND, null, request -> {
+            request.deliverToken("partial");
+            request.deferCompletion();
+            handedOff.countDown();
+        });
+        await(handedOff);
+        assertTrue(scheduler.awaitIdle(TimeUnit.SECONDS.toMillis(TIMEOUT_S)));
+
+        scheduler.cancelAll(null);
+        assertEquals("partial", deferred.getFuture().get(TIMEOUT_S, TimeUnit.SECONDS));
+        assertTrue(deferred.isCancelled());
+    }
+}
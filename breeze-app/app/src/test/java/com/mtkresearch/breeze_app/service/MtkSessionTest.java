@@ -0,0 +1,117 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MtkSessionTest {
+
+    private static class FakeRuntime implements MtkSession.Runtime {
+        final List<String> calls = new ArrayList<>();
+        boolean failSwap = false;
+        long swapMs = 0;
+        long now = 0;
+
+        @Override
+        public boolean reset() {
+            calls.add("reset");
+            return true;
+        }
+
+        @Override
+        public boolean swapModel(int tokenSize) {
+            calls.add("swap " + tokenSize);
+            now += swapMs;
+            return !failSwap;
+        }
+    }
+
+    private final FakeRuntime runtime = new FakeRuntime();
+    private final MtkSession session = new MtkSession(runtime, 128, 1, 16, () -> runtime.now);
+
+    @Test
+    public void firstPromptAfterLoadNeedsNoNativeCalls() {
+        session.onLoaded();
+        assertTrue(session.prepare(300));
+        assertTrue(runtime.calls.isEmpty());
+    }
+
+    @Test
+    public void turnIsResetAndSwappedOnlyBeforeTheNextPrompt() {
+        session.onLoaded();
+        session.prepare(300);
+        session.onGenerated(0);
+        assertTrue(runtime.calls.isEmpty());
+
+        assertTrue(session.prepare(300));
+        assertEquals(Arrays.asList("reset", "swap 128"), runtime.calls);
+        assertEquals(128, session.getLoadedTokenSize());
+    }
+
+    @Test
+    public void shortPromptStaysOnTheGenerationVariant() {
+        session.onLoaded();
+        session.onGenerated(0);
+        assertTrue(session.prepare(5));
+        assertEquals(Arrays.asList("reset"), runtime.calls);
+        assertEquals(1, session.getLoadedTokenSize());
+
+        // Unknown length is treated as long
+        session.onGenerated(0);
+        session.prepare(-1);
+        assertEquals(Arrays.asList("reset", "reset", "swap 128"), runtime.calls);
+    }
+
+    @Test
+    public void measuredCostsDecideTheSwap() {
+        session.onLoaded();
+        session.onGenerated(0);
+        runtime.swapMs = 400;
+        session.prepare(300);
+        assertEquals(16, session.getSwapBreakEvenTokens());
+
+        // A 400 ms swap there and back costs as much as prefilling 400 tokens at 2 ms each
+        session.onGenerated(2);
+        assertEquals(400, session.getSwapBreakEvenTokens());
+        runtime.calls.clear();
+        assertTrue(session.prepare(300));
+        assertEquals(Arrays.asList("reset"), runtime.calls);
+        assertEquals(1, session.getLoadedTokenSize());
+
+        session.onGenerated(2);
+        session.prepare(500);
+        assertEquals(Arrays.asList("reset", "reset", "swap 128"), runtime.calls);
+    }
+
+    @Test
+    public void resetThatStoppedGenerationIsNotRepeated() {
+        session.onLoaded();
+        session.onGenerated(0);
+        session.onExternalReset();
+        session.prepare(300);
+        assertEquals(Arrays.asList("swap 128"), runtime.calls);
+        assertEquals(1, session.getSwapCount());
+        assertEquals(0, session.getResetCount());
+    }
+
+    @Test
+    public void failuresForgetTheLoadedVariant() {
+        session.onLoaded();
+        session.onGenerated(0);
+        runtime.failSwap = true;
+        assertFalse(session.prepare(300));
+        assertEquals(MtkSession.UNKNOWN_TOKEN_SIZE, session.getLoadedTokenSize());
+
+        runtime.failSwap = false;
+        runtime.calls.clear();
+        session.onFailed();
+        assertTrue(session.prepare(5));
+        assertEquals(Arrays.asList("reset", "swap 128"), runtime.calls);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.mtkresearch.breeze_app.utils.AppConstants;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class SafetyGuardTest {
+
+    @Test
+    public void parsesSafeVerdict() {
+        SafetyGuard.Verdict verdict = SafetyGuard.Verdict.parse("\n\nsafe");
+        assertTrue(verdict.isSafe());
+    }
+
+    @Test
+    public void parsesUnsafeVerdictWithCategories() {
+        SafetyGuard.Verdict verdict = SafetyGuard.Verdict.parse("\n\nunsafe\nS1, S10");
+        assertFalse(verdict.isSafe());
+        assertEquals("S1,S10", verdict.getCategories());
+    }
+
+    @Test
+    public void rejectsUnexpectedOutput() {
+        assertNull(SafetyGuard.Verdict.parse("I cannot assess this"));
+    }
+
+    @Test
+    public void outputIsHeldUntilSafeVerdict() {
+        List<String> delivered = new ArrayList<>();
+        GenerationRequest request = newRequest(delivered);
+        CompletableFuture<SafetyGuard.Verdict> verdict = new CompletableFuture<>();
+        request.setSafetyGate(verdict);
+
+        request.deliverToken("Hello");
+        assertTrue(delivered.isEmpty());
+
+        verdict.complete(new SafetyGuard.Verdict(true, ""));
+        request.deliverToken(" world");
+        assertEquals(List.of("Hello world"), delivered);
+
+        assertTrue(request.complete(request.getResponse()));
+        assertEquals("Hello world", request.getFuture().join());
+    }
+
+    @Test
+    public void unsafeVerdictReplacesResponse() {
+        List<String> delivered = new ArrayList<>();
+        GenerationRequest request = newRequest(delivered);
+        request.setSafetyGate(CompletableFuture.completedFuture(new SafetyGuard.Verdict(false, "S2")));
+
+        request.deliverToken("Step one");
+
+        assertFalse(request.complete(request.getResponse()));
+        assertEquals(List.of(AppConstants.LLM_UNSAFE_PROMPT_RESPONSE), delivered);
+        assertEquals(AppConstants.LLM_UNSAFE_PROMPT_RESPONSE, request.getFuture().join());
+    }
+
+    @Test
+    public void failedCheckReleasesOutputAtCompletion() {
+        List<String> delivered = new ArrayList<>();
+        GenerationRequest request = newRequest(delivered);
+        CompletableFuture<SafetyGuard.Verdict> verdict = new CompletableFuture<>();
+        request.setSafetyGate(verdict);
+
+        request.deliverToken("Hi");
+        verdict.completeExceptionally(new IllegalStateException("guard not loaded"));
+
+        assertTrue(request.complete(request.getResponse()));
+        assertEquals(List.of("Hi"), delivered);
+    }
+
+    private static GenerationRequest newRequest(List<String> delivered) {
+        GenerationScheduler scheduler = new GenerationScheduler(() -> { });
+        return new GenerationRequest(scheduler, GenerationRequest.Priority.INTERACTIVE, delivered::add, request -> { });
+    }
+}
@@ -0,0 +1,120 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.executorch.ModelType;
+import com.mtkresearch.breeze_app.utils.StopSequenceMatcher;
+
+import org.junit.Test;
+import org.pytorch.executorch.LlamaCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SyntheticBackendTest {
+    private static final String PROMPT = "你好";
+
+    private static class Collector implements LlamaCallback {
+        final List<String> tokens = new ArrayList<>();
+        float tps = 0;
+
+        @Override
+        public void onResult(String token) {
+            tokens.add(token);
+        }
+
+        @Override
+        public void onStats(float tps) {
+            this.tps = tps;
+        }
+
+        String text() {
+            StopSequenceMatcher matcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+            StringBuilder text = new StringBuilder();
+            for (String token : tokens) {
+                text.append(matcher.feed(token));
+            }
+            assertTrue(matcher.isMatched());
+            return text.toString();
+        }
+    }
+
+    private static SyntheticBackend backend(boolean splitCharacters, boolean splitStopMarkers) {
+        return new SyntheticBackend(new SyntheticBackend.Config(200, 0.5f, 0, splitCharacters, splitStopMarkers, 1));
+    }
+
+    @Test
+    public void splitsAreInvisibleAfterStopMatching() {
+        Collector plain = new Collector();
+        backend(false, false).generate(PROMPT, 1000, plain);
+        Collector split = new Collector();
+        backend(true, true).generate(PROMPT, 1000, split);
+
+        assertEquals(plain.text(), split.text());
+        assertTrue(plain.tokens.contains("<|eot_id|>"));
+        assertFalse(split.tokens.contains("<|eot_id|>"));
+        boolean endsOnHighSurrogate = false;
+        for (String token : split.tokens) {
+            endsOnHighSurrogate |= Character.isHighSurrogate(token.charAt(token.length() - 1));
+        }
+        assertTrue(endsOnHighSurrogate);
+    }
+
+    /**
+     * Clock that advances by every requested wait instead of sleeping.
+     */
+    private static class FakeClock implements SyntheticBackend.Clock {
+        final List<Long> waits = new ArrayList<>();
+        long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void await(Object lock, long nanos) {
+            waits.add(nanos);
+            now += nanos;
+        }
+    }
+
+    @Test
+    public void emitsAtConfiguredRate() {
+        FakeClock clock = new FakeClock();
+        SyntheticBackend backend = new SyntheticBackend(new SyntheticBackend.Config(100, 0, 50, false, false, 1), clock);
+        Collector collector = new Collector();
+        backend.generate(PROMPT, 21, collector);
+
+        assertEquals(21, collector.tokens.size());
+        // 50 ms prefill, then 20 gaps of 10 ms
+        assertEquals(21, clock.waits.size());
+        assertEquals(Long.valueOf(50_000_000L), clock.waits.get(0));
+        for (long wait : clock.waits.subList(1, clock.waits.size())) {
+            assertEquals(10_000_000L, wait);
+        }
+        assertEquals(100f, collector.tps, 0.01f);
+    }
+
+    @Test
+    public void stopEndsGenerationAndIsClearedByTheNextOne() {
+        SyntheticBackend backend = new SyntheticBackend(new SyntheticBackend.Config(10, 0, 0, false, false, 1));
+        Collector collector = new Collector() {
+            @Override
+            public void onResult(String token) {
+                super.onResult(token);
+                backend.stop();
+            }
+        };
+        backend.generate(PROMPT, 1000, collector);
+        assertEquals(1, collector.tokens.size());
+
+        // Like the runner, a stop issued while idle does not affect the next generation
+        backend.stop();
+        Collector next = new Collector();
+        backend.generate(PROMPT, 2, next);
+        assertEquals(2, next.tokens.size());
+    }
+}
@@ -0,0 +1,207 @@
+package com.mtkresearch.breeze_app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class TokenStreamTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // Runs deliveries one after another, so a task submitted last runs after every delivery
+    private final ExecutorService serial = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        serial.shutdownNow();
+    }
+
+    /**
+     * Waits for every delivery scheduled on the serial executor so far.
+     */
+    private void awaitSerialDeliveries() throws Exception {
+        serial.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static class Recorder implements Flow.Subscriber<TokenStream.Token> {
+        final List<TokenStream.Token> tokens = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final long initialDemand;
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        Recorder(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(TokenStream.Token token) {
+            tokens.add(token);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+
+        String text() {
+            StringBuilder text = new StringBuilder();
+            for (TokenStream.Token token : tokens) {
+                text.append(token.getText());
+            }
+            return text.toString();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(terminated.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void slowSubscriberDoesNotBlockProducerOrOthers() throws InterruptedException {
+        TokenStream stream = new TokenStream(executor, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(TokenStream.Token token) {
+                super.onNext(token);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Recorder fast = new Recorder(Long.MAX_VALUE);
+        stream.subscribe(slow);
+        stream.subscribe(fast);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            stream.emit("字" + i);
+            expected.append("字").append(i);
+        }
+        stream.terminate(null);
+        fast.await();
+        assertEquals(expected.toString(), fast.text());
+
+        release.countDown();
+        slow.await();
+        assertEquals(expected.toString(), slow.text());
+        // One token in flight plus at most a full buffer of merged ones
+        assertTrue(slow.tokens.size() <= 5);
+        int count = 0;
+        for (TokenStream.Token token : slow.tokens) {
+            assertEquals(count, token.getIndex());
+            count += token.getCount();
+        }
+        assertEquals(1000, count);
+    }
+
+    @Test
+    public void deliversOnlyRequestedTokens() throws Exception {
+        TokenStream stream = new TokenStream(serial, 16);
+        Recorder recorder = new Recorder(2);
+        stream.subscribe(recorder);
+        for (int i = 0; i < 5; i++) {
+            stream.emit("t" + i);
+        }
+        stream.terminate(null);
+        awaitSerialDeliveries();
+        assertEquals(2, recorder.tokens.size());
+        assertEquals(1, recorder.terminated.getCount());
+
+        recorder.subscription.request(10);
+        recorder.await();
+        assertEquals("t0t1t2t3t4", recorder.text());
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void lateSubscriberReceivesTextSoFar() throws InterruptedException {
+        TokenStream stream = new TokenStream(executor, 16);
+        stream.emit("你");
+        stream.emit("好");
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        stream.subscribe(recorder);
+        stream.emit("嗎");
+        stream.terminate(null);
+        recorder.await();
+
+        assertEquals(2, recorder.tokens.size());
+        assertEquals("你好", recorder.tokens.get(0).getText());
+        assertEquals(2, recorder.tokens.get(0).getCount());
+        assertEquals("你好嗎", recorder.text());
+
+        Recorder afterEnd = new Recorder(Long.MAX_VALUE);
+        stream.subscribe(afterEnd);
+        afterEnd.await();
+        assertEquals("你好嗎", afterEnd.text());
+    }
+
+    @Test
+    public void failureFollowsBufferedTokens() throws InterruptedException {
+        TokenStream stream = new TokenStream(executor, 16);
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        stream.subscribe(recorder);
+        stream.emit("a");
+        IllegalStateException failure = new IllegalStateException("boom");
+        stream.terminate(failure);
+        recorder.await();
+        assertEquals("a", recorder.text());
+        assertEquals(failure, recorder.error);
+    }
+
+    @Test
+    public void nonPositiveRequestFailsSubscription() throws InterruptedException {
+        TokenStream stream = new TokenStream(executor, 16);
+        Recorder recorder = new Recorder(0);
+        stream.subscribe(recorder);
+        recorder.await();
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void cancelledSubscriptionReceivesNothingMore() throws Exception {
+        TokenStream stream = new TokenStream(serial, 16);
+        CountDownLatch received = new CountDownLatch(1);
+        Recorder recorder = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(TokenStream.Token token) {
+                super.onNext(token);
+                received.countDown();
+            }
+        };
+        stream.subscribe(recorder);
+        stream.emit("a");
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        recorder.subscription.cancel();
+        stream.emit("b");
+        stream.terminate(null);
+        awaitSerialDeliveries();
+        assertEquals("a", recorder.text());
+        assertEquals(1, recorder.terminated.getCount());
+    }
+}
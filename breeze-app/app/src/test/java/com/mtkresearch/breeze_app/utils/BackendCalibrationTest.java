@@ -0,0 +1,46 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BackendCalibrationTest {
+
+    @Test
+    public void fasterBackendWins() {
+        BackendCalibration calibration = BackendCalibration.fromMeasurements(Arrays.asList(
+            new BackendCalibration.Measurement("mtk", 400, 250, 20),
+            new BackendCalibration.Measurement("cpu", 900, 110, 12)));
+        assertEquals("mtk", calibration.getBackend());
+        assertEquals(2, calibration.getMeasurements().size());
+    }
+
+    @Test
+    public void decodeSpeedOutweighsSlowerPrefill() {
+        // mtk: 300 + 128 / 10 tok/s = 13.1 s; cpu: 1200 + 128 / 25 tok/s = 6.3 s
+        BackendCalibration calibration = BackendCalibration.fromMeasurements(Arrays.asList(
+            new BackendCalibration.Measurement("mtk", 300, 300, 10),
+            new BackendCalibration.Measurement("cpu", 1200, 80, 25)));
+        assertEquals("cpu", calibration.getBackend());
+    }
+
+    @Test
+    public void failedMeasurementsAreIgnored() {
+        BackendCalibration calibration = BackendCalibration.fromMeasurements(Arrays.asList(
+            new BackendCalibration.Measurement("mtk", 0, 0, 0),
+            new BackendCalibration.Measurement("cpu", 900, 0, 12)));
+        assertEquals("cpu", calibration.getBackend());
+        assertEquals(1, calibration.getMeasurements().size());
+    }
+
+    @Test
+    public void noUsableMeasurementGivesNull() {
+        assertNull(BackendCalibration.fromMeasurements(Collections.emptyList()));
+        assertNull(BackendCalibration.fromMeasurements(Collections.singletonList(
+            new BackendCalibration.Measurement("cpu", 500, 100, 0))));
+    }
+}
@@ -0,0 +1,109 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class DiskLruDirectoryTest {
+    private static final String SUFFIX = ".entry";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DiskLruDirectory open(long maxBytes) {
+        DiskLruDirectory disk = new DiskLruDirectory(folder.getRoot(), SUFFIX, maxBytes);
+        assertTrue(disk.open());
+        return disk;
+    }
+
+    private static boolean write(DiskLruDirectory disk, String key, int length) {
+        return disk.write(key, file -> Files.write(file.toPath(), new byte[length]));
+    }
+
+    private static Integer read(DiskLruDirectory disk, String key) {
+        return disk.read(key, file -> (int) file.length());
+    }
+
+    private File entry(String key) {
+        return new File(folder.getRoot(), key + SUFFIX);
+    }
+
+    @Test
+    public void reopeningCountsOnlyEntries() throws IOException {
+        DiskLruDirectory disk = open(1 << 20);
+        assertTrue(write(disk, "a", 100));
+        assertTrue(write(disk, "b", 50));
+        assertTrue(write(disk, "a", 30));
+        assertEquals(80, disk.getBytes());
+        folder.newFile("model_identity");
+
+        DiskLruDirectory reopened = open(1 << 20);
+        assertEquals(80, reopened.getBytes());
+        assertEquals(Integer.valueOf(30), read(reopened, "a"));
+        assertNull(read(reopened, "missing"));
+
+        reopened.clear();
+        assertEquals(0, reopened.getBytes());
+        assertFalse(entry("a").exists());
+        assertTrue(new File(folder.getRoot(), "model_identity").exists());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() {
+        DiskLruDirectory disk = open(350);
+        write(disk, "a", 100);
+        write(disk, "b", 100);
+        write(disk, "c", 100);
+        entry("a").setLastModified(1000);
+        entry("b").setLastModified(2000);
+        entry("c").setLastModified(3000);
+
+        // Reading makes "a" the newest, so "b" is the oldest when "d" goes over the limit
+        read(disk, "a");
+        write(disk, "d", 100);
+        assertEquals(300, disk.getBytes());
+        assertTrue(entry("a").exists());
+        assertFalse(entry("b").exists());
+        assertTrue(entry("c").exists());
+        assertTrue(entry("d").exists());
+
+        // Trimming also happens when opening with a smaller limit
+        assertEquals(200, open(250).getBytes());
+    }
+
+    @Test
+    public void unreadableEntriesAreDeleted() {
+        DiskLruDirectory disk = open(1 << 20);
+        write(disk, "a", 100);
+        assertNull(disk.read("a", file -> {
+            throw new IOException("corrupt");
+        }));
+        assertFalse(entry("a").exists());
+        assertEquals(0, disk.getBytes());
+    }
+
+    @Test
+    public void failedWritesLeaveNoEntry() {
+        DiskLruDirectory disk = open(1 << 20);
+        write(disk, "a", 100);
+        write(disk, "b", 40);
+        assertFalse(disk.write("a", file -> {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[10]);
+            }
+            throw new IOException("disk full");
+        }));
+        assertFalse(entry("a").exists());
+        assertEquals(40, disk.getBytes());
+    }
+}
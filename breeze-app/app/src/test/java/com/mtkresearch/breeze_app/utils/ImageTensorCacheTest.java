@@ -0,0 +1,89 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class ImageTensorCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ImageTensorCache.Tensor tensor(int width, int height, long seed) {
+        int[] data = new int[width * height * 3];
+        Random random = new Random(seed);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(256);
+        }
+        return new ImageTensorCache.Tensor(width, height, data);
+    }
+
+    private static String key(String image, int maxLength) throws IOException {
+        return ImageTensorCache.key(new ByteArrayInputStream(image.getBytes(StandardCharsets.UTF_8)), maxLength);
+    }
+
+    @Test
+    public void keyDependsOnContentAndResolution() throws IOException {
+        assertEquals(key("jpeg bytes", 336), key("jpeg bytes", 336));
+        assertNotEquals(key("jpeg bytes", 336), key("jpeg bytez", 336));
+        assertNotEquals(key("jpeg bytes", 336), key("jpeg bytes", 224));
+    }
+
+    @Test
+    public void countsMemoryHitsAndMisses() throws IOException {
+        ImageTensorCache cache = new ImageTensorCache(folder.getRoot(), 4, 1 << 20);
+        String key = key("photo", 336);
+        assertNull(cache.get(key));
+        ImageTensorCache.Tensor tensor = tensor(4, 3, 1);
+        cache.put(key, tensor);
+        assertSame(tensor, cache.get(key));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getStores());
+    }
+
+    @Test
+    public void diskTierSurvivesNewInstance() throws IOException {
+        ImageTensorCache first = new ImageTensorCache(folder.getRoot(), 4, 1 << 20);
+        String key = key("photo", 336);
+        ImageTensorCache.Tensor tensor = tensor(8, 6, 2);
+        first.put(key, tensor);
+
+        ImageTensorCache second = new ImageTensorCache(folder.getRoot(), 4, 1 << 20);
+        ImageTensorCache.Tensor restored = second.get(key);
+        assertEquals(8, restored.getWidth());
+        assertEquals(6, restored.getHeight());
+        assertArrayEquals(tensor.getData(), restored.getData());
+        assertEquals(1, second.getDiskHits());
+        second.get(key);
+        assertEquals(1, second.getMemoryHits());
+    }
+
+    @Test
+    public void truncatedEntryIsAMiss() throws IOException {
+        ImageTensorCache first = new ImageTensorCache(folder.getRoot(), 4, 1 << 20);
+        String key = key("photo", 336);
+        first.put(key, tensor(10, 10, 3));
+        File entry = new File(folder.getRoot(), key + ".rgb");
+        try (RandomAccessFile file = new RandomAccessFile(entry, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        ImageTensorCache second = new ImageTensorCache(folder.getRoot(), 4, 1 << 20);
+        assertNull(second.get(key));
+        assertEquals(1, second.getMisses());
+        assertEquals(0, second.getDiskBytes());
+    }
+}
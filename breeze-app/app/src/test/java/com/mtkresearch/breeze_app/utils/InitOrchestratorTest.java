@@ -0,0 +1,125 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class InitOrchestratorTest {
+
+    @Test
+    public void dependencyRunsFirst() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        InitOrchestrator.Trace trace = new InitOrchestrator(4, Long.MAX_VALUE)
+            .add("llm", 100, 0, () -> order.add("llm"), "native")
+            .add("native", 0, 0, () -> order.add("native"))
+            .run();
+        assertEquals(List.of("native", "llm"), order);
+        assertEquals(InitOrchestrator.Status.SUCCEEDED, trace.getStatus("llm"));
+        assertTrue(trace.getStartMs("llm") >= trace.getEndMs("native"));
+    }
+
+    @Test
+    public void independentStepsRunConcurrently() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        InitOrchestrator.Step step = () -> {
+            bothStarted.countDown();
+            if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Steps did not overlap");
+            }
+        };
+        InitOrchestrator.Trace trace = new InitOrchestrator(2, Long.MAX_VALUE)
+            .add("tts", 0, 0, step)
+            .add("asr", 0, 0, step)
+            .run();
+        assertEquals(InitOrchestrator.Status.SUCCEEDED, trace.getStatus("tts"));
+        assertEquals(InitOrchestrator.Status.SUCCEEDED, trace.getStatus("asr"));
+        assertEquals(2, trace.getPeakConcurrency());
+    }
+
+    @Test
+    public void memoryBudgetLimitsConcurrency() throws Exception {
+        InitOrchestrator.Step step = () -> { };
+        InitOrchestrator.Trace trace = new InitOrchestrator(4, 100)
+            .add("a", 0, 60, step)
+            .add("b", 0, 60, step)
+            .add("c", 0, 200, step)
+            .run();
+        // Peak concurrency is counted at admission, so it does not depend on how long steps run
+        assertEquals(1, trace.getPeakConcurrency());
+        assertEquals(InitOrchestrator.Status.SUCCEEDED, trace.getStatus("c"));
+    }
+
+    @Test
+    public void higherPriorityStartsFirst() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        new InitOrchestrator(1, Long.MAX_VALUE)
+            .add("tts", 10, 0, () -> order.add("tts"))
+            .add("llm", 100, 0, () -> order.add("llm"))
+            .add("asr", 10, 0, () -> order.add("asr"))
+            .run();
+        assertEquals(List.of("llm", "tts", "asr"), order);
+    }
+
+    @Test
+    public void waitingHighPriorityStepReservesMemory() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        InitOrchestrator.Trace trace = new InitOrchestrator(2, 100)
+            .add("native", 200, 0, () -> order.add("native"))
+            .add("llm", 100, 80, () -> order.add("llm"), "native")
+            .add("tts", 50, 40, () -> order.add("tts"))
+            .run();
+        // Admitting tts next to native would have raised the peak to 2
+        assertEquals(1, trace.getPeakConcurrency());
+        assertEquals(List.of("native", "llm", "tts"), order);
+    }
+
+    @Test
+    public void smallerStepBackfillsMemoryALargerOneCannotUse() throws Exception {
+        CountDownLatch smallStarted = new CountDownLatch(1);
+        InitOrchestrator.Trace trace = new InitOrchestrator(2, 100)
+            .add("llm", 200, 50, () -> {
+                if (!smallStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Small step did not backfill");
+                }
+            })
+            .add("vlm", 100, 70, () -> { })
+            .add("tts", 10, 40, smallStarted::countDown)
+            .run();
+        assertEquals(InitOrchestrator.Status.SUCCEEDED, trace.getStatus("llm"));
+        assertEquals(InitOrchestrator.Status.SUCCEEDED, trace.getStatus("vlm"));
+        assertTrue(trace.getStartMs("tts") <= trace.getStartMs("vlm"));
+        assertEquals(2, trace.getPeakConcurrency());
+    }
+
+    @Test
+    public void failedDependencySkipsDependents() throws Exception {
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        InitOrchestrator.Trace trace = new InitOrchestrator(2, Long.MAX_VALUE)
+            .add("native", 0, 0, () -> {
+                throw new UnsatisfiedLinkError("missing");
+            })
+            .add("llm", 100, 0, () -> finished.add("llm"), "native")
+            .add("tts", 0, 0, () -> finished.add("tts"))
+            .run();
+        assertEquals(InitOrchestrator.Status.FAILED, trace.getStatus("native"));
+        assertEquals(InitOrchestrator.Status.SKIPPED, trace.getStatus("llm"));
+        assertEquals(List.of("tts"), finished);
+    }
+
+    @Test
+    public void dependencyCycleIsSkipped() throws Exception {
+        InitOrchestrator.Trace trace = new InitOrchestrator(2, Long.MAX_VALUE)
+            .add("a", 0, 0, () -> { }, "b")
+            .add("b", 0, 0, () -> { }, "a")
+            .run();
+        assertEquals(InitOrchestrator.Status.SKIPPED, trace.getStatus("a"));
+        assertEquals(InitOrchestrator.Status.SKIPPED, trace.getStatus("b"));
+    }
+}
@@ -0,0 +1,193 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class ModelManifestTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes just enough of an ExecuTorch Program flatbuffer to carry constant methods. Every
+     * table field gets an 8 byte slot and children follow their parent, so offsets stay positive.
+     */
+    private static class ProgramWriter {
+        private final ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        private int end = 16;
+
+        int table(int fields) {
+            int vtable = end;
+            buffer.putShort(vtable, (short) (4 + 2 * fields));
+            buffer.putShort(vtable + 2, (short) (4 + 8 * fields));
+            for (int i = 0; i < fields; i++) {
+                buffer.putShort(vtable + 4 + 2 * i, (short) (4 + 8 * i));
+            }
+            int table = vtable + 4 + 2 * fields;
+            buffer.putInt(table, table - vtable);
+            end = table + 4 + 8 * fields;
+            return table;
+        }
+
+        int field(int table, int field) {
+            return table + 4 + 8 * field;
+        }
+
+        void ref(int at, int target) {
+            buffer.putInt(at, target - at);
+        }
+
+        int vector(int count, int elementSize) {
+            int vector = end;
+            buffer.putInt(vector, count);
+            end = vector + 4 + elementSize * count;
+            return vector;
+        }
+
+        int string(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            int string = vector(bytes.length, 1);
+            for (int i = 0; i < bytes.length; i++) {
+                buffer.put(string + 4 + i, bytes[i]);
+            }
+            end++;
+            return string;
+        }
+
+        /**
+         * @param values Int values, or null for an IntList of all previous values
+         */
+        int plan(String name, Long[] values, int output) {
+            int plan = table(5);
+            ref(field(plan, 0), string(name));
+            int valueVector = vector(values.length, 4);
+            for (int i = 0; i < values.length; i++) {
+                int value = table(2);
+                ref(valueVector + 4 + 4 * i, value);
+                if (values[i] != null) {
+                    buffer.put(field(value, 0), (byte) 2);
+                    int intValue = table(1);
+                    ref(field(value, 1), intValue);
+                    buffer.putLong(field(intValue, 0), values[i]);
+                } else {
+                    buffer.put(field(value, 0), (byte) 7);
+                    int list = table(1);
+                    ref(field(value, 1), list);
+                    int items = vector(i, 8);
+                    ref(field(list, 0), items);
+                    for (int j = 0; j < i; j++) {
+                        buffer.putLong(items + 4 + 8 * j, j);
+                    }
+                }
+            }
+            ref(field(plan, 2), valueVector);
+            int outputs = vector(1, 4);
+            buffer.putInt(outputs + 4, output);
+            ref(field(plan, 4), outputs);
+            return plan;
+        }
+
+        File write(File file) throws IOException {
+            buffer.put(4, (byte) 'E').put(5, (byte) 'T').put(6, (byte) '1').put(7, (byte) '2');
+            int program = table(2);
+            ref(0, program);
+            int plans = vector(4, 4);
+            ref(field(program, 1), plans);
+            ref(plans + 4, plan("forward", new Long[0], 0));
+            ref(plans + 8, plan("get_max_seq_len", new Long[] {2048L}, 0));
+            ref(plans + 12, plan("get_vocab_size", new Long[] {128256L}, 0));
+            ref(plans + 16, plan("get_eos_ids", new Long[] {128009L, 128001L, null}, 2));
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(buffer.array(), 0, end);
+            }
+            return file;
+        }
+    }
+
+    private File randomFile(String name, int length, long seed) throws IOException {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+        return file;
+    }
+
+    @Test
+    public void readsCapabilitiesFromProgramMetadata() throws IOException {
+        File model = new ProgramWriter().write(folder.newFile("model.pte"));
+        ModelManifest manifest = ModelManifest.build(model, ModelManifest.hashPrefix(model), null);
+
+        assertEquals(2048, manifest.getMaxSeqLength());
+        assertEquals(512, manifest.getMinOutputLength());
+        assertEquals(128256, manifest.getVocabSize());
+    }
+
+    @Test
+    public void readsMetadataOfModelsLargerThanTwoGigabytes() throws IOException {
+        File model = new ProgramWriter().write(folder.newFile("model.pte"));
+        try (RandomAccessFile file = new RandomAccessFile(model, "rw")) {
+            // Sparse, so the weights take no disk space
+            file.setLength(3L << 30);
+        }
+        ModelManifest manifest = ModelManifest.build(model, ModelManifest.hashPrefix(model), null);
+
+        assertEquals(2048, manifest.getMaxSeqLength());
+        assertEquals(128256, manifest.getVocabSize());
+    }
+
+    @Test
+    public void modelsWithoutMetadataFallBackToFileName() throws IOException {
+        File named = randomFile("Breeze-Tiny-Instruct-v0_1-2048.pte", 1024, 1);
+        assertEquals(2048, ModelManifest.build(named, "", null).getMaxSeqLength());
+
+        File unnamed = randomFile("model.pte", 1024, 2);
+        ModelManifest manifest = ModelManifest.build(unnamed, "", null);
+        assertEquals(128, manifest.getMaxSeqLength());
+        assertEquals(32, manifest.getMinOutputLength());
+    }
+
+    @Test
+    public void survivesJsonRoundTrip() throws IOException {
+        File model = new ProgramWriter().write(folder.newFile("model.pte"));
+        ModelManifest manifest = ModelManifest.build(model, ModelManifest.hashPrefix(model), "/tmp/tokenizer.bin");
+        ModelManifest restored = ModelManifest.fromJson(manifest.toJson());
+
+        assertEquals(manifest.toJson(), restored.toJson());
+        assertEquals("/tmp/tokenizer.bin", restored.getTokenizerPath());
+        assertNull(restored.getPreferredBackend());
+        assertNull(ModelManifest.fromJson(manifest.toJson().replace("\"version\":2", "\"version\":1")));
+    }
+
+    @Test
+    public void hashCoversOnlyThePrefix() throws IOException {
+        int length = ModelManifest.HASH_PREFIX_BYTES + 4096;
+        File first = randomFile("first.pte", length, 3);
+        byte[] bytes = Files.readAllBytes(first.toPath());
+        bytes[length - 1] ^= 1;
+        File tail = folder.newFile("tail.pte");
+        Files.write(tail.toPath(), bytes);
+        bytes[0] ^= 1;
+        File head = folder.newFile("head.pte");
+        Files.write(head.toPath(), bytes);
+
+        assertEquals(ModelManifest.hashPrefix(first), ModelManifest.hashPrefix(tail));
+        assertNotEquals(ModelManifest.hashPrefix(first), ModelManifest.hashPrefix(head));
+        assertEquals(64, ModelManifest.hashPrefix(first).length());
+    }
+}
@@ -0,0 +1,93 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MtkCircuitBreakerTest {
+    private static final long BASE = 1000;
+    private static final long MAX = 5000;
+    private static final long BOOT = 1_000_000;
+
+    private static MtkCircuitBreaker breaker(String build, long bootTime) {
+        return new MtkCircuitBreaker(2, BASE, MAX, build, bootTime, null);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        MtkCircuitBreaker breaker = breaker("build", BOOT);
+        breaker.recordFailure("init", 300, 10);
+        assertTrue(breaker.allowRequest());
+        assertEquals(-1, breaker.getProbeDelayMs(10));
+
+        breaker.recordFailure("init", 5000, 20);
+        assertFalse(breaker.allowRequest());
+        assertEquals(BASE, breaker.getProbeDelayMs(20));
+        assertEquals(5000, breaker.getRecentFailures().get(1).getDurationMs());
+    }
+
+    @Test
+    public void successInBetweenKeepsTheCircuitClosed() {
+        MtkCircuitBreaker breaker = breaker("build", BOOT);
+        breaker.recordFailure("swap", 10, 10);
+        breaker.recordSuccess();
+        breaker.recordFailure("swap", 10, 20);
+        assertTrue(breaker.allowRequest());
+        assertEquals(1, breaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void failedProbesBackOffUpToTheCap() {
+        MtkCircuitBreaker breaker = breaker("build", BOOT);
+        breaker.recordFailure("init", 10, 0);
+        breaker.recordFailure("init", 10, 0);
+        long[] expected = {2000, 4000, 5000, 5000};
+        for (long delay : expected) {
+            breaker.recordFailure("probe", 10, 0);
+            assertEquals(delay, breaker.getProbeDelayMs(0));
+        }
+        assertEquals(0, breaker.getProbeDelayMs(MAX));
+
+        breaker.recordSuccess();
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure("init", 10, 0);
+        breaker.recordFailure("init", 10, 0);
+        assertEquals(BASE, breaker.getProbeDelayMs(0));
+    }
+
+    @Test
+    public void stateSurvivesRestartOnTheSameBootAndBuild() {
+        MtkCircuitBreaker breaker = breaker("build", BOOT);
+        breaker.recordFailure("init", 10, 100);
+        breaker.recordFailure("inference", 20, 200);
+
+        MtkCircuitBreaker restored = breaker("build", BOOT + 5);
+        restored.restore(breaker.encode(), 300);
+        assertFalse(restored.allowRequest());
+        assertEquals(breaker.getProbeDelayMs(300), restored.getProbeDelayMs(300));
+        assertEquals("inference", restored.getRecentFailures().get(1).getOperation());
+    }
+
+    @Test
+    public void rebootMakesAProbeDueAndNewBuildStartsClosed() {
+        MtkCircuitBreaker breaker = breaker("build", BOOT);
+        breaker.recordFailure("init", 10, 100);
+        breaker.recordFailure("init", 10, 200);
+
+        MtkCircuitBreaker rebooted = breaker("build", BOOT + 3_600_000);
+        rebooted.restore(breaker.encode(), 300);
+        assertFalse(rebooted.allowRequest());
+        assertEquals(0, rebooted.getProbeDelayMs(300));
+
+        MtkCircuitBreaker updated = breaker("other build", BOOT);
+        updated.restore(breaker.encode(), 300);
+        assertTrue(updated.allowRequest());
+
+        MtkCircuitBreaker corrupt = breaker("build", BOOT);
+        corrupt.restore(breaker.encode().replace("true", "x,y"), 300);
+        assertTrue(corrupt.allowRequest());
+        assertTrue(corrupt.getRecentFailures().isEmpty());
+    }
+}
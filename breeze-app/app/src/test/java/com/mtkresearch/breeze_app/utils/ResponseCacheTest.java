@@ -0,0 +1,79 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+public class ResponseCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keyDependsOnPromptBackendAndSampling() {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), "model-a", 4, 1 << 20);
+        String key = cache.key("prompt", "cpu", 0.0f, 64);
+        assertEquals(key, cache.key("prompt", "cpu", 0.0f, 64));
+        assertNotEquals(key, cache.key("prompt!", "cpu", 0.0f, 64));
+        assertNotEquals(key, cache.key("prompt", "mtk", 0.0f, 64));
+        assertNotEquals(key, cache.key("prompt", "cpu", 0.5f, 64));
+        assertNotEquals(key, cache.key("prompt", "cpu", 0.0f, 128));
+        assertNotEquals(key, new ResponseCache(folder.getRoot(), "model-b", 4, 1 << 20).key("prompt", "cpu", 0.0f, 64));
+    }
+
+    @Test
+    public void countsMemoryHitsAndMisses() {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), "model", 4, 1 << 20);
+        String key = cache.key("hi", "cpu", 0.0f, 64);
+        assertNull(cache.get(key));
+        cache.put(key, List.of("Hel", "lo"));
+        assertEquals(List.of("Hel", "lo"), cache.get(key));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getStores());
+    }
+
+    @Test
+    public void diskTierSurvivesNewInstance() {
+        ResponseCache first = new ResponseCache(folder.getRoot(), "model", 4, 1 << 20);
+        String key = first.key("hi", "cpu", 0.0f, 64);
+        first.put(key, List.of("你", "好"));
+
+        ResponseCache second = new ResponseCache(folder.getRoot(), "model", 4, 1 << 20);
+        assertEquals(List.of("你", "好"), second.get(key));
+        assertEquals(1, second.getDiskHits());
+        second.get(key);
+        assertEquals(1, second.getMemoryHits());
+    }
+
+    @Test
+    public void changedModelClearsDiskTier() {
+        ResponseCache first = new ResponseCache(folder.getRoot(), "model-a", 4, 1 << 20);
+        first.put(first.key("hi", "cpu", 0.0f, 64), List.of("a"));
+        assertTrue(first.getDiskBytes() > 0);
+
+        ResponseCache second = new ResponseCache(folder.getRoot(), "model-b", 4, 1 << 20);
+        assertEquals(0, second.getDiskBytes());
+        File[] entries = folder.getRoot().listFiles((dir, name) -> name.endsWith(".tokens"));
+        assertEquals(0, entries.length);
+    }
+
+    @Test
+    public void diskTierStaysWithinLimit() {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), "model", 1, 200);
+        for (int i = 0; i < 10; i++) {
+            cache.put(cache.key("prompt " + i, "cpu", 0.0f, 64), List.of("some response text number " + i));
+        }
+        assertTrue(cache.getDiskBytes() <= 200);
+
+        String latest = cache.key("prompt 9", "cpu", 0.0f, 64);
+        assertEquals(List.of("some response text number 9"), cache.get(latest));
+    }
+}
@@ -0,0 +1,38 @@
+// Android-free code shared with :app, so its hot paths can be unit tested and benchmarked on
+// a plain JVM. Run the benchmarks with ./gradlew :core:jmh
+plugins {
+    `java-library`
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+// Version constants
+object Versions {
+    const val ANNOTATION = "1.6.0"
+    const val JUNIT = "4.13.2"
+    const val JMH = "1.37"
+}
+
+dependencies {
+    // Nullability annotations only; :app provides them at runtime
+    compileOnly("androidx.annotation:annotation:${Versions.ANNOTATION}")
+    jmhCompileOnly("androidx.annotation:annotation:${Versions.ANNOTATION}")
+
+    testImplementation("junit:junit:${Versions.JUNIT}")
+}
+
+jmh {
+    jmhVersion.set(Versions.JMH)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
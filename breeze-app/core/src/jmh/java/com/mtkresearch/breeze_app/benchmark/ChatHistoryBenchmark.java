@@ -0,0 +1,57 @@
+package com.mtkresearch.breeze_app.benchmark;
+
+import com.mtkresearch.breeze_app.utils.ChatHistory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization of a conversation, as ChatHistoryManager saves and loads it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChatHistoryBenchmark {
+    @Param({"5", "20", "100"})
+    public int turns;
+
+    private ChatHistory history;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        history = new ChatHistory("benchmark", Conversations.question(0), new Date(0),
+            Conversations.history(turns));
+        serialized = serialize();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(history);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public ChatHistory deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return (ChatHistory) in.readObject();
+        }
+    }
+}
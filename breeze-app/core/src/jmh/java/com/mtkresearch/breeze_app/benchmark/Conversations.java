@@ -0,0 +1,78 @@
+package com.mtkresearch.breeze_app.benchmark;
+
+import com.mtkresearch.breeze_app.utils.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Traditional Chinese chat content of the size the app sees, shared by the benchmarks.
+ */
+final class Conversations {
+    private static final String[] QUESTIONS = {
+        "請問臺北有哪些適合週末帶小孩去的景點？",
+        "幫我規劃一個三天兩夜的臺南美食行程，預算大約一萬元。",
+        "可以用簡單的方式解釋什麼是大型語言模型嗎？",
+        "我最近常常失眠，有沒有什麼改善睡眠品質的建議？",
+        "請把這段話翻譯成英文：今天天氣很好，我們去陽明山走走吧。",
+        "颱風天來臨前應該準備哪些防災物資？",
+    };
+
+    private static final String[] ANSWERS = {
+        "臺北有許多適合親子同遊的景點。國立臺灣科學教育館有豐富的互動展區，孩子可以動手體驗物理與生物實驗；"
+            + "臺北市立動物園占地廣大，建議早上入園避開人潮；兒童新樂園則有適合不同年齡的遊樂設施。"
+            + "如果天氣晴朗，也可以到大安森林公園野餐，或搭貓空纜車欣賞山景。",
+        "第一天可以從赤崁樓周邊開始，品嚐牛肉湯、碗粿與虱目魚粥，下午到神農街散步，晚上逛花園夜市。"
+            + "第二天前往安平，吃蝦捲、豆花和劍獅埕周邊的小吃，傍晚到安平古堡看夕陽。"
+            + "第三天早上吃阿憨鹹粥，再到國華街、永樂市場一帶掃街，最後帶些鳳梨酥當伴手禮。",
+        "大型語言模型是一種透過大量文字資料訓練的人工智慧模型。它學會根據前文預測下一個字詞，"
+            + "因此能夠回答問題、撰寫文章、翻譯語言與整理摘要。模型的參數越多，通常能掌握越複雜的語言規律，"
+            + "但也需要更多運算資源。在手機上執行時，會透過量化等技術縮小模型以加快推論速度。",
+        "改善睡眠可以從建立規律作息開始，每天固定時間就寢與起床。睡前一小時避免使用手機與電腦，"
+            + "減少藍光刺激；下午之後少喝咖啡與茶。臥室保持安靜、昏暗與適當溫度也很重要。"
+            + "若失眠持續超過一個月並影響白天精神，建議諮詢醫師或睡眠專科。",
+        "The weather is lovely today, so let's go for a walk on Yangmingshan.",
+        "建議準備至少三天份的飲用水與乾糧、手電筒與備用電池、行動電源、急救包與常用藥品。"
+            + "事先清理住家排水孔，將陽臺盆栽移至室內，並把重要證件放入防水袋。"
+            + "也別忘了確認避難處所的位置，以及家人之間的聯絡方式。",
+    };
+
+    private Conversations() {}
+
+    static String question(int index) {
+        return QUESTIONS[index % QUESTIONS.length];
+    }
+
+    static String answer(int index) {
+        return ANSWERS[index % ANSWERS.length];
+    }
+
+    /**
+     * Builds a history of alternating user and assistant messages.
+     */
+    static List<ChatMessage> history(int turns) {
+        List<ChatMessage> messages = new ArrayList<>(turns * 2);
+        for (int i = 0; i < turns; i++) {
+            messages.add(new ChatMessage(question(i), true, i));
+            messages.add(new ChatMessage(answer(i), false, i));
+        }
+        return messages;
+    }
+
+    /**
+     * Splits an answer into pieces of one to three characters, like the tokens a Llama 3
+     * tokenizer streams for Chinese text.
+     */
+    static List<String> tokens(String text, long seed) {
+        Random random = new Random(seed);
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + 1 + random.nextInt(3));
+            tokens.add(text.substring(start, end));
+            start = end;
+        }
+        return tokens;
+    }
+}
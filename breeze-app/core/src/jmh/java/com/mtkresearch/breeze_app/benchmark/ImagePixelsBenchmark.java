@@ -0,0 +1,51 @@
+package com.mtkresearch.breeze_app.benchmark;
+
+import com.executorch.ImagePixels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ARGB to planar RGB conversion of the image handed to the vision runner. 336 pixels is the
+ * long side ETImage scales photos to; 4032x3024 is a full 12 MP camera frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImagePixelsBenchmark {
+    @Param({"336x252", "252x336", "336x336", "4032x3024"})
+    public String size;
+
+    private int width;
+    private int height;
+    private int[] pixels;
+    private int[] planar;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        pixels = new int[width * height];
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        planar = new int[pixels.length * 3];
+    }
+
+    @Benchmark
+    public int[] toPlanarRgb() {
+        ImagePixels.toPlanarRgb(pixels, width, height, planar);
+        return planar;
+    }
+}
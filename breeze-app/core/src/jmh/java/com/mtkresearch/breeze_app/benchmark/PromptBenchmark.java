@@ -0,0 +1,54 @@
+package com.mtkresearch.breeze_app.benchmark;
+
+import com.executorch.ModelType;
+import com.executorch.PromptFormat;
+import com.mtkresearch.breeze_app.utils.ChatMessage;
+import com.mtkresearch.breeze_app.utils.PromptManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt building for a chat turn, for histories up to and past the default lookback window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptBenchmark {
+    @Param({"1", "5", "20", "40"})
+    public int turns;
+
+    private List<ChatMessage> history;
+    private String userMessage;
+
+    @Setup
+    public void setUp() {
+        history = Conversations.history(turns);
+        userMessage = Conversations.question(turns);
+    }
+
+    @Benchmark
+    public String formatCompletePrompt() {
+        return PromptManager.formatCompletePrompt(userMessage, history, ModelType.LLAMA_3_2);
+    }
+
+    @Benchmark
+    public String formatConversationHistory() {
+        return PromptManager.getFormattedConversationHistory(history, ModelType.LLAMA_3_2);
+    }
+
+    @Benchmark
+    public String formatUserPrompt() {
+        return PromptFormat.getUserPromptTemplate(ModelType.LLAMA_3_2)
+            .replace(PromptFormat.USER_PLACEHOLDER, userMessage);
+    }
+}
@@ -0,0 +1,61 @@
+package com.mtkresearch.breeze_app.benchmark;
+
+import com.executorch.ModelType;
+import com.mtkresearch.breeze_app.utils.ChatMessage;
+import com.mtkresearch.breeze_app.utils.LatencyHistogram;
+import com.mtkresearch.breeze_app.utils.StopSequenceMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-token bookkeeping of a streamed response: stop sequence matching, appending to the
+ * message and recording the inter-token latency, followed by reading the final text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenStreamingBenchmark {
+    @Param({"128", "512", "2048"})
+    public int responseChars;
+
+    private List<String> tokens;
+
+    @Setup
+    public void setUp() {
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; response.length() < responseChars; i++) {
+            response.append(Conversations.answer(i));
+        }
+        response.setLength(responseChars);
+        tokens = Conversations.tokens(response + "<|eot_id|>", 7);
+    }
+
+    @Benchmark
+    public String streamResponse() {
+        StopSequenceMatcher matcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        ChatMessage message = new ChatMessage("", false);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long last = System.nanoTime();
+        for (String token : tokens) {
+            long now = System.nanoTime();
+            histogram.recordNanos(now - last);
+            last = now;
+            message.appendText(matcher.feed(token));
+            if (matcher.isMatched()) {
+                break;
+            }
+        }
+        message.appendText(matcher.flush());
+        return message.getText();
+    }
+}
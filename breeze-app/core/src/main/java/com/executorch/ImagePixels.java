@@ -0,0 +1,51 @@
+package com.executorch;
+
+/** Pixel layout conversions for the vision runner, kept free of android.graphics. */
+public final class ImagePixels {
+  private ImagePixels() {}
+
+  /**
+   * Converts packed ARGB pixels to planar RGB channel values from 0 to 255: the whole red plane,
+   * then green, then blue, the layout {@code LlamaModule.prefillImages} takes.
+   *
+   * @param argb Pixels in row-major order; may be longer than {@code width * height}
+   * @param out Receives {@code width * height * 3} values
+   */
+  public static void toPlanarRgb(int[] argb, int width, int height, int[] out) {
+    int planeSize = width * height;
+    for (int i = 0; i < planeSize; i++) {
+      int color = argb[i];
+      out[i] = (color >> 16) & 0xFF;
+      out[i + planeSize] = (color >> 8) & 0xFF;
+      out[i + 2 * planeSize] = color & 0xFF;
+    }
+  }
+
+  /**
+   * Scales an image so its long side is {@code maxLength}, keeping the aspect ratio.
+   *
+   * @return The scaled width and height
+   */
+  public static int[] getScaledSize(int width, int height, int maxLength) {
+    if (width > height) {
+      // width > height --> width = maxLength, height scale with aspect ratio
+      float aspectRatio = width / (float) height;
+      return new int[] {maxLength, Math.max(1, Math.round(maxLength / aspectRatio))};
+    }
+    // height >= width --> height = maxLength, width scale with aspect ratio
+    float aspectRatio = height / (float) width;
+    return new int[] {Math.max(1, Math.round(maxLength / aspectRatio)), maxLength};
+  }
+
+  /**
+   * Largest power of two the decoder can subsample by while both sides stay at least the target
+   * size, so the full resolution image never has to be decoded.
+   */
+  public static int getSampleSize(int width, int height, int targetWidth, int targetHeight) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+}
@@ -0,0 +1,59 @@
+package com.executorch;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded pool of int arrays of exact lengths. Photos of one aspect ratio scale to the same size,
+ * so their image tensors reuse the same buffers instead of allocating megabytes per image.
+ */
+public final class IntArrayPool {
+  private final int maxArrays;
+  private final Map<Integer, ArrayDeque<int[]>> free = new HashMap<>();
+  private int freeCount = 0;
+
+  /** @param maxArrays Most arrays kept for reuse; further released arrays are dropped */
+  public IntArrayPool(int maxArrays) {
+    this.maxArrays = maxArrays;
+  }
+
+  /** Returns a pooled array of the given length, or a new one if none is free. */
+  public synchronized int[] acquire(int length) {
+    ArrayDeque<int[]> arrays = free.get(length);
+    if (arrays != null && !arrays.isEmpty()) {
+      freeCount--;
+      return arrays.pop();
+    }
+    return new int[length];
+  }
+
+  /** Returns an array to the pool. It must not be used afterwards. */
+  public synchronized void release(int[] array) {
+    if (array == null || array.length == 0) {
+      return;
+    }
+    if (freeCount >= maxArrays) {
+      // Keep the newest size, since the next image is most likely like the last one
+      evictOne(array.length);
+    }
+    free.computeIfAbsent(array.length, length -> new ArrayDeque<>()).push(array);
+    freeCount++;
+  }
+
+  private void evictOne(int keepLength) {
+    for (Map.Entry<Integer, ArrayDeque<int[]>> entry : free.entrySet()) {
+      if (entry.getKey() != keepLength && !entry.getValue().isEmpty()) {
+        entry.getValue().removeLast();
+        freeCount--;
+        return;
+      }
+    }
+    free.get(keepLength).removeLast();
+    freeCount--;
+  }
+
+  public synchronized int getFreeCount() {
+    return freeCount;
+  }
+}
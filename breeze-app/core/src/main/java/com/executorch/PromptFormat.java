@@ -47,6 +47,18 @@ public class PromptFormat {
     }
   }
 
+  public static String getAssistantHeader(ModelType modelType) {
+    switch (modelType) {
+      case LLAMA_3:
+      case LLAMA_3_1:
+      case LLAMA_3_2:
+      case LLAMA_GUARD_3:
+        return "<|start_header_id|>assistant<|end_header_id|>";
+      default:
+        return "";
+    }
+  }
+
   public static String getConversationFormat(ModelType modelType) {
     switch (modelType) {
       case LLAMA_3:
@@ -74,6 +86,24 @@ public class PromptFormat {
     }
   }
 
+  /**
+   * All sequences that end generation for the model. The first entry is {@link #getStopToken}.
+   * Matching is done on the decoded text stream, so a sequence may span several tokens.
+   */
+  public static String[] getStopSequences(ModelType modelType) {
+    switch (modelType) {
+      case LLAMA_3:
+      case LLAMA_3_1:
+      case LLAMA_3_2:
+      case LLAMA_GUARD_3:
+        return new String[] {"<|eot_id|>", "<|end_of_text|>", "<|eom_id|>"};
+      case LLAVA_1_5:
+        return new String[] {"</s>"};
+      default:
+        return new String[0];
+    }
+  }
+
   public static String getLlavaPresetPrompt() {
     return "A chat between a curious human and an artificial intelligence assistant. The assistant"
         + " gives helpful, detailed, and polite answers to the human's questions. USER: ";
@@ -0,0 +1,145 @@
+package com.mtkresearch.breeze_app.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+public class ChatMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String THINKING_TEXT = "Thinking...";
+    private String text; // Materialized text; null while appended text is pending in textBuffer
+    private transient ChunkedCharBuffer textBuffer; // Created on first append so streaming does not copy the text
+    private final boolean isUser;
+    private int promptId; // Added to group messages in the same conversation
+    private String imageUriString; // Image URI as a string, so the class stays free of android.net.Uri
+    private transient int tokenCount; // Cached token count of text, valid when hasTokenCount is set
+    private transient boolean hasTokenCount;
+
+    public ChatMessage(@NonNull String text, boolean isUser) {
+        this(text, isUser, 0);
+    }
+
+    public ChatMessage(@NonNull String text, boolean isUser, int promptId) {
+        this.text = text != null ? text : "";
+        this.isUser = isUser;
+        this.promptId = promptId;
+    }
+
+    /**
+     * Returns the message text. After appends the string is built once and cached until the next append.
+     */
+    @NonNull
+    public String getText() {
+        if (text == null && textBuffer != null) {
+            text = textBuffer.toString();
+        }
+        return text != null ? text : "";
+    }
+
+    public void updateText(@Nullable String newText) {
+        this.text = newText != null ? newText : "";
+        this.textBuffer = null;
+        this.hasTokenCount = false;
+    }
+
+    /**
+     * Appends streamed text in time proportional to its own length.
+     */
+    public void appendText(@Nullable String newText) {
+        if (newText != null) {
+            if (textBuffer == null) {
+                textBuffer = new ChunkedCharBuffer().append(getText());
+            }
+            textBuffer.append(newText);
+            this.text = null;
+            this.hasTokenCount = false;
+        }
+    }
+
+    public int getTextLength() {
+        if (text == null && textBuffer != null) {
+            return textBuffer.length();
+        }
+        return text != null ? text.length() : 0;
+    }
+
+    /**
+     * Returns the text from start to the end without materializing the whole message.
+     */
+    @NonNull
+    public String getTextFrom(int start) {
+        if (text == null && textBuffer != null) {
+            return textBuffer.subSequence(start, textBuffer.length());
+        }
+        return getText().substring(start);
+    }
+
+    /**
+     * Returns the token count of the message text, tokenizing it only once per text change.
+     */
+    public int getTokenCount(@NonNull LLMTokenizer tokenizer) {
+        if (!hasTokenCount) {
+            tokenCount = tokenizer.countTokens(getText());
+            hasTokenCount = true;
+        }
+        return tokenCount;
+    }
+
+    public boolean hasText() {
+        CharSequence content = text == null && textBuffer != null ? textBuffer : getText();
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) > ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isUser() {
+        return isUser;
+    }
+
+    @Nullable
+    public String getImageUri() {
+        return imageUriString;
+    }
+
+    public void setImageUri(@Nullable String imageUri) {
+        this.imageUriString = imageUri;
+    }
+
+    public boolean hasImage() {
+        return imageUriString != null;
+    }
+
+    public int getPromptId() {
+        return promptId;
+    }
+
+    public void setPromptId(int promptId) {
+        this.promptId = promptId;
+    }
+
+    public boolean hasContent() {
+        int length = getTextLength();
+        return length > 0 && (length != THINKING_TEXT.length() || !getText().equals(THINKING_TEXT));
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // Keep the serialized form a plain String so saved histories stay compatible
+        getText();
+        out.defaultWriteObject();
+    }
+
+    @Override
+    public String toString() {
+        return "ChatMessage{" +
+                "text='" + getText() + '\'' +
+                ", isUser=" + isUser +
+                ", promptId=" + promptId +
+                ", hasImage=" + hasImage() +
+                '}';
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.mtkresearch.breeze_app.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only character storage made of fixed-size chunks. Unlike a StringBuilder it never
+ * copies existing content when it grows, so appending costs only the length of the new text.
+ */
+public class ChunkedCharBuffer implements CharSequence {
+    private static final int CHUNK_SIZE = 1024;
+
+    private final List<char[]> chunks = new ArrayList<>();
+    private int length = 0;
+
+    public ChunkedCharBuffer append(@NonNull String text) {
+        int offset = 0;
+        int remaining = text.length();
+        while (remaining > 0) {
+            int used = length % CHUNK_SIZE;
+            if (used == 0 && length / CHUNK_SIZE == chunks.size()) {
+                chunks.add(new char[CHUNK_SIZE]);
+            }
+            int count = Math.min(remaining, CHUNK_SIZE - used);
+            text.getChars(offset, offset + count, chunks.get(length / CHUNK_SIZE), used);
+            offset += count;
+            remaining -= count;
+            length += count;
+        }
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+    }
+
+    @NonNull
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        char[] out = new char[end - start];
+        int position = start;
+        while (position < end) {
+            int offset = position % CHUNK_SIZE;
+            int count = Math.min(end - position, CHUNK_SIZE - offset);
+            System.arraycopy(chunks.get(position / CHUNK_SIZE), offset, out, position - start, count);
+            position += count;
+        }
+        return new String(out);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+}
@@ -0,0 +1,474 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.BufferedInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pure-Java reader for the runtime's tokenizer.bin, used for exact token budgeting.
+ * Supports both formats the ExecuTorch runner accepts: the tiktoken text format used by
+ * Llama 3 based models and the binary BPE format exported for Llama 2 style models.
+ */
+public class LLMTokenizer {
+    // java.util.logging, which Android forwards to logcat, keeps this class usable off-device
+    private static final Logger LOG = Logger.getLogger("LLMTokenizer");
+
+    // Llama 3 pre-tokenizer pattern
+    private static final Pattern TIKTOKEN_PATTERN = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+        Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern SPECIAL_TOKEN_PATTERN = Pattern.compile("<\\|[A-Za-z0-9_]+\\|>");
+    private static final int NUM_SPECIAL_TOKENS = 256;
+    private static final String[] LLAMA3_SPECIAL_TOKENS = {
+        "<|begin_of_text|>", "<|end_of_text|>", "<|reserved_special_token_0|>",
+        "<|reserved_special_token_1|>", "<|finetune_right_pad_id|>", "<|step_id|>",
+        "<|start_header_id|>", "<|end_header_id|>", "<|eom_id|>", "<|eot_id|>", "<|python_tag|>"
+    };
+
+    private static final int PIECE_CACHE_SIZE = 4096;
+    private static final Map<String, LLMTokenizer> instances = new HashMap<>();
+    // Size and modification time of files that failed to load, so they are retried once they change
+    private static final Map<String, String> failedFiles = new HashMap<>();
+
+    private final boolean isTiktoken;
+    // Token bytes are kept as ISO-8859-1 strings so that byte ranges map to substrings
+    private final Map<String, Integer> encoder;
+    private final Map<String, Integer> specialTokens = new HashMap<>();
+    private final float[] scores;  // BPE format only
+    private final int vocabSize;
+    private final Map<String, int[]> pieceCache = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > PIECE_CACHE_SIZE;
+        }
+    };
+
+    private LLMTokenizer(boolean isTiktoken, Map<String, Integer> encoder, float[] scores, int vocabSize) {
+        this.isTiktoken = isTiktoken;
+        this.encoder = encoder;
+        this.scores = scores;
+        this.vocabSize = vocabSize;
+    }
+
+    /**
+     * Returns the tokenizer for the given file, loading it on first use. A missing or unparsable
+     * file is tried again once it appears or changes, such as after a download.
+     * @return The tokenizer, or null if the file is missing or cannot be parsed
+     */
+    public static synchronized LLMTokenizer getInstance(String tokenizerPath) {
+        if (tokenizerPath == null) {
+            return null;
+        }
+        LLMTokenizer tokenizer = instances.get(tokenizerPath);
+        if (tokenizer != null) {
+            return tokenizer;
+        }
+        File file = new File(tokenizerPath);
+        String signature = file.length() + "|" + file.lastModified();
+        if (signature.equals(failedFiles.get(tokenizerPath))) {
+            return null;
+        }
+
+        if (file.exists() && file.length() > 0) {
+            long startTime = System.currentTimeMillis();
+            try {
+                tokenizer = load(file);
+                LOG.info(String.format("Loaded %s tokenizer with %d tokens in %d ms",
+                    tokenizer.isTiktoken ? "tiktoken" : "BPE", tokenizer.vocabSize,
+                    System.currentTimeMillis() - startTime));
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.SEVERE, "Failed to load tokenizer from " + tokenizerPath, e);
+            }
+        } else {
+            LOG.warning("Tokenizer file not found: " + tokenizerPath);
+        }
+        if (tokenizer != null) {
+            instances.put(tokenizerPath, tokenizer);
+            failedFiles.remove(tokenizerPath);
+        } else {
+            failedFiles.put(tokenizerPath, signature);
+        }
+        return tokenizer;
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    /**
+     * Encodes text into token ids. Special tokens such as {@code <|eot_id|>} that appear in the
+     * text are encoded as single tokens, matching how prompts are formatted for the runner.
+     */
+    public int[] encode(String text) {
+        IntList out = new IntList();
+        encodeInto(text, out);
+        return out.toArray();
+    }
+
+    /**
+     * Counts the tokens of text without materializing the token ids.
+     */
+    public int countTokens(String text) {
+        return encodeInto(text, null);
+    }
+
+    private int encodeInto(String text, IntList out) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (!isTiktoken) {
+            return encodeBpe(text, out);
+        }
+
+        int count = 0;
+        int last = 0;
+        Matcher special = SPECIAL_TOKEN_PATTERN.matcher(text);
+        while (special.find()) {
+            Integer id = specialTokens.get(special.group());
+            if (id == null) {
+                continue;
+            }
+            count += encodeOrdinary(text.substring(last, special.start()), out);
+            if (out != null) {
+                out.add(id);
+            }
+            count++;
+            last = special.end();
+        }
+        count += encodeOrdinary(text.substring(last), out);
+        return count;
+    }
+
+    private int encodeOrdinary(String text, IntList out) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = TIKTOKEN_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String piece = toByteString(matcher.group());
+            int[] tokens;
+            synchronized (pieceCache) {
+                tokens = pieceCache.get(piece);
+            }
+            if (tokens == null) {
+                tokens = bytePairEncode(piece);
+                synchronized (pieceCache) {
+                    pieceCache.put(piece, tokens);
+                }
+            }
+            if (out != null) {
+                out.addAll(tokens);
+            }
+            count += tokens.length;
+        }
+        return count;
+    }
+
+    /**
+     * Rank-based byte pair merge over a single pre-tokenized piece, as in tiktoken.
+     */
+    private int[] bytePairEncode(String piece) {
+        Integer whole = encoder.get(piece);
+        if (whole != null) {
+            return new int[] {whole};
+        }
+
+        int n = piece.length();
+        // parts[i] is the start of the i-th part; ranks[i] is the rank of merging parts i and i+1
+        int[] parts = new int[n + 1];
+        int[] ranks = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            parts[i] = i;
+        }
+        int size = n + 1;
+        for (int i = 0; i < size - 2; i++) {
+            ranks[i] = getRank(piece, parts[i], parts[i + 2]);
+        }
+        ranks[size - 2] = Integer.MAX_VALUE;
+        ranks[size - 1] = Integer.MAX_VALUE;
+
+        while (size > 2) {
+            int minRank = Integer.MAX_VALUE;
+            int minIndex = -1;
+            for (int i = 0; i < size - 2; i++) {
+                if (ranks[i] < minRank) {
+                    minRank = ranks[i];
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+
+            // Merge parts minIndex and minIndex + 1
+            System.arraycopy(parts, minIndex + 2, parts, minIndex + 1, size - minIndex - 2);
+            System.arraycopy(ranks, minIndex + 2, ranks, minIndex + 1, size - minIndex - 2);
+            size--;
+            ranks[minIndex] = minIndex + 2 < size
+                ? getRank(piece, parts[minIndex], parts[minIndex + 2]) : Integer.MAX_VALUE;
+            if (minIndex > 0) {
+                ranks[minIndex - 1] = getRank(piece, parts[minIndex - 1], parts[minIndex + 1]);
+            }
+        }
+
+        int[] tokens = new int[size - 1];
+        for (int i = 0; i < size - 1; i++) {
+            Integer id = encoder.get(piece.substring(parts[i], parts[i + 1]));
+            tokens[i] = id != null ? id : 0;
+        }
+        return tokens;
+    }
+
+    private int getRank(String piece, int start, int end) {
+        Integer rank = encoder.get(piece.substring(start, end));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Score-based merge used by the binary BPE format (SentencePiece export). Symbols form a linked
+     * list and candidate merges wait in a priority queue, so each merge only looks up the two pairs
+     * it creates instead of rescanning the whole input.
+     */
+    private int encodeBpe(String text, IntList out) {
+        // SentencePiece adds a dummy prefix space
+        String bytes = " " + toByteString(text);
+        int n = bytes.length();
+        // Symbol i covers bytes [start[i], start[i] + length[i]); merged-away symbols have length 0
+        int[] start = new int[n];
+        int[] length = new int[n];
+        int count = 0;
+        start[count] = 0;
+        length[count++] = 1;
+        int position = 1;
+        int offset = 0;
+        while (offset < text.length()) {
+            int codePoint = text.codePointAt(offset);
+            int byteLength = utf8Length(codePoint);
+            if (byteLength == 1 || encoder.containsKey(bytes.substring(position, position + byteLength))) {
+                start[count] = position;
+                length[count++] = byteLength;
+            } else {
+                // Byte fallback: one symbol per UTF-8 byte
+                for (int i = 0; i < byteLength; i++) {
+                    start[count] = position + i;
+                    length[count++] = 1;
+                }
+            }
+            position += byteLength;
+            offset += Character.charCount(codePoint);
+        }
+        int[] next = new int[count];
+        int[] prev = new int[count];
+        for (int i = 0; i < count; i++) {
+            prev[i] = i - 1;
+            next[i] = i + 1 < count ? i + 1 : -1;
+        }
+
+        PriorityQueue<BpeMerge> queue = new PriorityQueue<>();
+        for (int i = 0; i + 1 < count; i++) {
+            addBpeMerge(queue, bytes, start, length, i, i + 1);
+        }
+        int symbols = count;
+        while (!queue.isEmpty()) {
+            BpeMerge merge = queue.poll();
+            int left = merge.left;
+            int right = merge.right;
+            // Skip candidates whose symbols changed since they were queued
+            if (next[left] != right || length[left] == 0 || length[left] + length[right] != merge.length) {
+                continue;
+            }
+            length[left] += length[right];
+            length[right] = 0;
+            next[left] = next[right];
+            if (next[left] >= 0) {
+                prev[next[left]] = left;
+            }
+            symbols--;
+            if (prev[left] >= 0) {
+                addBpeMerge(queue, bytes, start, length, prev[left], left);
+            }
+            if (next[left] >= 0) {
+                addBpeMerge(queue, bytes, start, length, left, next[left]);
+            }
+        }
+
+        if (out != null) {
+            for (int i = 0; i >= 0; i = next[i]) {
+                Integer id = encoder.get(bytes.substring(start[i], start[i] + length[i]));
+                // Unknown single bytes map to the <0xXX> byte tokens that follow the 3 control tokens
+                out.add(id != null ? id : (bytes.charAt(start[i]) & 0xFF) + 3);
+            }
+        }
+        return symbols;
+    }
+
+    private void addBpeMerge(PriorityQueue<BpeMerge> queue, String bytes, int[] start, int[] length,
+                             int left, int right) {
+        Integer id = encoder.get(bytes.substring(start[left], start[right] + length[right]));
+        if (id != null) {
+            queue.add(new BpeMerge(left, right, length[left] + length[right], scores[id], start[left]));
+        }
+    }
+
+    /**
+     * Bytes of a code point in UTF-8; a lone surrogate is encoded as a single '?'.
+     */
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80 || codePoint < 0x10000 && Character.isSurrogate((char) codePoint)) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+
+    private static String toByteString(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    private static LLMTokenizer load(File file) throws IOException {
+        if (isTiktokenFile(file)) {
+            return loadTiktoken(file);
+        }
+        return loadBpe(file);
+    }
+
+    private static boolean isTiktokenFile(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.ISO_8859_1))) {
+            String line = reader.readLine();
+            return line != null && line.matches("[A-Za-z0-9+/=]+ \\d+");
+        }
+    }
+
+    private static LLMTokenizer loadTiktoken(File file) throws IOException {
+        Map<String, Integer> encoder = new HashMap<>(1 << 18);
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.ISO_8859_1), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] bytes = decoder.decode(line.substring(0, space));
+                int rank = Integer.parseInt(line.substring(space + 1).trim());
+                encoder.put(new String(bytes, StandardCharsets.ISO_8859_1), rank);
+            }
+        }
+
+        int baseVocabSize = encoder.size();
+        LLMTokenizer tokenizer = new LLMTokenizer(true, encoder, null, baseVocabSize + NUM_SPECIAL_TOKENS);
+        // Special tokens follow the base vocabulary, in the order the runner registers them
+        for (int i = 0; i < NUM_SPECIAL_TOKENS; i++) {
+            String token = i < LLAMA3_SPECIAL_TOKENS.length
+                ? LLAMA3_SPECIAL_TOKENS[i]
+                : "<|reserved_special_token_" + (i - LLAMA3_SPECIAL_TOKENS.length + 2) + "|>";
+            tokenizer.specialTokens.put(token, baseVocabSize + i);
+        }
+        return tokenizer;
+    }
+
+    private static LLMTokenizer loadBpe(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            // Header: vocab_size, bos, eos, max_token_length as little-endian int32
+            int vocabSize = readIntLE(in);
+            readIntLE(in);
+            readIntLE(in);
+            readIntLE(in);
+            if (vocabSize <= 0 || vocabSize > (1 << 22)) {
+                throw new IOException("Invalid BPE vocab size: " + vocabSize);
+            }
+
+            Map<String, Integer> encoder = new HashMap<>(vocabSize * 2);
+            float[] scores = new float[vocabSize];
+            for (int i = 0; i < vocabSize; i++) {
+                scores[i] = Float.intBitsToFloat(readIntLE(in));
+                int length = readIntLE(in);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                encoder.putIfAbsent(new String(bytes, StandardCharsets.ISO_8859_1), i);
+            }
+            return new LLMTokenizer(false, encoder, scores, vocabSize);
+        }
+    }
+
+    private static int readIntLE(InputStream in) throws IOException {
+        int b0 = in.read();
+        int b1 = in.read();
+        int b2 = in.read();
+        int b3 = in.read();
+        if ((b0 | b1 | b2 | b3) < 0) {
+            throw new IOException("Unexpected end of tokenizer file");
+        }
+        return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    /**
+     * Candidate merge of two adjacent symbols: best score first, then leftmost, like a full scan.
+     */
+    private static final class BpeMerge implements Comparable<BpeMerge> {
+        final int left;
+        final int right;
+        final int length;
+        final float score;
+        final int position;
+
+        BpeMerge(int left, int right, int length, float score, int position) {
+            this.left = left;
+            this.right = right;
+            this.length = length;
+            this.score = score;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(BpeMerge other) {
+            int byScore = Float.compare(other.score, score);
+            return byScore != 0 ? byScore : Integer.compare(position, other.position);
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[64];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] more) {
+            if (size + more.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + more.length));
+            }
+            System.arraycopy(more, 0, values, size, more.length);
+            size += more.length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
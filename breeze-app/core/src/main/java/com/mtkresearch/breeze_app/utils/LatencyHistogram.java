@@ -0,0 +1,84 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear latency histogram with microsecond resolution. Recording is O(1) and
+ * allocation-free; each power of two is split into 16 buckets, so reported percentiles are
+ * within about 6% of the true value. Meant for a single writer thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sumMicros = 0;
+    private long maxMicros = 0;
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[indexOf(micros)]++;
+        count++;
+        sumMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMs() {
+        return count == 0 ? 0 : sumMicros / (double) count / 1000.0;
+    }
+
+    public double getMaxMs() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Returns the latency at the given percentile (0-100) in milliseconds, or 0 when empty.
+     */
+    public double getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketMidpoint(i), maxMicros) / 1000.0;
+            }
+        }
+        return maxMicros / 1000.0;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sumMicros = 0;
+        maxMicros = 0;
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        int shift = msb - SUB_BUCKET_BITS;
+        long lower = (long) (SUB_BUCKETS + sub) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+}
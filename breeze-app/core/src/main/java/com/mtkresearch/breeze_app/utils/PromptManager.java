@@ -0,0 +1,190 @@
+package com.mtkresearch.breeze_app.utils;
+
+import com.executorch.ModelType;
+import com.executorch.PromptFormat;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.function.IntSupplier;
+
+/**
+ * Manages all prompt-related functionality including formatting, history management,
+ * and conversation context handling.
+ */
+public class PromptManager {
+    public static final int DEFAULT_HISTORY_LOOKBACK = 20;
+    public static final int MAX_SEQUENCE_LENGTH = 2048;  // Maximum sequence length for the model
+    private static final double TOKENS_PER_CHAR_ESTIMATE = 0.4;  // Rough estimate of tokens per character
+    
+    private static volatile IntSupplier historyLookbackSource;
+    
+    /**
+     * @param historyLookback Supplies the user's history lookback setting, read on every prompt
+     */
+    public static void initialize(IntSupplier historyLookback) {
+        historyLookbackSource = historyLookback;
+    }
+
+    /**
+     * Formats a complete prompt including system instructions, conversation history, and user input.
+     */
+    public static String formatCompletePrompt(String userMessage, List<ChatMessage> conversationHistory, ModelType modelType) {
+        // 1. Get system prompt with template
+        String systemPrompt = getFormattedSystemPrompt(modelType);
+
+        // 2. Get conversation history
+        String history = getFormattedConversationHistory(conversationHistory, modelType);
+        
+        // 3. Format user message using template
+        String userPrompt = PromptFormat.getUserPromptTemplate(modelType)
+                .replace(PromptFormat.USER_PLACEHOLDER, userMessage);
+        
+        // Combine all parts
+        return systemPrompt + history + userPrompt;
+    }
+    
+    /**
+     * Formats the system block that prefixes every prompt. The result is identical across turns,
+     * which lets the engine prefill it once and reuse it.
+     */
+    public static String getFormattedSystemPrompt(ModelType modelType) {
+        return PromptFormat.getSystemPromptTemplate(modelType)
+                .replace(PromptFormat.SYSTEM_PLACEHOLDER, PromptFormat.DEFAULT_SYSTEM_PROMPT);
+    }
+
+    /**
+     * Formats a prompt whose history is packed by {@link #packConversationHistory} into the room
+     * left by the system prompt, the user turn and the reserved output, so it never overflows
+     * because of history.
+     */
+    public static String formatBudgetedPrompt(String userMessage, List<ChatMessage> conversationHistory,
+                                              ModelType modelType, LLMTokenizer tokenizer,
+                                              int maxSequenceLength, int reservedOutputTokens) {
+        int budget = getHistoryBudget(userMessage, modelType, tokenizer, maxSequenceLength, reservedOutputTokens);
+        return formatCompletePrompt(userMessage,
+                packConversationHistory(conversationHistory, modelType, tokenizer, budget), modelType);
+    }
+
+    /**
+     * Tokens left for history: the max sequence length minus the system prompt, the current user
+     * turn and the tokens reserved for the response. Negative if the user turn alone overflows.
+     */
+    public static int getHistoryBudget(String userMessage, ModelType modelType, LLMTokenizer tokenizer,
+                                       int maxSequenceLength, int reservedOutputTokens) {
+        String userPrompt = PromptFormat.getUserPromptTemplate(modelType)
+                .replace(PromptFormat.USER_PLACEHOLDER, userMessage);
+        return maxSequenceLength - reservedOutputTokens
+                - tokenizer.countTokens(getFormattedSystemPrompt(modelType))
+                - tokenizer.countTokens(userPrompt);
+    }
+
+    /**
+     * Selects the most recent whole turns of the lookback window that fit in {@code budgetTokens}.
+     * Turns are walked newest first using the token counts cached on each message, so a message is
+     * tokenized once over the whole conversation and packing stops at the first turn that does not fit.
+     * @return The packed suffix of the history, formatted the same way as the full history
+     */
+    public static List<ChatMessage> packConversationHistory(List<ChatMessage> allMessages, ModelType modelType,
+                                                            LLMTokenizer tokenizer, int budgetTokens) {
+        if (allMessages == null || allMessages.isEmpty() || budgetTokens <= 0) {
+            return new ArrayList<>();
+        }
+
+        List<ChatMessage> recentMessages = getRecentMessages(allMessages, getDefaultHistoryLookback());
+        int turnOverhead = countTurnOverheadTokens(modelType, tokenizer);
+        int used = 0;
+        int start = recentMessages.size();
+        int reply = recentMessages.size() - 1;
+        // User messages after the last reply are not part of any turn
+        while (reply >= 0 && recentMessages.get(reply).isUser()) {
+            reply--;
+        }
+        while (reply >= 0) {
+            int turnStart = reply;
+            while (turnStart > 0 && recentMessages.get(turnStart - 1).isUser()) {
+                turnStart--;
+            }
+            // Mirrors the formatter: only the first user message of a turn fills the template
+            int userTokens = turnStart < reply ? recentMessages.get(turnStart).getTokenCount(tokenizer) : 0;
+            int turnTokens = turnOverhead + userTokens + recentMessages.get(reply).getTokenCount(tokenizer);
+            if (used + turnTokens > budgetTokens) {
+                break;
+            }
+            used += turnTokens;
+            start = turnStart;
+            reply = turnStart - 1;
+        }
+        return new ArrayList<>(recentMessages.subList(start, recentMessages.size()));
+    }
+
+    /**
+     * Formats the conversation history with proper turn structure and lookback window.
+     */
+    public static String getFormattedConversationHistory(List<ChatMessage> allMessages, ModelType modelType) {
+        return getFormattedConversationHistory(allMessages, modelType, getDefaultHistoryLookback());
+    }
+
+    /**
+     * Formats the last {@code historyLookback} turns of the conversation history.
+     */
+    public static String getFormattedConversationHistory(List<ChatMessage> allMessages, ModelType modelType,
+                                                         int historyLookback) {
+        if (allMessages == null || allMessages.isEmpty()) {
+            return "";
+        }
+        
+        List<ChatMessage> recentMessages = getRecentMessages(allMessages, historyLookback);
+        if (recentMessages.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder history = new StringBuilder();
+        String conversationFormat = PromptFormat.getConversationFormat(modelType);
+        String currentFormat = conversationFormat;
+        
+        for (ChatMessage message : recentMessages) {
+            if (message.isUser()) {
+                currentFormat = currentFormat.replace(PromptFormat.USER_PLACEHOLDER, message.getText());
+            } else {
+                currentFormat = currentFormat.replace(PromptFormat.ASSISTANT_PLACEHOLDER, message.getText());
+                history.append(currentFormat);
+                currentFormat = conversationFormat;
+            }
+        }
+        
+        return history.toString();
+    }
+    
+    /**
+     * Tokens of the turn template without its user and assistant text.
+     */
+    private static int countTurnOverheadTokens(ModelType modelType, LLMTokenizer tokenizer) {
+        return tokenizer.countTokens(PromptFormat.getConversationFormat(modelType)
+                .replace(PromptFormat.USER_PLACEHOLDER, "")
+                .replace(PromptFormat.ASSISTANT_PLACEHOLDER, ""));
+    }
+
+    private static List<ChatMessage> getRecentMessages(List<ChatMessage> allMessages, int historyLookback) {
+        // Get recent messages based on lookback window
+        List<ChatMessage> recentMessages = new ArrayList<>();
+        int startIndex = Math.max(0, allMessages.size() - (historyLookback * 2));
+        for (int i = startIndex; i < allMessages.size(); i++) {
+            recentMessages.add(allMessages.get(i));
+        }
+        return recentMessages;
+    }
+
+    /**
+     * Gets the stop token for the specified model type.
+     */
+    public static String getStopToken(ModelType modelType) {
+        return PromptFormat.getStopToken(modelType);
+    }
+    
+    /**
+     * Gets the default lookback window size for conversation history.
+     */
+    public static int getDefaultHistoryLookback() {
+        IntSupplier source = historyLookbackSource;
+        return source != null ? source.getAsInt() : DEFAULT_HISTORY_LOOKBACK;
+    }
+} 
\ No newline at end of file
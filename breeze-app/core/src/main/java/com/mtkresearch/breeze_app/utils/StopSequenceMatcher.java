@@ -0,0 +1,221 @@
+package com.mtkresearch.breeze_app.utils;
+
+import androidx.annotation.NonNull;
+
+import com.executorch.ModelType;
+import com.executorch.PromptFormat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming multi-pattern stop sequence matcher (Aho-Corasick). Tokens are fed as they arrive;
+ * text that cannot be part of a stop sequence is released right away and only the shortest
+ * ambiguous suffix is held back, so sequences split across tokens are still caught.
+ * A token that is released whole is returned as-is, without allocating.
+ * One instance tracks one stream and is not thread-safe.
+ */
+public class StopSequenceMatcher {
+    private static final Map<ModelType, Automaton> modelAutomata = new EnumMap<>(ModelType.class);
+
+    private final Automaton automaton;
+    private final StringBuilder held = new StringBuilder();
+    private final StringBuilder released = new StringBuilder();
+    private int state = 0;
+    private String matchedSequence = null;
+
+    public StopSequenceMatcher(@NonNull Collection<String> sequences) {
+        this(new Automaton(sequences));
+    }
+
+    private StopSequenceMatcher(Automaton automaton) {
+        this.automaton = automaton;
+    }
+
+    /**
+     * Returns a matcher for the model's stop sequences from {@link PromptFormat#getStopSequences}.
+     */
+    public static StopSequenceMatcher forModel(ModelType modelType) {
+        Automaton automaton;
+        synchronized (modelAutomata) {
+            automaton = modelAutomata.get(modelType);
+            if (automaton == null) {
+                automaton = new Automaton(Arrays.asList(PromptFormat.getStopSequences(modelType)));
+                modelAutomata.put(modelType, automaton);
+            }
+        }
+        return new StopSequenceMatcher(automaton);
+    }
+
+    /**
+     * Feeds the next token and returns the text that is now safe to emit, which may be empty.
+     * Once a stop sequence completes, {@link #isMatched()} is true and later input is ignored.
+     */
+    @NonNull
+    public String feed(@NonNull String token) {
+        if (matchedSequence != null || token.isEmpty()) {
+            return "";
+        }
+
+        int heldBefore = held.length();
+        released.setLength(0);
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            state = automaton.next(state, c);
+            held.append(c);
+
+            int match = automaton.output[state];
+            if (match >= 0) {
+                matchedSequence = automaton.sequences.get(match);
+                released.append(held, 0, held.length() - matchedSequence.length());
+                held.setLength(0);
+                return released.toString();
+            }
+
+            // Only the longest suffix that can still start a sequence needs to be held
+            int excess = held.length() - automaton.depth[state];
+            if (excess > 0) {
+                released.append(held, 0, excess);
+                held.delete(0, excess);
+            }
+        }
+
+        if (heldBefore == 0 && held.length() == 0) {
+            // Nothing held before or after, so the token passes through unchanged
+            return token;
+        }
+        return released.toString();
+    }
+
+    /**
+     * Returns the held text at the end of a stream that did not match, and resets the matcher.
+     */
+    @NonNull
+    public String flush() {
+        String rest = matchedSequence == null ? held.toString() : "";
+        reset();
+        return rest;
+    }
+
+    public boolean isMatched() {
+        return matchedSequence != null;
+    }
+
+    /**
+     * The stop sequence that completed, or null if none has.
+     */
+    public String getMatchedSequence() {
+        return matchedSequence;
+    }
+
+    public void reset() {
+        held.setLength(0);
+        released.setLength(0);
+        state = 0;
+        matchedSequence = null;
+    }
+
+    /**
+     * Immutable goto/fail automaton shared by all matchers for the same sequence set.
+     */
+    private static final class Automaton {
+        final List<String> sequences;
+        final char[][] edgeChars;  // Sorted outgoing characters per state
+        final int[][] edgeTargets;
+        final int[] fail;
+        final int[] depth;
+        final int[] output;  // Index of a sequence ending at the state (own or via fail links), or -1
+
+        Automaton(Collection<String> stopSequences) {
+            sequences = new ArrayList<>();
+            for (String sequence : stopSequences) {
+                if (sequence != null && !sequence.isEmpty() && !sequences.contains(sequence)) {
+                    sequences.add(sequence);
+                }
+            }
+
+            // Build the trie
+            List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+            List<Integer> depths = new ArrayList<>();
+            List<Integer> outputs = new ArrayList<>();
+            edges.add(new TreeMap<>());
+            depths.add(0);
+            outputs.add(-1);
+            for (int index = 0; index < sequences.size(); index++) {
+                String sequence = sequences.get(index);
+                int current = 0;
+                for (int i = 0; i < sequence.length(); i++) {
+                    Integer next = edges.get(current).get(sequence.charAt(i));
+                    if (next == null) {
+                        next = edges.size();
+                        edges.add(new TreeMap<>());
+                        depths.add(i + 1);
+                        outputs.add(-1);
+                        edges.get(current).put(sequence.charAt(i), next);
+                    }
+                    current = next;
+                }
+                if (outputs.get(current) < 0) {
+                    outputs.set(current, index);
+                }
+            }
+
+            int size = edges.size();
+            edgeChars = new char[size][];
+            edgeTargets = new int[size][];
+            depth = new int[size];
+            output = new int[size];
+            fail = new int[size];
+            for (int s = 0; s < size; s++) {
+                TreeMap<Character, Integer> map = edges.get(s);
+                edgeChars[s] = new char[map.size()];
+                edgeTargets[s] = new int[map.size()];
+                int k = 0;
+                for (Map.Entry<Character, Integer> entry : map.entrySet()) {
+                    edgeChars[s][k] = entry.getKey();
+                    edgeTargets[s][k] = entry.getValue();
+                    k++;
+                }
+                depth[s] = depths.get(s);
+                output[s] = outputs.get(s);
+            }
+
+            // Breadth-first fail links
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int target : edgeTargets[0]) {
+                fail[target] = 0;
+                queue.add(target);
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                for (int k = 0; k < edgeChars[s].length; k++) {
+                    int target = edgeTargets[s][k];
+                    fail[target] = next(fail[s], edgeChars[s][k]);
+                    if (output[target] < 0) {
+                        output[target] = output[fail[target]];
+                    }
+                    queue.add(target);
+                }
+            }
+        }
+
+        int next(int s, char c) {
+            while (true) {
+                int k = Arrays.binarySearch(edgeChars[s], c);
+                if (k >= 0) {
+                    return edgeTargets[s][k];
+                }
+                if (s == 0) {
+                    return 0;
+                }
+                s = fail[s];
+            }
+        }
+    }
+}
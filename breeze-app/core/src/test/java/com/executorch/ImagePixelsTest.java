@@ -0,0 +1,67 @@
+package com.executorch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ImagePixelsTest {
+
+    @Test
+    public void convertsArgbToPlanarRgb() {
+        int[] argb = {0xFF102030, 0x80FFFFFF, 0xFF000000, 0x00C08001, 0xFFABCDEF, 0xFF7F8081};
+        // Longer than needed, like a pooled buffer; the tail is left alone
+        int[] planar = new int[20];
+        Arrays.fill(planar, -1);
+        ImagePixels.toPlanarRgb(argb, 3, 2, planar);
+
+        assertArrayEquals(new int[] {
+            0x10, 0xFF, 0x00, 0xC0, 0xAB, 0x7F,
+            0x20, 0xFF, 0x00, 0x80, 0xCD, 0x80,
+            0x30, 0xFF, 0x00, 0x01, 0xEF, 0x81,
+            -1, -1}, planar);
+    }
+
+    @Test
+    public void scalesLongSideToMaxLength() {
+        assertArrayEquals(new int[] {336, 252}, ImagePixels.getScaledSize(4032, 3024, 336));
+        assertArrayEquals(new int[] {252, 336}, ImagePixels.getScaledSize(3024, 4032, 336));
+        assertArrayEquals(new int[] {336, 336}, ImagePixels.getScaledSize(100, 100, 336));
+        assertArrayEquals(new int[] {336, 1}, ImagePixels.getScaledSize(10000, 1, 336));
+    }
+
+    @Test
+    public void sampleSizeNeverDecodesBelowTheTarget() {
+        assertEquals(8, ImagePixels.getSampleSize(4032, 3024, 336, 252));
+        assertEquals(1, ImagePixels.getSampleSize(500, 400, 336, 269));
+        assertEquals(1, ImagePixels.getSampleSize(100, 100, 336, 336));
+        for (int width = 336; width < 5000; width += 97) {
+            int height = width * 3 / 4;
+            int[] size = ImagePixels.getScaledSize(width, height, 336);
+            int sampleSize = ImagePixels.getSampleSize(width, height, size[0], size[1]);
+            assertEquals(0, Integer.bitCount(sampleSize) - 1);
+            assertTrue(width / sampleSize >= size[0] && height / sampleSize >= size[1]);
+        }
+    }
+
+    @Test
+    public void poolReusesArraysOfTheSameLength() {
+        IntArrayPool pool = new IntArrayPool(2);
+        int[] first = pool.acquire(12);
+        pool.release(first);
+        assertSame(first, pool.acquire(12));
+        assertNotSame(first, pool.acquire(12));
+
+        pool.release(new int[4]);
+        pool.release(new int[4]);
+        int[] newest = new int[12];
+        pool.release(newest);
+        assertEquals(2, pool.getFreeCount());
+        assertSame(newest, pool.acquire(12));
+    }
+}
@@ -0,0 +1,90 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that streamed appends to ChatMessage stay O(token length) and serialize like before.
+ */
+public class ChatMessageAppendTest {
+    private static final int TOKENS = 2000;
+    private static final String TOKEN = "tok ";
+
+    @Test
+    public void appendedTextMatchesConcatenation() {
+        ChatMessage message = new ChatMessage("start:", false);
+        StringBuilder expected = new StringBuilder("start:");
+        for (int i = 0; i < TOKENS; i++) {
+            String token = i + " ";
+            message.appendText(token);
+            expected.append(token);
+        }
+
+        assertEquals(expected.length(), message.getTextLength());
+        assertEquals(expected.toString(), message.getText());
+        assertEquals(expected.substring(1500), message.getTextFrom(1500));
+    }
+
+    @Test
+    public void serializedFormIsUnchanged() throws Exception {
+        ChatMessage message = new ChatMessage("", false, 3);
+        for (int i = 0; i < TOKENS; i++) {
+            message.appendText(TOKEN);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        ChatMessage restored;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = (ChatMessage) in.readObject();
+        }
+
+        assertEquals(message.getText(), restored.getText());
+        assertEquals(3, restored.getPromptId());
+        restored.appendText("!");
+        assertEquals(message.getText() + "!", restored.getText());
+    }
+
+    @Test
+    public void appendAllocationIsProportionalToTokenLength() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Warm up so class loading and JIT do not count
+        for (int run = 0; run < 5; run++) {
+            streamTokens();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        ChatMessage message = streamTokens();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Rebuilding the String per token would average about TOKENS * TOKEN.length() bytes per append
+        assertTrue("Allocated " + allocated + " bytes for " + TOKENS + " appends",
+            allocated <= (long) TOKENS * 16 * TOKEN.length());
+        assertEquals(TOKENS * TOKEN.length(), message.getTextLength());
+    }
+
+    private static ChatMessage streamTokens() {
+        ChatMessage message = new ChatMessage("", false);
+        for (int i = 0; i < TOKENS; i++) {
+            message.appendText(TOKEN);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,123 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class LLMTokenizerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Ranks: a=0, b=1, c=2, space=3, ab=4, bc=5, abc=6, so special tokens start at 7.
+     */
+    private File tiktokenFile(File file) throws IOException {
+        String[] tokens = {"a", "b", "c", " ", "ab", "bc", "abc"};
+        try (PrintWriter out = new PrintWriter(file, "ISO-8859-1")) {
+            for (int i = 0; i < tokens.length; i++) {
+                out.println(Base64.getEncoder().encodeToString(tokens[i].getBytes(StandardCharsets.UTF_8)) + " " + i);
+            }
+        }
+        return file;
+    }
+
+    private static void writeIntLE(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+
+    @Test
+    public void tiktokenMergesByRank() throws IOException {
+        LLMTokenizer tokenizer = LLMTokenizer.getInstance(tiktokenFile(folder.newFile("tiktoken.bin")).getPath());
+
+        assertEquals(263, tokenizer.getVocabSize());
+        assertArrayEquals(new int[] {6}, tokenizer.encode("abc"));
+        // ab, then ab+c, then the second ab; abc+ab is not in the vocabulary
+        assertArrayEquals(new int[] {6, 4}, tokenizer.encode("abcab"));
+        assertArrayEquals(new int[] {3, 6}, tokenizer.encode(" abc"));
+        assertEquals(2, tokenizer.countTokens("abcab"));
+    }
+
+    @Test
+    public void tiktokenEncodesSpecialTokensWhole() throws IOException {
+        LLMTokenizer tokenizer = LLMTokenizer.getInstance(tiktokenFile(folder.newFile("tiktoken.bin")).getPath());
+
+        // <|begin_of_text|> is the first special token and <|eot_id|> the tenth
+        assertArrayEquals(new int[] {7, 6, 4, 16}, tokenizer.encode("<|begin_of_text|>abcab<|eot_id|>"));
+        assertEquals(4, tokenizer.countTokens("<|begin_of_text|>abcab<|eot_id|>"));
+        assertEquals(0, tokenizer.countTokens(""));
+    }
+
+    /**
+     * Scores favor "hi", then " hi"; the dummy prefix space only merges after "hi" formed.
+     */
+    private File bpeFile(File file) throws IOException {
+        String[] tokens = {"<unk>", "<s>", "</s>", " ", "h", "i", "hi", " hi"};
+        float[] scores = {0, 0, 0, -3, -4, -5, -1, -2};
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            writeIntLE(out, tokens.length);
+            writeIntLE(out, 1);
+            writeIntLE(out, 2);
+            writeIntLE(out, 3);
+            for (int i = 0; i < tokens.length; i++) {
+                writeIntLE(out, Float.floatToIntBits(scores[i]));
+                byte[] bytes = tokens[i].getBytes(StandardCharsets.UTF_8);
+                writeIntLE(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void bpeMergesByScore() throws IOException {
+        LLMTokenizer tokenizer = LLMTokenizer.getInstance(bpeFile(folder.newFile("bpe.bin")).getPath());
+
+        assertEquals(8, tokenizer.getVocabSize());
+        // The dummy prefix space merges into " hi"
+        assertArrayEquals(new int[] {7}, tokenizer.encode("hi"));
+        assertArrayEquals(new int[] {7, 4}, tokenizer.encode("hih"));
+        assertEquals(2, tokenizer.countTokens("hih"));
+        // Characters outside the vocabulary fall back to one <0xXX> token per UTF-8 byte
+        assertArrayEquals(new int[] {7, 0xC3 + 3, 0xA9 + 3, 5}, tokenizer.encode("hi\u00e9i"));
+    }
+
+    @Test
+    public void bpeEncodesLongInputs() throws IOException {
+        LLMTokenizer tokenizer = LLMTokenizer.getInstance(bpeFile(folder.newFile("bpe.bin")).getPath());
+        int pairs = 50_000;
+        String text = "hi".repeat(pairs);
+
+        int[] tokens = tokenizer.encode(text);
+        assertEquals(pairs, tokens.length);
+        assertEquals(7, tokens[0]);
+        for (int i = 1; i < pairs; i++) {
+            assertEquals(6, tokens[i]);
+        }
+        assertEquals(pairs + 1, tokenizer.countTokens(text + "h"));
+    }
+
+    @Test
+    public void missingFileIsLoadedOnceItAppears() throws IOException {
+        File file = new File(folder.getRoot(), "downloaded.bin");
+        assertNull(LLMTokenizer.getInstance(file.getPath()));
+        assertNull(LLMTokenizer.getInstance(file.getPath()));
+
+        tiktokenFile(file);
+        LLMTokenizer tokenizer = LLMTokenizer.getInstance(file.getPath());
+        assertNotNull(tokenizer);
+        assertArrayEquals(new int[] {6}, tokenizer.encode("abc"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(i * 1_000_000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getPercentileMs(50), 500 * 0.07);
+        assertEquals(950, histogram.getPercentileMs(95), 950 * 0.07);
+        assertEquals(990, histogram.getPercentileMs(99), 990 * 0.07);
+        assertEquals(1000, histogram.getMaxMs(), 0.001);
+        assertEquals(500.5, histogram.getMeanMs(), 0.001);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMs(99), 0);
+
+        histogram.recordNanos(5_000);
+        assertEquals(0.005, histogram.getPercentileMs(99), 1e-9);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMs(50), 0);
+    }
+}
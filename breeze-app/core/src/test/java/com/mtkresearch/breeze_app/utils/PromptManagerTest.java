@@ -0,0 +1,103 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.executorch.ModelType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+public class PromptManagerTest {
+    private static final ModelType MODEL = ModelType.LLAMA_3_2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LLMTokenizer tokenizer;
+
+    @Before
+    public void setUp() throws IOException {
+        // One token per byte, so every count is easy to predict and counts add up exactly
+        File file = folder.newFile("tokenizer.bin");
+        try (PrintWriter out = new PrintWriter(file, "ISO-8859-1")) {
+            for (int i = 0; i < 256; i++) {
+                out.println(Base64.getEncoder().encodeToString(new byte[] {(byte) i}) + " " + i);
+            }
+        }
+        tokenizer = LLMTokenizer.getInstance(file.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        PromptManager.initialize(null);
+    }
+
+    private static List<ChatMessage> conversation(int turns) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            messages.add(new ChatMessage("第" + i + "個問題，請詳細說明。", true));
+            messages.add(new ChatMessage("這是第" + i + "個回答。".repeat(1 + i % 3), false));
+        }
+        return messages;
+    }
+
+    @Test
+    public void packsNewestWholeTurnsIntoTheBudget() {
+        List<ChatMessage> history = conversation(10);
+        int reserved = 64;
+        for (int maxSeqLength = 200; maxSeqLength <= 2048; maxSeqLength += 37) {
+            int budget = PromptManager.getHistoryBudget("你好", MODEL, tokenizer, maxSeqLength, reserved);
+            List<ChatMessage> packed = PromptManager.packConversationHistory(history, MODEL, tokenizer, budget);
+            String prompt = PromptManager.formatBudgetedPrompt("你好", history, MODEL, tokenizer, maxSeqLength, reserved);
+
+            assertEquals(PromptManager.formatCompletePrompt("你好", packed, MODEL), prompt);
+            assertTrue(tokenizer.countTokens(prompt) <= Math.max(maxSeqLength - reserved,
+                tokenizer.countTokens(PromptManager.formatCompletePrompt("你好", new ArrayList<>(), MODEL))));
+            assertEquals(0, packed.size() % 2);
+            assertEquals(history.subList(history.size() - packed.size(), history.size()), packed);
+
+            // The next older turn would not have fit
+            if (packed.size() < history.size()) {
+                List<ChatMessage> oneMore = history.subList(history.size() - packed.size() - 2, history.size());
+                assertTrue(tokenizer.countTokens(PromptManager.getFormattedConversationHistory(oneMore, MODEL)) > budget);
+            }
+        }
+    }
+
+    @Test
+    public void exhaustedBudgetDropsAllHistory() {
+        List<ChatMessage> history = conversation(3);
+        assertTrue(PromptManager.packConversationHistory(history, MODEL, tokenizer, 0).isEmpty());
+        assertTrue(PromptManager.packConversationHistory(history, MODEL, tokenizer, -10).isEmpty());
+        assertEquals(PromptManager.formatCompletePrompt("你好", new ArrayList<>(), MODEL),
+            PromptManager.formatBudgetedPrompt("你好", history, MODEL, tokenizer, 10, 5));
+    }
+
+    @Test
+    public void lookbackStillBoundsThePackedTurns() {
+        PromptManager.initialize(() -> 2);
+        List<ChatMessage> packed = PromptManager.packConversationHistory(conversation(10), MODEL, tokenizer, 100000);
+        assertEquals(4, packed.size());
+        assertEquals("第8個問題，請詳細說明。", packed.get(0).getText());
+    }
+
+    @Test
+    public void pendingUserMessageIsFree() {
+        List<ChatMessage> history = conversation(2);
+        int budget = tokenizer.countTokens(PromptManager.getFormattedConversationHistory(history, MODEL));
+        history.add(new ChatMessage("還沒有回答的問題", true));
+        List<ChatMessage> packed = PromptManager.packConversationHistory(history, MODEL, tokenizer, budget);
+        assertEquals(history, packed);
+    }
+}
@@ -0,0 +1,61 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.executorch.ModelType;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class StopSequenceMatcherTest {
+
+    @Test
+    public void wholeStopTokenMatches() {
+        StopSequenceMatcher matcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        assertEquals("Hello", matcher.feed("Hello"));
+        assertEquals("", matcher.feed("<|eot_id|>"));
+        assertTrue(matcher.isMatched());
+        assertEquals("<|eot_id|>", matcher.getMatchedSequence());
+    }
+
+    @Test
+    public void stopSequenceSplitAcrossTokensMatches() {
+        StopSequenceMatcher matcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        assertEquals("Done.", matcher.feed("Done.<|"));
+        assertEquals("", matcher.feed("eot"));
+        assertFalse(matcher.isMatched());
+        assertEquals("", matcher.feed("_id|> trailing"));
+        assertTrue(matcher.isMatched());
+        assertEquals("", matcher.feed("ignored"));
+    }
+
+    @Test
+    public void heldPrefixIsReleasedWhenItDiverges() {
+        StopSequenceMatcher matcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        assertEquals("a ", matcher.feed("a <|e"));
+        assertEquals("<|enx", matcher.feed("nx"));
+        assertEquals("", matcher.feed("<|end_of"));
+        assertEquals("<|end_of", matcher.flush());
+        assertFalse(matcher.isMatched());
+    }
+
+    @Test
+    public void overlappingSequencesUseFailLinks() {
+        StopSequenceMatcher matcher = new StopSequenceMatcher(Arrays.asList("abcd", "bce"));
+        assertEquals("", matcher.feed("ab"));
+        assertEquals("a", matcher.feed("ce"));
+        assertTrue(matcher.isMatched());
+        assertEquals("bce", matcher.getMatchedSequence());
+    }
+
+    @Test
+    public void unambiguousTokenPassesThroughWithoutCopy() {
+        StopSequenceMatcher matcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+        String token = "plain text";
+        assertSame(token, matcher.feed(token));
+    }
+}
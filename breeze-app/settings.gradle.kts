@@ -15,4 +15,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "breeze-app"
 include(":app")
+include(":core")
  
\ No newline at end of file